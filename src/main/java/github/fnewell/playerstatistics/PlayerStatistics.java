@@ -3,7 +3,11 @@ package github.fnewell.playerstatistics;
 import github.fnewell.playerstatistics.db.DriverUtils;
 import github.fnewell.playerstatistics.utils.CommandUtils;
 import github.fnewell.playerstatistics.utils.ConfigUtils;
+import github.fnewell.playerstatistics.utils.DatabaseUtils;
+import github.fnewell.playerstatistics.utils.SnapshotManager;
+import github.fnewell.playerstatistics.utils.StatCapture;
 import github.fnewell.playerstatistics.utils.StatSyncScheduler;
+import github.fnewell.playerstatistics.utils.SyncExecutors;
 import github.fnewell.playerstatistics.webserver.WebServer;
 import net.neoforged.bus.api.IEventBus;
 import net.neoforged.fml.ModContainer;
@@ -17,10 +21,6 @@ import net.neoforged.neoforge.event.server.ServerStoppingEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-
 @Mod(PlayerStatistics.MOD_ID)
 public class PlayerStatistics {
     public static final String MOD_ID = "player-statistics";
@@ -28,7 +28,6 @@ public class PlayerStatistics {
     public static boolean DEBUG = false;
 
     private static boolean cleanedUp = false;
-    public static List<ExecutorService> executors = new ArrayList<>();
 
     public PlayerStatistics(IEventBus modEventBus, ModContainer modContainer) {
         modEventBus.addListener(this::commonSetup);
@@ -36,6 +35,8 @@ public class PlayerStatistics {
         NeoForge.EVENT_BUS.addListener(this::onServerStarted);
         NeoForge.EVENT_BUS.addListener(this::onServerStopping);
         NeoForge.EVENT_BUS.addListener(this::onServerStopped);
+        NeoForge.EVENT_BUS.addListener(StatCapture::onPlayerLoggedOut);
+        NeoForge.EVENT_BUS.addListener(StatCapture::onLevelSave);
     }
 
     private void commonSetup(final FMLCommonSetupEvent event) {
@@ -76,6 +77,8 @@ public class PlayerStatistics {
     }
 
     private void onServerStopping(ServerStoppingEvent event) {
+        // Capture the stats of the players who are still online before the server stops
+        StatCapture.captureAll(event.getServer());
         cleanup();
     }
 
@@ -91,20 +94,23 @@ public class PlayerStatistics {
             return;
         }
 
-        // Stop all executors
-        for (ExecutorService executor : executors) {
-            if (DEBUG) { LOGGER.info("Shutting down executor ..."); }
-            executor.shutdownNow();
-        }
-
-        // Stop CommandUtils executor
-        if (DEBUG) { LOGGER.info("Shutting down CommandUtils executor ..."); }
-        CommandUtils.executor.shutdownNow();
-
         // Stop the scheduled synchronization task
         if (DEBUG) { LOGGER.info("Stopping scheduled synchronization ..."); }
         StatSyncScheduler.stopScheduledSync();
 
+        // Write the remaining captured stats
+        StatCapture.shutdown();
+
+        // Drop the deferred database snapshot (the next sync writes it) and stop compressing snapshots
+        SnapshotManager.shutdown();
+
+        // Stop the shared sync executor (interrupts running sync tasks)
+        SyncExecutors.shutdown();
+
+        // Close the database connection pool
+        if (DEBUG) { LOGGER.info("Closing database connection pool ..."); }
+        DatabaseUtils.closeConnectionPool();
+
         // Stop the web server
         if (DEBUG) { LOGGER.info("Stopping web server ..."); }
         WebServer.stopServer();
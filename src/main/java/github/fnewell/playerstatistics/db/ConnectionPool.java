@@ -0,0 +1,367 @@
+package github.fnewell.playerstatistics.db;
+
+import github.fnewell.playerstatistics.PlayerStatistics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+  * Bounded JDBC connection pool.
+  * Every worker leases its own connection and returns it by calling {@link Connection#close()} on the leased proxy,
+  * so the physical connection is never shared between threads at the same time.
+  * Idle connections are validated before they are handed out and evicted when they were idle for too long.
+  */
+public class ConnectionPool {
+
+    /**
+      * Factory used by the pool to open new physical connections.
+      */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection create() throws Exception;
+    }
+
+    private final String name;
+    private final ConnectionFactory factory;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long leaseTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final boolean readOnly;                                 // Connections are opened read-only and must stay that way
+
+    private final Semaphore permits;                                // Bounds the number of leased connections
+    private final Deque<IdleConnection> idle = new ArrayDeque<>();  // Idle physical connections (most recently used first)
+    private boolean closed = false;
+
+    // Pool metrics
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong leased = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private record IdleConnection(Connection connection, long idleSince) {}
+
+    /**
+      * Create a new connection pool.
+      *
+      * @param name The name of the pool (used in logs and metrics).
+      * @param factory The factory used to open new physical connections.
+      * @param maxSize The maximum number of connections (leased and idle).
+      * @param idleTimeoutMillis How long a connection can stay idle before it is evicted.
+      * @param leaseTimeoutMillis How long a worker waits for a free connection before giving up.
+      * @param validationTimeoutSeconds Timeout for {@link Connection#isValid(int)} when validating idle connections.
+      */
+    public ConnectionPool(String name, ConnectionFactory factory, int maxSize, long idleTimeoutMillis, long leaseTimeoutMillis, int validationTimeoutSeconds) {
+        this(name, factory, maxSize, idleTimeoutMillis, leaseTimeoutMillis, validationTimeoutSeconds, false);
+    }
+
+    /**
+      * Create a new connection pool.
+      *
+      * @param name The name of the pool (used in logs and metrics).
+      * @param factory The factory used to open new physical connections.
+      * @param maxSize The maximum number of connections (leased and idle).
+      * @param idleTimeoutMillis How long a connection can stay idle before it is evicted.
+      * @param leaseTimeoutMillis How long a worker waits for a free connection before giving up.
+      * @param validationTimeoutSeconds Timeout for {@link Connection#isValid(int)} when validating idle connections.
+      * @param readOnly True if the factory opens read-only connections, which are then not reset to read-write on release.
+      */
+    public ConnectionPool(String name, ConnectionFactory factory, int maxSize, long idleTimeoutMillis, long leaseTimeoutMillis, int validationTimeoutSeconds, boolean readOnly) {
+        this.name = name;
+        this.factory = factory;
+        this.maxSize = Math.max(1, maxSize);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leaseTimeoutMillis = leaseTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.readOnly = readOnly;
+        this.permits = new Semaphore(this.maxSize, true);
+    }
+
+    /**
+      * Lease a connection from the pool.
+      * The returned connection must be closed by the caller, which returns it to the pool.
+      *
+      * @return The leased connection.
+      * @throws Exception If no connection is available in time or a new connection cannot be opened.
+      */
+    public Connection lease() throws Exception {
+        long waitStart = System.nanoTime();
+        if (!permits.tryAcquire(leaseTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            timeouts.incrementAndGet();
+            throw new SQLException("Timed out waiting for a database connection from pool '" + name + "' (" + stats() + ")");
+        }
+        waitNanos.addAndGet(System.nanoTime() - waitStart);
+
+        try {
+            Connection physical = takeIdle();
+            if (physical == null) {
+                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Opening new connection for pool '{}' ...", name); }
+                physical = factory.create();
+                created.incrementAndGet();
+            }
+            leased.incrementAndGet();
+            return wrap(physical);
+        } catch (Exception e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+      * Take a valid idle connection, evicting expired and broken ones on the way.
+      *
+      * @return An idle connection or null if there is none.
+      */
+    private Connection takeIdle() {
+        while (true) {
+            IdleConnection candidate;
+            synchronized (this) {
+                candidate = idle.pollFirst();
+            }
+            if (candidate == null) {
+                return null;
+            }
+
+            if (System.currentTimeMillis() - candidate.idleSince() > idleTimeoutMillis) {
+                evicted.incrementAndGet();
+                closeQuietly(candidate.connection());
+                continue;
+            }
+
+            try {
+                if (candidate.connection().isValid(validationTimeoutSeconds)) {
+                    return candidate.connection();
+                }
+            } catch (SQLException e) {
+                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            }
+            validationFailures.incrementAndGet();
+            closeQuietly(candidate.connection());
+        }
+    }
+
+    /**
+      * Return a physical connection to the pool.
+      *
+      * @param physical The physical connection.
+      * @param broken True if the connection should be discarded instead of reused.
+      */
+    private void release(Connection physical, boolean broken) {
+        try {
+            boolean reusable = !broken && !physical.isClosed();
+            if (reusable) {
+                // Leave the connection in a clean state for the next worker
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                if (!readOnly && physical.isReadOnly()) {
+                    physical.setReadOnly(false);
+                }
+            }
+
+            synchronized (this) {
+                if (reusable && !closed) {
+                    idle.offerFirst(new IdleConnection(physical, System.currentTimeMillis()));
+                    return;
+                }
+            }
+        } catch (SQLException e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+        } finally {
+            permits.release();
+        }
+        closeQuietly(physical);
+    }
+
+    /**
+      * Close all idle connections that were idle longer than the idle timeout.
+      */
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Iterator<IdleConnection> it = idle.iterator();
+            while (it.hasNext()) {
+                IdleConnection candidate = it.next();
+                if (now - candidate.idleSince() > idleTimeoutMillis) {
+                    it.remove();
+                    evicted.incrementAndGet();
+                    closeQuietly(candidate.connection());
+                }
+            }
+        }
+    }
+
+    /**
+      * Close the pool and all idle connections. Leased connections are closed when they are returned.
+      */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            for (IdleConnection candidate : idle) {
+                closeQuietly(candidate.connection());
+            }
+            idle.clear();
+        }
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Connection pool '{}' closed ({})", name, stats()); }
+    }
+
+    /**
+      * Get the maximum number of connections of this pool.
+      *
+      * @return The maximum pool size.
+      */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+      * Get a short summary of the pool metrics.
+      *
+      * @return The pool metrics as a human-readable string.
+      */
+    public String stats() {
+        int idleCount;
+        synchronized (this) {
+            idleCount = idle.size();
+        }
+        long leaseCount = leased.get();
+        return "active=" + (maxSize - permits.availablePermits()) +
+                ", idle=" + idleCount +
+                ", max=" + maxSize +
+                ", created=" + created.get() +
+                ", leased=" + leaseCount +
+                ", evicted=" + evicted.get() +
+                ", invalid=" + validationFailures.get() +
+                ", timeouts=" + timeouts.get() +
+                ", avgWaitMs=" + (leaseCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos.get() / leaseCount));
+    }
+
+    // JDBC objects handed out by a leased connection, wrapped so they never expose the physical connection
+    private static final Set<Class<?>> WRAPPED_TYPES = Set.of(Statement.class, PreparedStatement.class, CallableStatement.class, ResultSet.class, DatabaseMetaData.class);
+
+    /**
+      * Wrap a physical connection in a proxy which returns the connection to the pool on close.
+      * Statements, result sets and metadata created through the proxy are wrapped as well,
+      * so their getConnection() / getStatement() return the proxies and closing them can not bypass the pool.
+      *
+      * @param physical The physical connection.
+      * @return The leased connection proxy.
+      */
+    private Connection wrap(Connection physical) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean returned = false;
+            private boolean broken = false;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close" -> {
+                        if (!returned) {
+                            returned = true;
+                            release(physical, broken);
+                        }
+                        return null;
+                    }
+                    case "isClosed" -> {
+                        return returned || physical.isClosed();
+                    }
+                    case "unwrap" -> {
+                        if (args[0] == Connection.class) { return proxy; }
+                    }
+                    case "equals" -> {
+                        return proxy == args[0];
+                    }
+                    case "hashCode" -> {
+                        return System.identityHashCode(proxy);
+                    }
+                    default -> {}
+                }
+
+                if (returned) {
+                    throw new SQLException("Connection was already returned to pool '" + name + "'");
+                }
+
+                try {
+                    return wrapChild(method.invoke(physical, args), method.getReturnType(), proxy, (Connection) proxy);
+                } catch (InvocationTargetException e) {
+                    // Connection level errors (SQLState class 08) mean the physical connection is unusable
+                    if (e.getCause() instanceof SQLException sqlException && sqlException.getSQLState() != null && sqlException.getSQLState().startsWith("08")) {
+                        broken = true;
+                    }
+                    throw e.getCause();
+                }
+            }
+        };
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    /**
+      * Wrap a JDBC object returned by a leased connection (or by one of its wrapped objects).
+      * Objects of other types are returned as they are.
+      *
+      * @param target The returned object.
+      * @param type The declared return type.
+      * @param parent The proxy which returned the object.
+      * @param connection The leased connection proxy.
+      * @return The wrapped object.
+      */
+    private static Object wrapChild(Object target, Class<?> type, Object parent, Connection connection) {
+        if (target == null || !WRAPPED_TYPES.contains(type) || Proxy.isProxyClass(target.getClass())) {
+            return target;
+        }
+
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getConnection" -> {
+                    if (method.getReturnType() == Connection.class) { return connection; }
+                }
+                case "getStatement" -> {
+                    if (parent instanceof Statement) { return parent; }
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                default -> {}
+            }
+
+            try {
+                return wrapChild(method.invoke(target, args), method.getReturnType(), proxy, connection);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+        }
+    }
+}
@@ -20,9 +20,38 @@ public class LocalDatabase {
      * @throws SQLException if a database access error occurs
      */
     public static Connection getConnection() throws SQLException {
+        return getConnection(DB_PATH);
+    }
+
+    /**
+     * Function to get a connection to a SQLite database file (e.g. a snapshot of the local database)
+     * @param file Path to the SQLite database file
+     * @return Connection to the SQLite database
+     * @throws SQLException if a database access error occurs
+     */
+    public static Connection getConnection(Path file) throws SQLException {
+        return connect(file, false);
+    }
+
+    /**
+     * Function to get a read-only connection to a SQLite database file (used by the web API)
+     * @param file Path to the SQLite database file (the served snapshot or the live database)
+     * @return Read-only connection to the SQLite database
+     * @throws SQLException if a database access error occurs
+     */
+    public static Connection getReadOnlyConnection(Path file) throws SQLException {
+        return connect(file, true);
+    }
+
+    private static Connection connect(Path file, boolean readOnly) throws SQLException {
         try {
             Properties properties = new Properties();
-            Connection connection = customDriverShim.connect("jdbc:sqlite:" + DB_PATH, properties);
+            if (readOnly) {
+                properties.setProperty("open_mode", "1");     // SQLITE_OPEN_READONLY
+            }
+            // Pooled connections write concurrently, so wait for the lock instead of failing with SQLITE_BUSY
+            properties.setProperty("busy_timeout", "30000");
+            Connection connection = customDriverShim.connect("jdbc:sqlite:" + file, properties);
 
             if (connection == null) {
                 throw new SQLException("Failed to connect to the local SQLite database: Connection is null");
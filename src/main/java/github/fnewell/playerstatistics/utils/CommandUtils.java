@@ -1,6 +1,8 @@
 package github.fnewell.playerstatistics.utils;
 
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import github.fnewell.playerstatistics.PlayerStatistics;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
 import net.minecraft.network.chat.Component;
@@ -8,14 +10,10 @@ import net.minecraft.ChatFormatting;
 import net.neoforged.neoforge.common.NeoForge;
 import net.neoforged.neoforge.event.RegisterCommandsEvent;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.sql.Connection;
 
 public class CommandUtils {
 
-    // Executor for async tasks
-    public static final ExecutorService executor = Executors.newSingleThreadExecutor();
-
     /**
      * Register commands
      */
@@ -40,6 +38,8 @@ public class CommandUtils {
                                         .withStyle(ChatFormatting.GOLD))
                                     .append(Component.literal("/pstats status - Show current synchronization status\n")
                                         .withStyle(ChatFormatting.GOLD))
+                                    .append(Component.literal("/pstats rank <player> <table> <stat> - Show the rank of a player in a stat\n")
+                                        .withStyle(ChatFormatting.GOLD))
                                     .append(Component.literal("------------------------")
                                         .withStyle(ChatFormatting.GOLD, ChatFormatting.BOLD))
                             );
@@ -56,8 +56,8 @@ public class CommandUtils {
                             source.sendSystemMessage(Component.literal("Player Statistics synchronization started ...")
                                 .withStyle(ChatFormatting.GOLD));
 
-                            // Run the synchronization task in a separate thread
-                            executor.submit(() -> {
+                            // Run the synchronization on its own thread, it waits for its phases on the shared sync executor
+                            Thread.ofPlatform().daemon().name("player-statistics-command-sync").start(() -> {
                                 if (StatSyncTask.syncAllPlayerStats()) {
                                     source.sendSystemMessage(Component.literal("Player Statistics synchronization completed successfully!")
                                         .withStyle(ChatFormatting.GREEN));
@@ -88,12 +88,20 @@ public class CommandUtils {
                                         .withStyle(ChatFormatting.RED, ChatFormatting.BOLD))
                                     .append(Component.literal("Progress: ")
                                         .withStyle(ChatFormatting.GOLD))
-                                    .append(Component.literal(String.valueOf(StatSyncTask.progressFrom))
+                                    .append(Component.literal(String.valueOf(StatSyncTask.progressFrom.get()))
                                         .withStyle(ChatFormatting.RED, ChatFormatting.BOLD))
                                     .append(Component.literal("/")
                                         .withStyle(ChatFormatting.GOLD))
                                     .append(Component.literal(StatSyncTask.progressTo + "\n")
                                         .withStyle(ChatFormatting.RED, ChatFormatting.BOLD))
+                                    .append(Component.literal("Connection pool: ")
+                                        .withStyle(ChatFormatting.GOLD))
+                                    .append(Component.literal(DatabaseUtils.getConnectionPool().stats() + "\n")
+                                        .withStyle(ChatFormatting.RED, ChatFormatting.BOLD))
+                                    .append(Component.literal("Last pipeline: ")
+                                        .withStyle(ChatFormatting.GOLD))
+                                    .append(Component.literal(StatSyncTask.lastPipelineStats + "\n")
+                                        .withStyle(ChatFormatting.RED, ChatFormatting.BOLD))
                                     .append(Component.literal("--------------------------")
                                         .withStyle(ChatFormatting.GOLD, ChatFormatting.BOLD))
                             );
@@ -101,5 +109,64 @@ public class CommandUtils {
                         })
                 )
         );
+
+        // Register "/pstats rank <player> <table> <stat>"
+        dispatcher.register(Commands.literal("pstats")
+                .then(Commands.literal("rank")
+                        .then(Commands.argument("player", StringArgumentType.word())
+                                .then(Commands.argument("table", StringArgumentType.word())
+                                        .then(Commands.argument("stat", StringArgumentType.string())
+                                                .executes(context -> {
+                                                    CommandSourceStack source = context.getSource();
+                                                    String player = StringArgumentType.getString(context, "player");
+                                                    String table = StringArgumentType.getString(context, "table");
+                                                    String stat = StringArgumentType.getString(context, "stat");
+
+                                                    // Look up the player off the server thread
+                                                    SyncExecutors.executor().submit(() -> source.sendSystemMessage(rankMessage(player, table, stat)));
+                                                    return 1;
+                                                })
+                                        )
+                                )
+                        )
+                )
+        );
+    }
+
+    /**
+      * Build the message with the rank of a player in one stat.
+      */
+    private static Component rankMessage(String player, String table, String stat) {
+        int tableIndex = DatabaseUtils.TABLE_NAMES.indexOf(table);
+        if (tableIndex < 0) {
+            return Component.literal("Unknown stat table: " + table + " (" + String.join(", ", DatabaseUtils.TABLE_NAMES) + ")")
+                    .withStyle(ChatFormatting.RED);
+        }
+        if (!RankIndex.isSeeded()) {
+            return Component.literal("Ranks are not available yet, run a synchronization first.")
+                    .withStyle(ChatFormatting.RED);
+        }
+
+        try (Connection connection = DatabaseUtils.getDatabaseConnection()) {
+            int playerId = DatabaseUtils.findPlayerId(connection, player);
+            if (playerId < 0) {
+                return Component.literal("Unknown player: " + player).withStyle(ChatFormatting.RED);
+            }
+
+            RankIndex.Rank rank = RankIndex.rank(tableIndex, stat, StatValueCache.get(connection, playerId).get(tableIndex, stat));
+            if (rank == null) {
+                return Component.literal(player + " is not ranked in " + table + " " + stat).withStyle(ChatFormatting.RED);
+            }
+            return Component.literal(player + " - " + table + " " + stat + ": ")
+                    .withStyle(ChatFormatting.GOLD)
+                    .append(Component.literal("#" + rank.rank() + " of " + rank.players())
+                        .withStyle(ChatFormatting.RED, ChatFormatting.BOLD))
+                    .append(Component.literal(" (amount " + rank.amount() + ", top " + String.format("%.1f", rank.topPercent()) + "%)")
+                        .withStyle(ChatFormatting.GOLD));
+        } catch (Exception e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error looking up rank: {}", e.getMessage());
+            return Component.literal("Error looking up the rank!").withStyle(ChatFormatting.RED);
+        }
     }
-}
\ No newline at end of file
+}
@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 
 public class ConfigUtils {
 
@@ -129,6 +130,130 @@ public class ConfigUtils {
                 // Check if the sync-interval is a valid number
                 int sync_interval = conf_file.getInt("sync-interval");
 
+                // Check if the sync-batch-size is set up correctly, use default if missing or invalid
+                int sync_batch_size = 1000;
+                try {
+                    sync_batch_size = conf_file.getInt("sync-batch-size");
+                    if (sync_batch_size < 1) {
+                        sync_batch_size = 1000;
+                    }
+                } catch (ConfigException.Missing ignored) {}
+
+                // Check if the sync-delta-cache-size is set up correctly, use default if missing or invalid
+                int sync_delta_cache_size = 5000;
+                try {
+                    sync_delta_cache_size = Math.max(0, conf_file.getInt("sync-delta-cache-size"));
+                } catch (ConfigException.Missing ignored) {}
+
+                // Check the sync executor section, use defaults if missing or invalid
+                String sync_executor_mode = "VIRTUAL";
+                int sync_http_concurrency = 4;
+                int sync_file_read_concurrency = sync_thread_count;
+                int sync_parse_concurrency = Runtime.getRuntime().availableProcessors();
+                try {
+                    Config syncExecutor = conf_file.getConfig("sync-executor-section");
+                    if (syncExecutor.hasPath("mode") && syncExecutor.getString("mode").equals("PLATFORM")) {
+                        sync_executor_mode = "PLATFORM";
+                    }
+                    if (syncExecutor.hasPath("http-concurrency") && syncExecutor.getInt("http-concurrency") > 0) {
+                        sync_http_concurrency = syncExecutor.getInt("http-concurrency");
+                    }
+                    if (syncExecutor.hasPath("file-read-concurrency") && syncExecutor.getInt("file-read-concurrency") > 0) {
+                        sync_file_read_concurrency = syncExecutor.getInt("file-read-concurrency");
+                    }
+                    if (syncExecutor.hasPath("parse-concurrency") && syncExecutor.getInt("parse-concurrency") > 0) {
+                        sync_parse_concurrency = syncExecutor.getInt("parse-concurrency");
+                    }
+                } catch (ConfigException.Missing ignored) {}
+                Config syncExecutor = ConfigFactory.empty()
+                        .withValue("mode", ConfigValueFactory.fromAnyRef(sync_executor_mode))
+                        .withValue("http-concurrency", ConfigValueFactory.fromAnyRef(sync_http_concurrency))
+                        .withValue("file-read-concurrency", ConfigValueFactory.fromAnyRef(sync_file_read_concurrency))
+                        .withValue("parse-concurrency", ConfigValueFactory.fromAnyRef(sync_parse_concurrency));
+
+                // Check if the stat capture is enabled (enabled if missing)
+                boolean sync_capture = true;
+                try {
+                    sync_capture = conf_file.getBoolean("sync-capture");
+                } catch (ConfigException.Missing ignored) {}
+
+                // Check the sync watcher section, the watcher is enabled if the section or the key is missing
+                boolean sync_watcher_enabled = true;
+                int sync_watcher_debounce = 10;
+                int sync_watcher_max_delay = 60;
+                try {
+                    Config syncWatcher = conf_file.getConfig("sync-watcher-section");
+                    if (syncWatcher.hasPath("enabled")) {
+                        sync_watcher_enabled = syncWatcher.getBoolean("enabled");
+                    }
+                    if (syncWatcher.hasPath("debounce-seconds") && syncWatcher.getInt("debounce-seconds") > 0) {
+                        sync_watcher_debounce = syncWatcher.getInt("debounce-seconds");
+                    }
+                    if (syncWatcher.hasPath("max-delay-seconds") && syncWatcher.getInt("max-delay-seconds") > 0) {
+                        sync_watcher_max_delay = syncWatcher.getInt("max-delay-seconds");
+                    }
+                    // The max delay can not be shorter than the debounce time
+                    sync_watcher_max_delay = Math.max(sync_watcher_max_delay, sync_watcher_debounce);
+                } catch (ConfigException.Missing ignored) {}
+                Config syncWatcher = ConfigFactory.empty()
+                        .withValue("enabled", ConfigValueFactory.fromAnyRef(sync_watcher_enabled))
+                        .withValue("debounce-seconds", ConfigValueFactory.fromAnyRef(sync_watcher_debounce))
+                        .withValue("max-delay-seconds", ConfigValueFactory.fromAnyRef(sync_watcher_max_delay));
+
+                // Check the stat history section, the history is enabled if the section or the key is missing
+                boolean stat_history_enabled = true;
+                int stat_history_hourly = 48;
+                int stat_history_daily = 60;
+                int stat_history_weekly = 104;
+                try {
+                    Config statHistory = conf_file.getConfig("stat-history-section");
+                    if (statHistory.hasPath("enabled")) {
+                        stat_history_enabled = statHistory.getBoolean("enabled");
+                    }
+                    if (statHistory.hasPath("hourly-retention-hours") && statHistory.getInt("hourly-retention-hours") > 0) {
+                        stat_history_hourly = statHistory.getInt("hourly-retention-hours");
+                    }
+                    if (statHistory.hasPath("daily-retention-days") && statHistory.getInt("daily-retention-days") > 0) {
+                        stat_history_daily = statHistory.getInt("daily-retention-days");
+                    }
+                    if (statHistory.hasPath("weekly-retention-weeks") && statHistory.getInt("weekly-retention-weeks") > 0) {
+                        stat_history_weekly = statHistory.getInt("weekly-retention-weeks");
+                    }
+                } catch (ConfigException.Missing ignored) {}
+                Config statHistory = ConfigFactory.empty()
+                        .withValue("enabled", ConfigValueFactory.fromAnyRef(stat_history_enabled))
+                        .withValue("hourly-retention-hours", ConfigValueFactory.fromAnyRef(stat_history_hourly))
+                        .withValue("daily-retention-days", ConfigValueFactory.fromAnyRef(stat_history_daily))
+                        .withValue("weekly-retention-weeks", ConfigValueFactory.fromAnyRef(stat_history_weekly));
+
+                // Check the Hall of Fame section, the default scoring is used if the section is missing
+                List<Integer> hall_of_fame_points = List.of(10, 5, 3, 2, 1);
+                boolean hall_of_fame_normalized = false;
+                Config hall_of_fame_table_weights = ConfigFactory.empty();
+                Config hall_of_fame_stat_weights = ConfigFactory.empty();
+                try {
+                    Config hallOfFame = conf_file.getConfig("hall-of-fame-section");
+                    if (hallOfFame.hasPath("points") && !hallOfFame.getIntList("points").isEmpty()) {
+                        // Only the ranked positions can get points
+                        List<Integer> points = hallOfFame.getIntList("points");
+                        hall_of_fame_points = points.subList(0, Math.min(points.size(), DatabaseUtils.LEADERBOARD_SIZE));
+                    }
+                    if (hallOfFame.hasPath("normalized")) {
+                        hall_of_fame_normalized = hallOfFame.getBoolean("normalized");
+                    }
+                    if (hallOfFame.hasPath("table-weights")) {
+                        hall_of_fame_table_weights = hallOfFame.getConfig("table-weights");
+                    }
+                    if (hallOfFame.hasPath("stat-weights")) {
+                        hall_of_fame_stat_weights = hallOfFame.getConfig("stat-weights");
+                    }
+                } catch (ConfigException.Missing ignored) {}
+                Config hallOfFame = ConfigFactory.empty()
+                        .withValue("points", ConfigValueFactory.fromIterable(hall_of_fame_points))
+                        .withValue("normalized", ConfigValueFactory.fromAnyRef(hall_of_fame_normalized))
+                        .withValue("table-weights", hall_of_fame_table_weights.root())
+                        .withValue("stat-weights", hall_of_fame_stat_weights.root());
+
                 // Check if stats-folder is set up correctly
                 String stats_folder;
                 try {
@@ -175,6 +300,60 @@ public class ConfigUtils {
                     }
                 }
 
+                // Check the number of kept database snapshots, use default if missing or invalid
+                int web_server_snapshots_kept = 3;
+                try {
+                    web_server_snapshots_kept = Math.max(1, webServer.getInt("snapshots-kept"));
+                } catch (ConfigException.Missing ignored) {}
+                webServer = webServer.withValue("snapshots-kept", ConfigValueFactory.fromAnyRef(web_server_snapshots_kept));
+
+                // Check the minimum time between database snapshots, use default if missing or invalid
+                int web_server_snapshot_min_interval = 60;
+                try {
+                    web_server_snapshot_min_interval = Math.max(0, webServer.getInt("snapshot-min-interval"));
+                } catch (ConfigException.Missing ignored) {}
+                webServer = webServer.withValue("snapshot-min-interval", ConfigValueFactory.fromAnyRef(web_server_snapshot_min_interval));
+
+                // Check how long replaced database snapshots are kept, use default if missing or invalid
+                int web_server_snapshot_retention = 600;
+                try {
+                    web_server_snapshot_retention = Math.max(0, webServer.getInt("snapshot-retention"));
+                } catch (ConfigException.Missing ignored) {}
+                webServer = webServer.withValue("snapshot-retention", ConfigValueFactory.fromAnyRef(web_server_snapshot_retention));
+
+                // Check the size of the read-only connection pool of the web API, use default if missing or invalid
+                int web_server_api_pool_size = 4;
+                try {
+                    web_server_api_pool_size = Math.max(1, webServer.getInt("api-pool-size"));
+                } catch (ConfigException.Missing ignored) {}
+                webServer = webServer.withValue("api-pool-size", ConfigValueFactory.fromAnyRef(web_server_api_pool_size));
+
+                // Check the lazy loading section, lazy loading is disabled if the section is missing
+                boolean lazy_loading_enabled = false;
+                int lazy_loading_page_size = 1024;
+                int lazy_loading_chunk_size = 1048576;
+                try {
+                    Config lazyLoading = webServer.getConfig("lazy-loading");
+                    lazy_loading_enabled = lazyLoading.getBoolean("enabled");
+                    // SQLite page sizes are powers of two between 512 and 65536
+                    if (lazyLoading.hasPath("page-size")) {
+                        int page_size = lazyLoading.getInt("page-size");
+                        if (page_size >= 512 && page_size <= 65536 && Integer.bitCount(page_size) == 1) {
+                            lazy_loading_page_size = page_size;
+                        }
+                    }
+                    // Chunks are whole pages
+                    if (lazyLoading.hasPath("chunk-size") && lazyLoading.getInt("chunk-size") > 0) {
+                        lazy_loading_chunk_size = lazyLoading.getInt("chunk-size");
+                    }
+                } catch (ConfigException.Missing ignored) {}
+                lazy_loading_chunk_size = Math.max(1, lazy_loading_chunk_size / lazy_loading_page_size) * lazy_loading_page_size;
+                webServer = webServer.withValue("lazy-loading", ConfigFactory.empty()
+                        .withValue("enabled", ConfigValueFactory.fromAnyRef(lazy_loading_enabled))
+                        .withValue("page-size", ConfigValueFactory.fromAnyRef(lazy_loading_page_size))
+                        .withValue("chunk-size", ConfigValueFactory.fromAnyRef(lazy_loading_chunk_size))
+                        .root());
+
                 // If location is REMOTE, check if the other keys are set up correctly
                 if (db_location.equals("REMOTE")) {
                     if (!database.hasPath("type") || !database.hasPath("name") || !database.hasPath("host") || !database.hasPath("port") || !database.hasPath("username") || !database.hasPath("password")) {
@@ -183,6 +362,18 @@ public class ConfigUtils {
                     }
                 }
 
+                // Check connection pool settings, use defaults if missing or invalid
+                // The pool needs at least one connection for the coordinating thread and one for each worker
+                if (!database.hasPath("pool-size") || database.getInt("pool-size") < 2) {
+                    database = database.withValue("pool-size", ConfigValueFactory.fromAnyRef(sync_thread_count + 1));
+                }
+                if (!database.hasPath("pool-idle-timeout") || database.getInt("pool-idle-timeout") < 1) {
+                    database = database.withValue("pool-idle-timeout", ConfigValueFactory.fromAnyRef(300));
+                }
+                if (!database.hasPath("pool-lease-timeout") || database.getInt("pool-lease-timeout") < 1) {
+                    database = database.withValue("pool-lease-timeout", ConfigValueFactory.fromAnyRef(60));
+                }
+
                 // Set DB Type to SQLITE if location is LOCAL, otherwise use the value from the config
                 if (db_location.equals("LOCAL")) {
                     database = database.withValue("type", ConfigValueFactory.fromAnyRef("SQLITE"));
@@ -197,6 +388,13 @@ public class ConfigUtils {
                 return ConfigFactory.empty()
                         .withValue("sync-thread-count", ConfigValueFactory.fromAnyRef(sync_thread_count))
                         .withValue("sync-interval", ConfigValueFactory.fromAnyRef(sync_interval))
+                        .withValue("sync-batch-size", ConfigValueFactory.fromAnyRef(sync_batch_size))
+                        .withValue("sync-delta-cache-size", ConfigValueFactory.fromAnyRef(sync_delta_cache_size))
+                        .withValue("sync-executor", syncExecutor.root())
+                        .withValue("sync-watcher", syncWatcher.root())
+                        .withValue("sync-capture", ConfigValueFactory.fromAnyRef(sync_capture))
+                        .withValue("stat-history", statHistory.root())
+                        .withValue("hall-of-fame", hallOfFame.root())
                         .withValue("stats-folder", ConfigValueFactory.fromAnyRef(stats_folder))
                         .withValue("web-server", webServer.root())
                         .withValue("database", database.root());
@@ -7,6 +7,8 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 
 
 public class DatabaseInitializer {
@@ -20,14 +22,18 @@ public class DatabaseInitializer {
         if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Initializing database ... \n ({}, {})", connection, dbType); }
 
         // Define the id column definition based on the database type
-        String idDefinition = (dbType.equalsIgnoreCase("SQLITE")) ? "INTEGER PRIMARY KEY" : "INT NOT NULL AUTO_INCREMENT PRIMARY KEY";
+        String idDefinition = switch (dbType.toUpperCase()) {
+            case "SQLITE" -> "INTEGER PRIMARY KEY";
+            case "POSTGRESQL" -> "SERIAL PRIMARY KEY";
+            default -> "INT NOT NULL AUTO_INCREMENT PRIMARY KEY";
+        };
 
         // Charset for MySQL/MariaDB
         String charset = (dbType.equalsIgnoreCase("MYSQL") || dbType.equalsIgnoreCase("MARIADB"))
                 ? " CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci"
                 : "";
 
-        String[] createTableStatements = {
+        List<String> createTableStatements = new ArrayList<>(List.of(
                 // Table uuid_map
                 "CREATE TABLE IF NOT EXISTS uuid_map (" +
                         "id " + idDefinition + "," +
@@ -42,43 +48,67 @@ public class DatabaseInitializer {
                         "server_name VARCHAR(256) DEFAULT NULL," +
                         "server_desc VARCHAR(256) DEFAULT NULL," +
                         "server_url VARCHAR(256) DEFAULT NULL," +
-                        "server_icon BLOB DEFAULT NULL," +
+                        "server_icon " + getBinaryType(dbType) + " DEFAULT NULL," +
                         "PRIMARY KEY (last_update)" +
                         ")" + charset,
 
                 // Table hall_of_fame
-                "CREATE TABLE IF NOT EXISTS hall_of_fame (" +
-                        "player_id INT NOT NULL," +
-                        "first_place INT NOT NULL," +
-                        "second_place INT NOT NULL," +
-                        "third_place INT NOT NULL," +
-                        "fourth_place INT NOT NULL," +
-                        "fifth_place INT NOT NULL," +
-                        "score INT NOT NULL," +
-                        "PRIMARY KEY (player_id)," +
-                        "FOREIGN KEY (player_id) REFERENCES uuid_map(id) ON DELETE CASCADE" +
+                createHallOfFameSQL("hall_of_fame", null, dbType),
+
+                // Table sync_state (counters of the synchronization, e.g. the published generation)
+                "CREATE TABLE IF NOT EXISTS sync_state (" +
+                        "name VARCHAR(64) NOT NULL," +
+                        "value BIGINT NOT NULL," +
+                        "PRIMARY KEY (name)" +
                         ")" + charset,
 
-                // Tables for statistics
-                createStatsTableSQL("broken", charset),
-                "CREATE INDEX IF NOT EXISTS idx_broken_position ON `broken` (position)",
-                createStatsTableSQL("crafted", charset),
-                "CREATE INDEX IF NOT EXISTS idx_crafted_position ON `crafted` (position)",
-                createStatsTableSQL("custom", charset),
-                "CREATE INDEX IF NOT EXISTS idx_custom_position ON `custom` (position)",
-                createStatsTableSQL("dropped", charset),
-                "CREATE INDEX IF NOT EXISTS idx_dropped_position ON `dropped` (position)",
-                createStatsTableSQL("killed", charset),
-                "CREATE INDEX IF NOT EXISTS idx_killed_position ON `killed` (position)",
-                createStatsTableSQL("killed_by", charset),
-                "CREATE INDEX IF NOT EXISTS idx_killed_by_position ON `killed_by` (position)",
-                createStatsTableSQL("mined", charset),
-                "CREATE INDEX IF NOT EXISTS idx_mined_position ON `mined` (position)",
-                createStatsTableSQL("picked_up", charset),
-                "CREATE INDEX IF NOT EXISTS idx_picked_up_position ON `picked_up` (position)",
-                createStatsTableSQL("used", charset),
-                "CREATE INDEX IF NOT EXISTS idx_used_position ON `used` (position)"
-        };
+                // Table sync_manifest (state of the last synchronized stats file of each player)
+                "CREATE TABLE IF NOT EXISTS sync_manifest (" +
+                        "player_uuid VARCHAR(36) NOT NULL," +
+                        "file_size BIGINT NOT NULL," +
+                        "file_mtime BIGINT NOT NULL," +
+                        "content_hash BIGINT NOT NULL," +
+                        "PRIMARY KEY (player_uuid)" +
+                        ")" + charset
+        ));
+
+        // Table stat_history (gains per player and stat in hourly, daily and weekly buckets)
+        createTableStatements.add("CREATE TABLE IF NOT EXISTS stat_history (" +
+                "player_id INT NOT NULL," +
+                "table_index SMALLINT NOT NULL," +
+                "stat_name VARCHAR(256) NOT NULL," +
+                "resolution SMALLINT NOT NULL," +
+                "bucket_start BIGINT NOT NULL," +
+                "amount_delta BIGINT NOT NULL," +
+                "PRIMARY KEY (player_id, table_index, stat_name, resolution, bucket_start)," +
+                "FOREIGN KEY (player_id) REFERENCES uuid_map(id) ON DELETE CASCADE" +
+                ")" + charset);
+        createTableStatements.add("CREATE INDEX IF NOT EXISTS idx_stat_history_bucket ON stat_history (resolution, bucket_start)");
+
+        // Indexes for the nickname search and the player list of the API
+        createTableStatements.add(createNickIndexSQL(dbType));
+        createTableStatements.add("CREATE INDEX IF NOT EXISTS idx_uuid_map_last_online ON uuid_map (player_last_online)");
+
+        // Table gains_leaderboard (top players by gain within the rolling windows 24h, 7d and 30d)
+        createTableStatements.add("CREATE TABLE IF NOT EXISTS gains_leaderboard (" +
+                "window_name VARCHAR(8) NOT NULL," +
+                "table_index SMALLINT NOT NULL," +
+                "stat_name VARCHAR(256) NOT NULL," +
+                "position INT NOT NULL," +
+                "player_id INT NOT NULL," +
+                "amount BIGINT NOT NULL," +
+                "PRIMARY KEY (window_name, table_index, stat_name, position)," +
+                "FOREIGN KEY (player_id) REFERENCES uuid_map(id) ON DELETE CASCADE" +
+                ")" + charset);
+
+        // Tables for statistics
+        for (String tableName : DatabaseUtils.TABLE_NAMES) {
+            createTableStatements.add(createStatsTableSQL(tableName, charset));
+            createTableStatements.add("CREATE INDEX IF NOT EXISTS idx_" + tableName + "_position ON " + tableName + " (position)");
+            createTableStatements.add("CREATE INDEX IF NOT EXISTS idx_" + tableName + "_stat_amount ON " + tableName + " (stat_name, amount)");
+            createTableStatements.add("CREATE INDEX IF NOT EXISTS idx_" + tableName + "_stat_position ON " + tableName + " (stat_name, position)");
+            createTableStatements.add(createRollupTableSQL(tableName, charset));
+        }
 
         try {
             for (String sql : createTableStatements) {
@@ -92,12 +122,74 @@ public class DatabaseInitializer {
                 initializeLastUpdate(connection, dbType);
             }
 
+            // Check if the sync generation is initialized
+            if (!isGenerationInitialized(connection)) {
+                try (PreparedStatement statement = connection.prepareStatement("INSERT INTO sync_state (name, value) VALUES ('generation', 0)")) {
+                    statement.executeUpdate();
+                }
+            }
+
         } catch (SQLException e) {
             if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
             PlayerStatistics.LOGGER.error("Error initializing database: {}", e.getMessage());
         }
     }
 
+    /**
+      * Creates the SQL statement for the case-insensitive index on the nicknames.
+      * SQLite indexes the NOCASE collation, PostgreSQL the lower-case nickname with pattern operators (for LIKE 'prefix%'),
+      * MySQL and MariaDB compare the utf8mb4_unicode_ci column case-insensitively already.
+      * The queries have to match this index, see {@link DatabaseUtils#nickEqualsSQL(String)}.
+      * @param dbType The type of the database.
+      */
+    private static String createNickIndexSQL(String dbType) {
+        String column = switch (dbType.toUpperCase()) {
+            case "SQLITE" -> "player_nick COLLATE NOCASE";
+            case "POSTGRESQL" -> "(LOWER(player_nick)) text_pattern_ops";
+            default -> "player_nick";
+        };
+        return "CREATE INDEX IF NOT EXISTS idx_uuid_map_player_nick ON uuid_map (" + column + ")";
+    }
+
+    /**
+      * Creates the SQL statement for the score index of a Hall of Fame shadow table.
+      * The index is created after the rows are inserted and moves with the table on the swap,
+      * so its name is unique to the generation like the constraint names.
+      * @param tableName The name of the table.
+      * @param indexSuffix The suffix of the index name.
+      */
+    static String createHallOfFameIndexSQL(String tableName, String indexSuffix) {
+        return "CREATE INDEX idx_hall_of_fame_score_" + indexSuffix + " ON " + tableName + " (score)";
+    }
+
+    /**
+      * Creates the SQL statement for creating a Hall of Fame table (the table itself or its shadow table).
+      * Shadow tables get constraint names unique to their generation, because constraint and index names
+      * have to be unique per database on some dialects, and the shadow table keeps them after the swap.
+      * @param tableName The name of the table.
+      * @param constraintSuffix The suffix of the constraint names (null for unnamed constraints).
+      * @param dbType The type of the database.
+      */
+    static String createHallOfFameSQL(String tableName, String constraintSuffix, String dbType) {
+        String charset = (dbType.equalsIgnoreCase("MYSQL") || dbType.equalsIgnoreCase("MARIADB"))
+                ? " CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci"
+                : "";
+        String primaryKey = (constraintSuffix == null) ? "" : "CONSTRAINT pk_hall_of_fame_" + constraintSuffix + " ";
+        String foreignKey = (constraintSuffix == null) ? "" : "CONSTRAINT fk_hall_of_fame_" + constraintSuffix + " ";
+
+        return "CREATE TABLE IF NOT EXISTS " + tableName + " (" +
+                "player_id INT NOT NULL," +
+                "first_place INT NOT NULL," +
+                "second_place INT NOT NULL," +
+                "third_place INT NOT NULL," +
+                "fourth_place INT NOT NULL," +
+                "fifth_place INT NOT NULL," +
+                "score INT NOT NULL," +
+                primaryKey + "PRIMARY KEY (player_id)," +
+                foreignKey + "FOREIGN KEY (player_id) REFERENCES uuid_map(id) ON DELETE CASCADE" +
+                ")" + charset;
+    }
+
     /**
       * Creates the SQL statement for creating a statistics table.
       * The table uses player_id as a foreign key referencing uuid_map.
@@ -107,9 +199,10 @@ public class DatabaseInitializer {
         if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Creating table: {}", tableName); }
 
         // return createTableSQL + ";" + createIndexSQL;
-        return "CREATE TABLE IF NOT EXISTS `" + tableName + "` (" +
+        // Plain identifiers and column types, so the same DDL works on MySQL, MariaDB, SQLite and PostgreSQL
+        return "CREATE TABLE IF NOT EXISTS " + tableName + " (" +
                 "player_id INT NOT NULL," +
-                "position INT(2) NULL," +
+                "position INT NULL," +
                 "stat_name VARCHAR(256) NOT NULL," +
                 "amount INT NOT NULL," +
                 "PRIMARY KEY (player_id, stat_name)," +
@@ -117,6 +210,22 @@ public class DatabaseInitializer {
                 ")" + charset;
     }
 
+    /**
+      * Creates the SQL statement for creating the rollup table of a statistics table.
+      * The rollup table holds the server-wide aggregates of every stat (sum, number of players, maximum and minimum).
+      * @param tableName The name of the statistics table.
+      */
+    private static String createRollupTableSQL(String tableName, String charset) {
+        return "CREATE TABLE IF NOT EXISTS " + tableName + "_rollup (" +
+                "stat_name VARCHAR(256) NOT NULL," +
+                "total_amount BIGINT NOT NULL," +
+                "player_count INT NOT NULL," +
+                "max_amount INT NOT NULL," +
+                "min_amount INT NOT NULL," +
+                "PRIMARY KEY (stat_name)" +
+                ")" + charset;
+    }
+
     /**
       * Returns the appropriate timestamp type for the database.
       * @param dbType The type of the database.
@@ -133,6 +242,15 @@ public class DatabaseInitializer {
         };
     }
 
+    /**
+      * Returns the appropriate binary type for the database.
+      * @param dbType The type of the database.
+      * @return The binary type.
+      */
+    private static String getBinaryType(String dbType) {
+        return "POSTGRESQL".equalsIgnoreCase(dbType) ? "BYTEA" : "BLOB";
+    }
+
     /**
       * Returns the appropriate UUID type for the database.
       * @param dbType The type of the database.
@@ -170,6 +288,19 @@ public class DatabaseInitializer {
         return false;
     }
 
+    /**
+      * Checks if the sync generation is initialized in the database.
+      * @param connection The connection to the database.
+      * @return True if the sync generation is initialized, false otherwise.
+      * @throws SQLException If an SQL error occurs.
+      */
+    private static boolean isGenerationInitialized(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM sync_state WHERE name = 'generation'");
+             ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next() && resultSet.getInt(1) > 0;
+        }
+    }
+
     /**
       * Initializes the last_update in the database.
       * @param connection The connection to the database.
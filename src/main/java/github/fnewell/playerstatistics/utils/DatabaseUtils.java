@@ -2,6 +2,7 @@ package github.fnewell.playerstatistics.utils;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import github.fnewell.playerstatistics.PlayerStatistics;
+import github.fnewell.playerstatistics.db.ConnectionPool;
 import github.fnewell.playerstatistics.db.LocalDatabase;
 
 import java.net.HttpURLConnection;
@@ -9,27 +10,125 @@ import java.net.URI;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 public class DatabaseUtils {
 
     public static final String DB_LOCATION = ConfigUtils.config.getString("database.location");     // LOCAL or REMOTE
-    private static final String DB_TYPE = ConfigUtils.config.getString("database.type");            // Database type (MySQL, MariaDB, SQLite, PostgreSQL)
+    public static final String DB_TYPE = ConfigUtils.config.getString("database.type");            // Database type (MySQL, MariaDB, SQLite, PostgreSQL)
 
-    private static final List<String> TABLE_NAMES = Arrays.asList(
+    public static final List<String> TABLE_NAMES = Arrays.asList(
         "broken", "crafted", "custom", "dropped", "killed", "killed_by", "mined", "picked_up", "used"
     );
 
+    public static final int LEADERBOARD_SIZE = 5;     // Number of ranked players (positions) per stat
+
+    // Pool of database connections shared by all synchronization workers
+    private static ConnectionPool connectionPool;
+
+    // Pool of read-only database connections used by the web API
+    private static ConnectionPool readConnectionPool;
+
     /**
       * Get a connection to the database based on the configuration.
-      * This method is used to connect to a local or remote database based on the configuration.
+      * The connection is leased from the connection pool, so every worker gets its own connection.
+      * Closing the returned connection returns it to the pool.
       *
       * @return The database connection.
       * @throws Exception If an error occurs while connecting to the database.
       */
     public static Connection getDatabaseConnection() throws Exception {
+        return getConnectionPool().lease();
+    }
+
+    /**
+      * Get the connection pool, create it on first use.
+      *
+      * @return The connection pool.
+      */
+    public static synchronized ConnectionPool getConnectionPool() {
+        if (connectionPool == null) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Creating database connection pool ..."); }
+            connectionPool = new ConnectionPool(
+                    "sync",
+                    DatabaseUtils::openDatabaseConnection,
+                    ConfigUtils.config.getInt("database.pool-size"),
+                    TimeUnit.SECONDS.toMillis(ConfigUtils.config.getInt("database.pool-idle-timeout")),
+                    TimeUnit.SECONDS.toMillis(ConfigUtils.config.getInt("database.pool-lease-timeout")),
+                    5
+            );
+        }
+        return connectionPool;
+    }
+
+    /**
+      * Get a read-only connection to the database (for the web API).
+      * The connection is leased from the read-only connection pool, so web requests never take connections from the sync.
+      * Closing the returned connection returns it to the pool.
+      *
+      * @return The read-only database connection.
+      * @throws Exception If an error occurs while connecting to the database.
+      */
+    public static Connection getReadConnection() throws Exception {
+        return getReadConnectionPool().lease();
+    }
+
+    /**
+      * Get the read-only connection pool, create it on first use.
+      *
+      * @return The read-only connection pool.
+      */
+    public static synchronized ConnectionPool getReadConnectionPool() {
+        if (readConnectionPool == null) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Creating read-only database connection pool ..."); }
+            readConnectionPool = new ConnectionPool(
+                    "web",
+                    DatabaseUtils::openReadConnection,
+                    ConfigUtils.config.getInt("web-server.api-pool-size"),
+                    TimeUnit.SECONDS.toMillis(ConfigUtils.config.getInt("database.pool-idle-timeout")),
+                    TimeUnit.SECONDS.toMillis(ConfigUtils.config.getInt("database.pool-lease-timeout")),
+                    5,
+                    true
+            );
+        }
+        return readConnectionPool;
+    }
+
+    /**
+      * Drop the read-only connection pool so new API connections open the newest snapshot.
+      * Leased connections keep reading the previous snapshot and are closed when they are returned.
+      */
+    public static synchronized void resetReadConnectionPool() {
+        if (readConnectionPool != null && "LOCAL".equals(DB_LOCATION)) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Switching read-only database connection pool to the new snapshot ..."); }
+            readConnectionPool.close();
+            readConnectionPool = null;
+        }
+    }
+
+    /**
+      * Close the connection pools and all idle connections.
+      */
+    public static synchronized void closeConnectionPool() {
+        if (connectionPool != null) {
+            connectionPool.close();
+            connectionPool = null;
+        }
+        if (readConnectionPool != null) {
+            readConnectionPool.close();
+            readConnectionPool = null;
+        }
+    }
+
+    /**
+      * Open a new physical connection to the database based on the configuration.
+      * This method is used to connect to a local or remote database based on the configuration.
+      *
+      * @return The database connection.
+      * @throws Exception If an error occurs while connecting to the database.
+      */
+    private static Connection openDatabaseConnection() throws Exception {
         if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Connecting to the database ..."); }
 
         // Connect to the database based on the configuration
@@ -44,9 +143,15 @@ public class DatabaseUtils {
             String DbPassword = ConfigUtils.config.getString("database.password");
 
             // Construct the JDBC URL based on the database type
+            // (drivers are asked to rewrite JDBC batches into multi-row statements,
+            //  PostgreSQL casts string parameters to the column type, e.g. UUID)
             String url = switch (DbType) {
-                case "MARIADB", "MYSQL", "POSTGRESQL" ->
-                        "jdbc:" + DbType.toLowerCase() + "://" + DbHost + ":" + DbPort + "/" + DbName;
+                case "MARIADB" ->
+                        "jdbc:mariadb://" + DbHost + ":" + DbPort + "/" + DbName;
+                case "MYSQL" ->
+                        "jdbc:mysql://" + DbHost + ":" + DbPort + "/" + DbName + "?rewriteBatchedStatements=true";
+                case "POSTGRESQL" ->
+                        "jdbc:postgresql://" + DbHost + ":" + DbPort + "/" + DbName + "?reWriteBatchedInserts=true&stringtype=unspecified";
                 case "SQLITE" -> "jdbc:sqlserver://" + DbHost + ":" + DbPort + ";databaseName=" + DbName;
                 default -> throw new IllegalArgumentException("Unexpected value: " + DbType);
             };
@@ -61,41 +166,25 @@ public class DatabaseUtils {
     }
 
     /**
-     * Fetch the list of players (UUID and last online time) from the database.
-     *
-     * @param connection The database connection to use.
-     * @return A map containing player UUIDs as keys and their last online times as values.
-     */
-    public static Map<String, Timestamp> fetchPlayerDataFromDatabase(Connection connection) {
-        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Fetching player data from database..."); }
-
-        String query = "SELECT player_uuid, player_last_online FROM uuid_map";
-        Map<String, Timestamp> playerDataMap = new HashMap<>();
-
-        try (PreparedStatement statement = connection.prepareStatement(query);
-             ResultSet resultSet = statement.executeQuery()) {
-
-            while (resultSet.next()) {
-                String playerUUID = resultSet.getString("player_uuid");
-                long lastOnlineMillis = resultSet.getLong("player_last_online");
-                Timestamp lastOnline = new Timestamp(lastOnlineMillis);
-
-                playerDataMap.put(playerUUID, lastOnline);
-
-                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Fetched player: UUID = {}, Last Online = {}", playerUUID, lastOnline); }
-            }
-
-        } catch (SQLException e) {
-            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
-            PlayerStatistics.LOGGER.error("Error fetching player data from database: {}", e.getMessage());
+      * Open a new physical read-only connection to the database.
+      * The local SQLite database is opened in read-only mode, remote connections are marked read-only.
+      *
+      * @return The read-only database connection.
+      * @throws Exception If an error occurs while connecting to the database.
+      */
+    private static Connection openReadConnection() throws Exception {
+        if ("LOCAL".equals(DB_LOCATION)) {
+            // Read the served snapshot instead of the live file, so API queries never hold locks that block sync commits
+            return LocalDatabase.getReadOnlyConnection(SnapshotManager.servedFile());
         }
-
-        return playerDataMap;
+        Connection connection = openDatabaseConnection();
+        connection.setReadOnly(true);
+        return connection;
     }
 
     /**
       * Fetch and update missing player nicknames in the database.
-      * This method is called after all player statistics have been synchronized, to fetch all missing player nicknames.
+      * This method is called after a full scan of the stats folder, to fetch all missing player nicknames.
       *
       * @param connection The connection to the database.
       */
@@ -105,9 +194,9 @@ public class DatabaseUtils {
         String countSQL = "SELECT COUNT(*) AS total FROM uuid_map WHERE player_nick IS NULL";
         String fetchMissingNicksSQL = "SELECT id, player_uuid FROM uuid_map WHERE player_nick IS NULL";
 
-        try (ExecutorService executor = Executors.newFixedThreadPool(ConfigUtils.config.getInt("sync-thread-count"))) {
-            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Executor created (missing nicks)"); }
-            PlayerStatistics.executors.add(executor);   // Add the executor to the list of executors for cleanup
+        try {
+            // Nicks are fetched concurrently, limited by the HTTP and database permits of the shared executor
+            SyncExecutors.Phase phase = SyncExecutors.phase("missing nicks", SyncExecutors.concurrency(SyncExecutors.Resource.HTTP));
 
             // Get total number of missing player nicks
             try (PreparedStatement countStmt = connection.prepareStatement(countSQL);
@@ -130,43 +219,15 @@ public class DatabaseUtils {
                 if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Fetching missing player nicks ..."); }
 
                 while (rs.next()) {
-                    int playerId = rs.getInt("id");
-                    String playerUUID = rs.getString("player_uuid");
-
-                    // Process each player in a separate thread
-                    executor.submit(() -> {
-                        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Executor running (missing nicks)"); }
-                        try {
-                            String playerNick;
-
-                            // Check if the player UUID starts with '00000000-0000-0000-'
-                            if (playerUUID.startsWith("00000000-0000-0000-")) {
-                                playerNick = fetchBedrockPlayerNickFromAPI(playerUUID);
-                            } else {
-                                playerNick = fetchJavaPlayerNickFromAPI(playerUUID);
-                            }
-
-                            //String playerNick = fetchJavaPlayerNickFromAPI(playerUUID);
-                            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Fetched nick for UUID: {} ({})", playerUUID, playerNick); }
-                            if (playerNick != null) {
-                                updatePlayerNickInDatabase(connection, playerId, playerNick);
-                                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Updated nick for UUID: {} ({})", playerUUID, playerNick); }
-                            }
-                        } catch (Exception e) {
-                            PlayerStatistics.LOGGER.error("Error fetching/updating nick for UUID: {}", playerUUID);
-                        }
-                    });
+                    submitNickLookup(phase, rs.getInt("id"), rs.getString("player_uuid"));
                 }
             } catch (SQLException e) {
                 if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
                 PlayerStatistics.LOGGER.error("Error fetching missing player nicks: {}", e.getMessage());
             }
 
-            // Wait for all threads to finish
-            executor.shutdown();
-            if (!executor.awaitTermination(3, TimeUnit.MINUTES)) {
-                executor.shutdownNow();
-            }
+            // Wait for all tasks to finish
+            phase.await(3, TimeUnit.MINUTES);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
@@ -175,56 +236,94 @@ public class DatabaseUtils {
     }
 
     /**
-      * Get or insert (new) the player ID for the given UUID.
+      * Fetch and update the nicknames of the given players (players just inserted by an incremental sync).
+      * Unlike {@link #fetchAndUpdateMissingPlayerNicks(Connection)} the other players without a nickname are not looked up again,
+      * so UUIDs which never resolve (e.g. on offline-mode servers) are only retried by the scheduled full scan.
       *
-      * @param connection The connection to the database.
+      * @param players A map containing player IDs as keys and their UUIDs as values.
+      */
+    public static void fetchAndUpdatePlayerNicks(Map<Integer, UUID> players) {
+        if (players.isEmpty()) {
+            return;
+        }
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Fetching nicks of {} new players ...", players.size()); }
+
+        try {
+            SyncExecutors.Phase phase = SyncExecutors.phase("new player nicks", SyncExecutors.concurrency(SyncExecutors.Resource.HTTP));
+            StatSyncTask.progressTo = players.size();
+            players.forEach((playerId, playerUUID) -> submitNickLookup(phase, playerId, playerUUID.toString()));
+            phase.await(3, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Executor interrupted (new player nicks): {}", e.getMessage());
+        }
+    }
+
+    /**
+      * Look up the nickname of a player (Mojang or Geyser API) and store it, in a task of the given phase.
+      *
+      * @param phase The phase of the nick lookups.
+      * @param playerId The ID of the player.
       * @param playerUUID The UUID of the player.
-      * @param lastOnline The last online timestamp of the player.
-      * @return The player ID.
-      * @throws SQLException If an SQL error occurs.
       */
-    public static int getOrInsertPlayerId(Connection connection, UUID playerUUID, Timestamp lastOnline) throws SQLException {
-        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Getting/Inserting player ID for UUID: {}", playerUUID); }
-
-        String selectSQL = "SELECT id FROM uuid_map WHERE player_uuid = ?";
-        try (PreparedStatement selectStmt = connection.prepareStatement(selectSQL)) {
-            selectStmt.setString(1, playerUUID.toString());
-            try (ResultSet rs = selectStmt.executeQuery()) {
-                if (rs.next()) {
-                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Player ID found for UUID: {}", playerUUID); }
-
-                    int playerId = rs.getInt("id");
-
-                    // Update the last online timestamp
-                    String updateSQL = "UPDATE uuid_map SET player_last_online = ? WHERE id = ?";
-                    try (PreparedStatement updateStmt = connection.prepareStatement(updateSQL)) {
-                        updateStmt.setTimestamp(1, lastOnline);
-                        updateStmt.setInt(2, playerId);
-                        updateStmt.executeUpdate();
+    private static void submitNickLookup(SyncExecutors.Phase phase, int playerId, String playerUUID) {
+        // Process each player in a separate task
+        phase.submit(() -> {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Executor running (missing nicks)"); }
+            try {
+                String[] playerNick = new String[1];
+
+                SyncExecutors.withPermit(SyncExecutors.Resource.HTTP, () -> {
+                    // Check if the player UUID starts with '00000000-0000-0000-'
+                    if (playerUUID.startsWith("00000000-0000-0000-")) {
+                        playerNick[0] = fetchBedrockPlayerNickFromAPI(playerUUID);
+                    } else {
+                        playerNick[0] = fetchJavaPlayerNickFromAPI(playerUUID);
                     }
+                });
 
-                    return playerId;
+                //String playerNick = fetchJavaPlayerNickFromAPI(playerUUID);
+                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Fetched nick for UUID: {} ({})", playerUUID, playerNick[0]); }
+                if (playerNick[0] != null) {
+                    // Every worker leases its own connection from the pool
+                    SyncExecutors.withPermit(SyncExecutors.Resource.DATABASE, () -> {
+                        try (Connection workerConnection = getDatabaseConnection()) {
+                            updatePlayerNickInDatabase(workerConnection, playerId, playerNick[0]);
+                        }
+                    });
+                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Updated nick for UUID: {} ({})", playerUUID, playerNick[0]); }
                 }
+            } catch (Exception e) {
+                PlayerStatistics.LOGGER.error("Error fetching/updating nick for UUID: {}", playerUUID);
             }
-        }
-
-        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Player ID not found for UUID: {} (insert)", playerUUID); }
+        });
+    }
 
-        String insertSQL = "INSERT INTO uuid_map (player_uuid, player_last_online) VALUES (?, ?)";
-        try (PreparedStatement insertStmt = connection.prepareStatement(insertSQL, PreparedStatement.RETURN_GENERATED_KEYS)) {
-            insertStmt.setString(1, playerUUID.toString()); // Set the player UUID
-            insertStmt.setTimestamp(2, lastOnline); // Set the last online timestamp
-            insertStmt.executeUpdate();
+    /**
+      * Store the nicknames of online players (taken from their game profiles, so no API lookup is needed).
+      * Rows which already have the nickname are not rewritten.
+      *
+      * @param connection The connection to the database.
+      * @param nicks A map containing player IDs as keys and their nicknames as values.
+      * @throws SQLException If an SQL error occurs.
+      */
+    public static void updatePlayerNicks(Connection connection, Map<Integer, String> nicks) throws SQLException {
+        if (nicks.isEmpty()) {
+            return;
+        }
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Updating nicks of {} online players ...", nicks.size()); }
 
-            try (ResultSet rs = insertStmt.getGeneratedKeys()) {
-                if (rs.next()) {
-                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Player ID inserted for UUID: {}", playerUUID); }
-                    return rs.getInt(1);
-                }
+        String updateSQL = "UPDATE uuid_map SET player_nick = ? WHERE id = ? AND (player_nick IS NULL OR player_nick <> ?)";
+        try (PreparedStatement updateStmt = connection.prepareStatement(updateSQL)) {
+            for (Map.Entry<Integer, String> entry : nicks.entrySet()) {
+                updateStmt.setString(1, entry.getValue());
+                updateStmt.setInt(2, entry.getKey());
+                updateStmt.setString(3, entry.getValue());
+                updateStmt.addBatch();
             }
+            updateStmt.executeBatch();
         }
-
-        throw new SQLException("Failed to insert or retrieve player ID for UUID: " + playerUUID);
     }
 
     /**
@@ -285,21 +384,7 @@ public class DatabaseUtils {
             if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Updating sync metadata (statement) ..."); }
 
             // Set the current timestamp as the last update time
-            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
-            String dbType = ConfigUtils.config.getString("database.type");
-            if ("LOCAL".equals(DB_LOCATION)) {
-                dbType = "SQLITE";
-            }
-
-            // Set the current timestamp by database type
-            if ("SQLITE".equals(dbType)) {
-                // For SQLite, we set the time as a string in ISO 8601 format
-                String isoTime = now.toLocalDateTime().toString(); // Format: YYYY-MM-DDTHH:MM:SS
-                statement.setString(1, isoTime);
-            } else {
-                // For MySQL/MariaDB/PostgreSQL set Timestamp directly
-                statement.setTimestamp(1, now);
-            }
+            Timestamp now = setSyncTime(statement);
 
             // Set the server name, server description, server url and server icon
             statement.setString(2, serverName);
@@ -318,6 +403,52 @@ public class DatabaseUtils {
         }
     }
 
+    /**
+      * Update only the last update time of the sync metadata (incremental syncs, the server details are read by full scans).
+      *
+      * @param connection The connection to the database.
+      */
+    public static void updateSyncTime(Connection connection) {
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Updating sync time ..."); }
+
+        try (PreparedStatement statement = connection.prepareStatement("UPDATE sync_metadata SET last_update = ?")) {
+            Timestamp now = setSyncTime(statement);
+            statement.executeUpdate();
+
+            // Update last sync time (remove milliseconds)
+            StatSyncTask.lastSync = String.valueOf(now).split("\\.")[0];
+        } catch (Exception e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error updating sync time: {}", e.getMessage());
+        }
+    }
+
+    /**
+      * Set the current time as the first parameter of a sync metadata statement.
+      *
+      * @param statement The statement.
+      * @return The current time.
+      * @throws SQLException If an SQL error occurs.
+      */
+    private static Timestamp setSyncTime(PreparedStatement statement) throws SQLException {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        String dbType = ConfigUtils.config.getString("database.type");
+        if ("LOCAL".equals(DB_LOCATION)) {
+            dbType = "SQLITE";
+        }
+
+        // Set the current timestamp by database type
+        if ("SQLITE".equals(dbType)) {
+            // For SQLite, we set the time as a string in ISO 8601 format
+            String isoTime = now.toLocalDateTime().toString(); // Format: YYYY-MM-DDTHH:MM:SS
+            statement.setString(1, isoTime);
+        } else {
+            // For MySQL/MariaDB/PostgreSQL set Timestamp directly
+            statement.setTimestamp(1, now);
+        }
+        return now;
+    }
+
     /**
       * Update the player nickname in the database.
       *
@@ -338,89 +469,26 @@ public class DatabaseUtils {
             updateStmt.executeUpdate();
 
             // Increment synced players
-            StatSyncTask.progressFrom++;
+            StatSyncTask.progressFrom.incrementAndGet();
         }
     }
 
     /**
       * Synchronize player statistics with the database.
-      * This method is called for each player file in a separate thread.
+      * This method is called for each player file by a sync worker, the rows are written by the worker's batch writer.
       *
-      * @param connection The connection to the database.
-      * @param playerUUID The UUID of the player.
-      * @param lastOnline The last online timestamp of the player.
-      * @param stats The player statistics.
+      * @param writer The batch writer of the sync worker.
+      * @param playerId The ID of the player (resolved by {@link PlayerIdentityMap}).
+      * @param stats The parsed player statistics.
+      * @throws SQLException If an SQL error occurs.
       */
-    public static void syncPlayerStats(Connection connection, UUID playerUUID, Timestamp lastOnline, JsonNode stats) {
+    public static void syncPlayerStats(StatBatchWriter writer, int playerId, PlayerStatsBuffer stats) throws SQLException {
         if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Synchronizing player stats ..."); }
 
-        try {
-            int playerId = getOrInsertPlayerId(connection, playerUUID, lastOnline);
-
-            Map<String, List<String>> batchStatements = new HashMap<>();
-
-            // Create batch statements for each stat type
-            for (Iterator<String> it = stats.fieldNames(); it.hasNext(); ) {
-                String statType = it.next();
-                JsonNode statDetails = stats.get(statType);
-                String tableName = "`" + statType.replace("minecraft:", "") + "`";
-                List<String> statements = batchStatements.computeIfAbsent(tableName, k -> new ArrayList<>());
-
-                statDetails.fields().forEachRemaining(entry -> {
-                    String statName = entry.getKey();
-                    int amount = entry.getValue().asInt();
-                    statements.add(String.format("(%d, '%s', %d)", playerId, statName.replace("minecraft:", ""), amount));
-                });
-            }
-
-            // Syntax differences for different database types
-            String dbType = ConfigUtils.config.getString("database.type");
-            if ("LOCAL".equals(DB_LOCATION)) {
-                dbType = "SQLITE";
-            }
-
-            String finalDbType = dbType;
-            batchStatements.forEach((tableName, statements) -> {
-                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Synchronizing player stats ({}) - {} / {} ...", finalDbType, tableName, statements); }
-
-                String sql = switch (finalDbType) {
-                    case "MARIADB", "MYSQL" ->
-                            """
-                                INSERT INTO %s (player_id, stat_name, amount)
-                                VALUES %s
-                                ON DUPLICATE KEY UPDATE amount = VALUES(amount)
-                            """.formatted(tableName, String.join(", ", statements));
-                    case "SQLITE" ->
-                            """
-                                INSERT INTO %s (player_id, stat_name, amount)
-                                VALUES %s
-                                ON CONFLICT(player_id, stat_name) DO UPDATE SET amount = excluded.amount
-                            """.formatted(tableName, String.join(", ", statements));
-                    case "POSTGRESQL" ->
-                            """
-                                INSERT INTO %s (player_id, stat_name, amount)
-                                VALUES %s
-                                ON CONFLICT (player_id, stat_name) DO UPDATE SET amount = excluded.amount
-                            """.formatted(tableName, String.join(", ", statements));
-                    case null, default -> throw new IllegalArgumentException("Unsupported database type: " + finalDbType);
-                };
-
-                try (PreparedStatement statement = connection.prepareStatement(sql)) {
-                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Executing batch statement ..."); }
-                    statement.executeUpdate();
-                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Batch statement executed!"); }
-                } catch (Exception e) {
-                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
-                    PlayerStatistics.LOGGER.error("Error executing batch statement: {}", e.getMessage());
-                }
-            });
+        writer.addPlayer(playerId, stats);
 
-            // Increment synced players
-            StatSyncTask.progressFrom++;
-        } catch (Exception e) {
-            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
-            PlayerStatistics.LOGGER.error("Error synchronizing player stats: {}", e.getMessage());
-        }
+        // Increment synced players
+        StatSyncTask.progressFrom.incrementAndGet();
     }
 
     /**
@@ -494,276 +562,209 @@ public class DatabaseUtils {
     }
 
     /**
-      *   Update the positions for all players in the database.
-      *   This method ranks players based on the amount of each stat and updates the position column in the database.
-      *   Only the top 5 players for each stat are ranked.
+      *   Update the positions of the players in the leaderboard partitions touched by a synchronization.
+      *   Only the top 5 players of each (table, stat) partition are ranked, partitions without changes are not touched.
+      *   Partitions which could not be ranked or published are retried by the next publish.
+      *   The ranking comes from the in-memory leaderboard index, every table is prepared on its own pooled connection
+      *   (partitions missing in the index are read from the database).
+      *   The changed positions of all tables, the changed Hall of Fame scores, the stat rollups, the stat history, the gains leaderboards and the next sync generation
+      *   are then published in one short transaction, so readers see either the old or the new generation.
       *
       *   @param connection The connection to the database.
-      *   @throws UnsupportedOperationException If an SQL error occurs.
+      *   @param changes The changes committed by the synchronization.
       */
-    public static void updatePositionsForTable(Connection connection) {
-        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Updating positions in tables ..."); }
-
-        StatSyncTask.progressTo = TABLE_NAMES.size();
+    public static void publishChanges(Connection connection, SyncChanges changes) {
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Updating positions of {} partitions ...", changes.touchedPartitions().size()); }
+
+        // Add the gains to the rolling windows (the stat rows are committed already)
+        GainsLeaderboards.apply(changes);
+
+        // Group the touched partitions (and the partitions which failed to publish last time) by table
+        Set<SyncChanges.Partition> touched = new HashSet<>(changes.touchedPartitions());
+        touched.addAll(LeaderboardIndex.takeRetries());
+        Map<Integer, List<String>> partitions = new TreeMap<>();
+        for (SyncChanges.Partition partition : touched) {
+            partitions.computeIfAbsent(partition.tableIndex(), tableIndex -> new ArrayList<>()).add(partition.statName());
+        }
+        StatSyncTask.progressTo = touched.size();
 
-        int sync_thread_count = "SQLITE".equalsIgnoreCase(DB_TYPE) ? 1 : ConfigUtils.config.getInt("sync-thread-count");
+        Map<Integer, LeaderboardIndex.PositionUpdates> ranked = new ConcurrentHashMap<>();
+        Map<Integer, LeaderboardIndex.PositionUpdates> prepared;
+        try {
+            SyncExecutors.Phase phase = SyncExecutors.phase("positions", SyncExecutors.concurrency(SyncExecutors.Resource.DATABASE));
 
-        try (ExecutorService executor = Executors.newFixedThreadPool(sync_thread_count)) {
-            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Executor created (positions)"); }
-            PlayerStatistics.executors.add(executor);   // Add the executor to the list of executors for cleanup
+            partitions.forEach((tableIndex, statNames) -> phase.submit(() -> SyncExecutors.withPermit(SyncExecutors.Resource.DATABASE, () -> {
+                try (Connection tableConnection = getDatabaseConnection()) {
+                    ranked.put(tableIndex, LeaderboardIndex.preparePositions(tableConnection, tableIndex, statNames));
+                } catch (Exception e) {
+                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+                    PlayerStatistics.LOGGER.error("Error ranking positions in table '{}': {}", TABLE_NAMES.get(tableIndex), e.getMessage());
+                    LeaderboardIndex.retry(tableIndex, statNames);
+                }
+            })));
 
-            for (String tableName : TABLE_NAMES) {
-                executor.submit(() -> {
-                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Executor running (positions)"); }
-                    try {
-                        // Reset the 'position' column in the table
-                        String resetPositionsSQL = "UPDATE " + tableName + " SET position = NULL";
-                        try (PreparedStatement resetStmt = connection.prepareStatement(resetPositionsSQL)) {
-                            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Resetting positions in table: {}", tableName); }
-                            resetStmt.executeUpdate();
-                            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Positions reset in table: {}", tableName); }
-                        }
+            boolean finished = phase.await(3, TimeUnit.MINUTES);
 
-                        if ("MYSQL".equalsIgnoreCase(DB_TYPE) || "MARIADB".equalsIgnoreCase(DB_TYPE)) {
-                            updatePositionsMySQL(connection, tableName);
-                            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Positions updated in table (MySQL/MARIADB): {}", tableName); }
-                        } else if ("SQLITE".equalsIgnoreCase(DB_TYPE)) {
-                            updatePositionsSQLite(connection, tableName);
-                            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Positions updated in table (SQLite): {}", tableName); }
-                        } else {
-                            throw new UnsupportedOperationException("Unsupported database type: " + DB_TYPE);
-                        }
-                    } catch (SQLException e) {
-                        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
-                        PlayerStatistics.LOGGER.error("Error updating positions in table '{}': {}", tableName, e.getMessage());
+            // Cancelled tasks could still finish, only the tables prepared in time are published
+            prepared = new HashMap<>(ranked);
+            if (!finished) {
+                partitions.forEach((tableIndex, statNames) -> {
+                    if (!prepared.containsKey(tableIndex)) {
+                        LeaderboardIndex.retry(tableIndex, statNames);
                     }
                 });
             }
-
-            executor.shutdown();
-            if (!executor.awaitTermination(3, TimeUnit.MINUTES)) {
-                executor.shutdown();
-            }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
             PlayerStatistics.LOGGER.error("Executor interrupted (positions): {}", e.getMessage());
+            StatRollups.invalidate();
+            partitions.forEach(LeaderboardIndex::retry);
+            StatHistory.retry(changes);
+            return;
         }
 
+        // Publish all tables together
+        try {
+            long start = System.nanoTime();
+            int updated = 0;
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                for (LeaderboardIndex.PositionUpdates updates : prepared.values()) {
+                    updates.write(connection);
+                    updated += updates.size();
+                }
+                StatRollups.write(connection, changes);
+                HallOfFame.write(connection, prepared.values());
+                StatHistory.write(connection, changes);
+                GainsLeaderboards.write(connection);
+                incrementSyncGeneration(connection);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+
+            // The index follows the database only after the commit
+            for (LeaderboardIndex.PositionUpdates updates : prepared.values()) {
+                updates.commit(changes);
+            }
+            HallOfFame.commit();
+            StatHistory.commit();
+            GainsLeaderboards.commit();
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Positions published ({} tables, {} rows, {} ms)", prepared.size(), updated, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)); }
+        } catch (SQLException e) {
+            // The stat rows are committed already, so the rollups and positions do not match them anymore
+            StatRollups.invalidate();
+            partitions.forEach(LeaderboardIndex::retry);
+            StatHistory.retry(changes);     // The gains windows counted them already
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error publishing positions: {}", e.getMessage());
+        }
     }
 
     /**
-      * Update the positions for all players in the database (MySQL and MariaDB version).
-      * This method ranks players based on the amount of each stat and updates the position column in the database.
+      * Get the generation of the published derived data (positions, Hall of Fame).
+      * The generation changes with every published synchronization.
       *
       * @param connection The connection to the database.
-      * @param tableName The name of the table.
+      * @return The sync generation.
+      * @throws SQLException If an SQL error occurs.
       */
-    private static void updatePositionsMySQL(Connection connection, String tableName) throws SQLException {
-        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Updating positions in table (MySQL/MariaDB): {}", tableName); }
-
-        String tempTableName = "ranked_data_" + Thread.currentThread().threadId();
-
-        String createTempTableSQL = """
-            CREATE TEMPORARY TABLE %s AS
-            SELECT
-                player_id,
-                stat_name,
-                ROW_NUMBER() OVER (PARTITION BY stat_name ORDER BY amount DESC) AS row_num
-            FROM %s
-            WHERE amount > 0
-        """.formatted(tempTableName, tableName);
-
-        String updatePositionsSQL = """
-            UPDATE %s
-            JOIN %s
-            ON %s.player_id = %s.player_id
-            AND %s.stat_name = %s.stat_name
-            SET %s.position = %s.row_num
-            WHERE %s.row_num <= 5
-        """.formatted(tableName, tempTableName, tableName, tempTableName, tableName, tempTableName, tableName, tempTableName, tempTableName);
-
-        String dropTempTableSQL = "DROP TEMPORARY TABLE " + tempTableName;
-
-        try {
-            try (PreparedStatement createTempStmt = connection.prepareStatement(createTempTableSQL)) {
-                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Creating temporary table (MySQL/MariaDB)..."); }
-                createTempStmt.executeUpdate();
-                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Temporary table created (MySQL/MariaDB)!"); }
-            }
-
-            try (PreparedStatement updateStmt = connection.prepareStatement(updatePositionsSQL)) {
-                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Updating positions in table (MySQL/MariaDB)..."); }
-                updateStmt.executeUpdate();
-                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Positions updated in table (MySQL/MariaDB)!"); }
-            }
-        } finally {
-            try (PreparedStatement dropTempStmt = connection.prepareStatement(dropTempTableSQL)) {
-                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Dropping temporary table (MySQL/MariaDB)..."); }
-                dropTempStmt.executeUpdate();
-                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Temporary table dropped (MySQL/MariaDB)!"); }
-            }
+    public static long getSyncGeneration(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT value FROM sync_state WHERE name = 'generation'");
+             ResultSet rs = statement.executeQuery()) {
+            return rs.next() ? rs.getLong("value") : 0;
         }
-
-        StatSyncTask.progressFrom++;
     }
 
-
     /**
-      * Update the positions for all players in the database (SQLite version).
-      * This method ranks players based on the amount of each stat and updates the position column in the database.
+      * Increment the sync generation (inside the publish transaction).
       *
       * @param connection The connection to the database.
-      * @param tableName The name of the table.
+      * @throws SQLException If an SQL error occurs.
       */
-    private static void updatePositionsSQLite(Connection connection, String tableName) throws SQLException {
-        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Updating positions in table (SQLite): {}", tableName); }
-
-        String updatePositionsSQL = """
-            WITH ranked_data_cte AS (
-                SELECT
-                    player_id,
-                    stat_name,
-                    ROW_NUMBER() OVER (PARTITION BY stat_name ORDER BY amount DESC) AS row_num
-                FROM %s
-                WHERE amount > 0
-            )
-            UPDATE %s
-            SET position = (
-                SELECT row_num
-                FROM ranked_data_cte
-                WHERE ranked_data_cte.player_id = %s.player_id
-                  AND ranked_data_cte.stat_name = %s.stat_name
-                  AND ranked_data_cte.row_num <= 5
-            )
-            WHERE EXISTS (
-                SELECT 1
-                FROM ranked_data_cte
-                WHERE ranked_data_cte.player_id = %s.player_id
-                  AND ranked_data_cte.stat_name = %s.stat_name
-                  AND ranked_data_cte.row_num <= 5
-            )
-        """.formatted(tableName, tableName, tableName, tableName, tableName, tableName);
-
-        try (PreparedStatement updateStmt = connection.prepareStatement(updatePositionsSQL)) {
-            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Updating positions in table (SQLite)..."); }
-            updateStmt.executeUpdate();
-            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Positions updated in table (SQLite)!"); }
+    public static void incrementSyncGeneration(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("UPDATE sync_state SET value = value + 1 WHERE name = 'generation'")) {
+            statement.executeUpdate();
         }
-
-        StatSyncTask.progressFrom++;
     }
 
-
     /**
-      * Populate the 'hall_of_fame' table with the top players based on their score.
+      * Find the ID of a player by UUID or nickname (nicknames are matched case-insensitively).
       *
       * @param connection The connection to the database.
+      * @param player The UUID or the nickname of the player.
+      * @return The ID of the player, or -1 if the player is not in the database.
+      * @throws SQLException If an SQL error occurs.
       */
-    public static void populateHallOfFame(Connection connection) {
-        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Populating Hall of Fame ..."); }
-
+    public static int findPlayerId(Connection connection, String player) throws SQLException {
+        boolean isUUID;
         try {
-            // Reset the 'hall_of_fame' table
-            String clearHallOfFameSQL;
-
-            // SQLite
-            if ("SQLITE".equalsIgnoreCase(DB_TYPE)) {
-                clearHallOfFameSQL = "DELETE FROM hall_of_fame";
-            } else {
-                clearHallOfFameSQL = "TRUNCATE TABLE hall_of_fame";
-            }
-            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("SQL: {}", clearHallOfFameSQL); }
-
-            try (PreparedStatement clearStmt = connection.prepareStatement(clearHallOfFameSQL)) {
-                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Clearing Hall of Fame ..."); }
-                clearStmt.executeUpdate();
-                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Hall of Fame cleared!"); }
-            }
+            player = UUID.fromString(player).toString();
+            isUUID = true;
+        } catch (IllegalArgumentException e) {
+            isUUID = false;
+        }
 
-            // Calculate the score for each player
-            String scoreCalculationSQL = generateScoreCalculationSQL();
-
-            try (PreparedStatement scoreStmt = connection.prepareStatement(scoreCalculationSQL);
-                 ResultSet rs = scoreStmt.executeQuery()) {
-                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Calculating player scores ..."); }
-
-                // Insert the top players into the 'hall_of_fame' table
-                String insertHallOfFameSQL = """
-                INSERT INTO hall_of_fame (player_id, first_place, second_place, third_place, fourth_place, fifth_place, score)
-                VALUES (?, ?, ?, ?, ?, ?, ?)
-            """;
-
-                try (PreparedStatement insertStmt = connection.prepareStatement(insertHallOfFameSQL)) {
-                    while (rs.next()) {
-                        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Inserting player into Hall of Fame: {}", rs.getInt("player_id")); }
-                        insertStmt.setInt(1, rs.getInt("player_id"));
-                        insertStmt.setInt(2, rs.getInt("first_place"));
-                        insertStmt.setInt(3, rs.getInt("second_place"));
-                        insertStmt.setInt(4, rs.getInt("third_place"));
-                        insertStmt.setInt(5, rs.getInt("fourth_place"));
-                        insertStmt.setInt(6, rs.getInt("fifth_place"));
-                        insertStmt.setInt(7, rs.getInt("score"));
-                        insertStmt.addBatch();
-                    }
-                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Executing batch insert ..."); }
-                    insertStmt.executeBatch();
-                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Batch insert executed!"); }
-                }
+        String sql = isUUID
+                ? "SELECT id FROM uuid_map WHERE player_uuid = ?"
+                : "SELECT id FROM uuid_map WHERE " + nickEqualsSQL("player_nick") + " ORDER BY player_last_online DESC";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, player);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getInt("id") : -1;
             }
-
-        } catch (SQLException e) {
-            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
-            PlayerStatistics.LOGGER.error("Error populating Hall of Fame: {}", e.getMessage());
         }
     }
 
     /**
-      * Generate the SQL query for calculating the score for each player.
+      * SQL condition comparing a nickname column case-insensitively with one parameter,
+      * written so the database can use the nickname index ({@code idx_uuid_map_player_nick}).
       *
-      * @return The SQL query for calculating the score.
+      * @param column The nickname column.
+      * @return The SQL condition.
       */
-    private static String generateScoreCalculationSQL() {
-        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Generating score calculation SQL ..."); }
-
-        StringBuilder unionQueries = new StringBuilder();
+    public static String nickEqualsSQL(String column) {
+        return switch (DB_TYPE) {
+            case "SQLITE" -> column + " = ? COLLATE NOCASE";
+            case "POSTGRESQL" -> "LOWER(" + column + ") = LOWER(?)";
+            default -> column + " = ?";     // utf8mb4_unicode_ci is case-insensitive
+        };
+    }
 
-        // Create a UNION query for all tables
-        for (String tableName : TABLE_NAMES) {
-            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Generating score calculation SQL for table: {}", tableName); }
+    /**
+      * SQL condition matching a nickname column case-insensitively against a prefix ({@link #nickPrefixPattern(String)}),
+      * written so the database can use the nickname index ({@code idx_uuid_map_player_nick}).
+      * SQLite uses a NOCASE range because its LIKE optimization does not apply to every LIKE with an ESCAPE clause.
+      *
+      * @param column The nickname column.
+      * @return The SQL condition with two parameters on SQLite and one on the other databases.
+      */
+    public static String nickPrefixSQL(String column) {
+        return switch (DB_TYPE) {
+            case "SQLITE" -> column + " >= ? COLLATE NOCASE AND " + column + " < ? COLLATE NOCASE";
+            case "POSTGRESQL" -> "LOWER(" + column + ") LIKE ? ESCAPE '!'";
+            default -> column + " LIKE ? ESCAPE '!'";
+        };
+    }
 
-            if (!unionQueries.isEmpty()) {
-                unionQueries.append(" UNION ALL ");
-            }
-            unionQueries.append("""
-                SELECT
-                    player_id,
-                    CASE WHEN position = 1 THEN 10 ELSE 0 END AS first_place,
-                    CASE WHEN position = 2 THEN 5 ELSE 0 END AS second_place,
-                    CASE WHEN position = 3 THEN 3 ELSE 0 END AS third_place,
-                    CASE WHEN position = 4 THEN 2 ELSE 0 END AS fourth_place,
-                    CASE WHEN position = 5 THEN 1 ELSE 0 END AS fifth_place
-                FROM %s
-                WHERE position BETWEEN 1 AND 5
-            """.formatted(tableName));
+    /**
+      * Parameters of {@link #nickPrefixSQL(String)} for a search prefix.
+      *
+      * @param prefix The prefix of the nickname.
+      * @return The parameters, in order.
+      */
+    public static List<String> nickPrefixPattern(String prefix) {
+        String lower = prefix.toLowerCase(Locale.ROOT);
+        if ("SQLITE".equals(DB_TYPE)) {
+            // Upper bound: the prefix with its last character incremented
+            int last = lower.length() - 1;
+            return List.of(lower, lower.substring(0, last) + (char) (lower.charAt(last) + 1));
         }
-
-        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Generated SQL: {}", unionQueries); }
-        // Calculate the total score for each player
-        return """
-            SELECT
-                player_id,
-                SUM(first_place) AS first_place,
-                SUM(second_place) AS second_place,
-                SUM(third_place) AS third_place,
-                SUM(fourth_place) AS fourth_place,
-                SUM(fifth_place) AS fifth_place,
-                SUM(first_place + second_place + third_place + fourth_place + fifth_place) AS score
-            FROM (
-                %s
-            ) AS all_stats
-            GROUP BY player_id
-            ORDER BY score DESC
-        """.formatted(unionQueries.toString());
+        return List.of(lower.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%");
     }
 }
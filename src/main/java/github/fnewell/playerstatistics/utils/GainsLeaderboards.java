@@ -0,0 +1,319 @@
+package github.fnewell.playerstatistics.utils;
+
+import github.fnewell.playerstatistics.PlayerStatistics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static github.fnewell.playerstatistics.utils.DatabaseUtils.LEADERBOARD_SIZE;
+
+
+/**
+  * Rolling-window leaderboards of the stat gains ("most blocks mined in the last 7 days"), stored in 'gains_leaderboard'.
+  * Every window keeps a ring of fixed time buckets (24 hourly buckets, 7 or 30 daily buckets) with the gains of the syncs,
+  * and the sum of the live buckets per (table, stat) partition and player.
+  * Gains are added when a sync is published, buckets leaving the window are subtracted again,
+  * and only the partitions whose sums changed are re-ranked, so the history is never rescanned.
+  * The windows are seeded from the stat history once per server run (requires the stat history to be enabled).
+  */
+public class GainsLeaderboards {
+
+    /**
+      * One player of a gains leaderboard.
+      *
+      * @param playerId The ID of the player.
+      * @param amount The gain of the player within the window.
+      */
+    record Entry(int playerId, long amount) {}
+
+    /**
+      * One rolling window (ring of buckets).
+      */
+    static class Window {
+        private final String name;
+        private final long bucketSeconds;
+        private final int bucketCount;
+        private final long[] slotBuckets;       // Bucket number stored in each slot (-1 = empty)
+        private final List<Map<SyncChanges.PlayerStat, Long>> slots = new ArrayList<>();
+        private final Map<SyncChanges.Partition, Map<Integer, Long>> sums = new HashMap<>();
+        private final Map<SyncChanges.Partition, List<Entry>> written = new HashMap<>();
+        private final Set<SyncChanges.Partition> dirty = new HashSet<>();
+        private final Map<SyncChanges.Partition, List<Entry>> pending = new HashMap<>();
+
+        Window(String name, long bucketSeconds, int bucketCount) {
+            this.name = name;
+            this.bucketSeconds = bucketSeconds;
+            this.bucketCount = bucketCount;
+            this.slotBuckets = new long[bucketCount];
+            for (int i = 0; i < bucketCount; i++) {
+                slotBuckets[i] = -1;
+                slots.add(new HashMap<>());
+            }
+        }
+
+        /**
+          * Subtract the buckets which left the window.
+          */
+        void advance(long now) {
+            long oldestBucket = now / bucketSeconds - bucketCount + 1;
+            for (int i = 0; i < bucketCount; i++) {
+                if (slotBuckets[i] >= 0 && slotBuckets[i] < oldestBucket) {
+                    slots.get(i).forEach((stat, gain) -> addToSum(stat, -gain));
+                    slots.get(i).clear();
+                    slotBuckets[i] = -1;
+                }
+            }
+        }
+
+        /**
+          * Add a gain to the bucket of the given time (ignored if the time is outside the window).
+          */
+        void add(SyncChanges.PlayerStat stat, long gain, long time, long now) {
+            long bucket = time / bucketSeconds;
+            if (bucket < now / bucketSeconds - bucketCount + 1 || bucket > now / bucketSeconds) {
+                return;
+            }
+            int slot = (int) (bucket % bucketCount);
+            if (slotBuckets[slot] != bucket) {
+                slots.get(slot).forEach((expired, expiredGain) -> addToSum(expired, -expiredGain));
+                slots.get(slot).clear();
+                slotBuckets[slot] = bucket;
+            }
+            slots.get(slot).merge(stat, gain, Long::sum);
+            addToSum(stat, gain);
+        }
+
+        private void addToSum(SyncChanges.PlayerStat stat, long gain) {
+            SyncChanges.Partition partition = new SyncChanges.Partition(stat.tableIndex(), stat.statName());
+            Map<Integer, Long> players = sums.computeIfAbsent(partition, key -> new HashMap<>());
+            if (players.merge(stat.playerId(), gain, Long::sum) == 0) {
+                players.remove(stat.playerId());
+            }
+            if (players.isEmpty()) {
+                sums.remove(partition);
+            }
+            dirty.add(partition);
+        }
+
+        /**
+          * Rank the top players of a partition (largest gain first, ties broken by player ID).
+          */
+        List<Entry> rank(SyncChanges.Partition partition) {
+            List<Entry> ranked = new ArrayList<>();
+            sums.getOrDefault(partition, Map.of()).forEach((playerId, amount) -> {
+                if (amount > 0) {
+                    ranked.add(new Entry(playerId, amount));
+                }
+            });
+            ranked.sort((a, b) -> a.amount() != b.amount() ? Long.compare(b.amount(), a.amount()) : Integer.compare(a.playerId(), b.playerId()));
+            return ranked.size() > LEADERBOARD_SIZE ? new ArrayList<>(ranked.subList(0, LEADERBOARD_SIZE)) : ranked;
+        }
+    }
+
+    private static final List<Window> windows = List.of(
+            new Window("24h", TimeUnit.HOURS.toSeconds(1), 24),
+            new Window("7d", TimeUnit.DAYS.toSeconds(1), 7),
+            new Window("30d", TimeUnit.DAYS.toSeconds(1), 30)
+    );
+
+    private static boolean seeded = false;
+    private static boolean resetRequired = true;    // The stored leaderboards are unknown until the first write
+
+    /**
+      * Check if the gains leaderboards are enabled (they are built from the stat history).
+      *
+      * @return True if the gains leaderboards are enabled.
+      */
+    public static boolean isEnabled() {
+        return StatHistory.isEnabled();
+    }
+
+    /**
+      * Seed the windows from the stat history (once per server run).
+      * Hourly buckets are used by all windows, daily buckets only by the daily windows.
+      *
+      * @param connection The connection to the database.
+      */
+    public static synchronized void seed(Connection connection) {
+        if (seeded || !isEnabled()) {
+            return;
+        }
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Seeding gains leaderboards ..."); }
+
+        long now = now();
+        long from = now - TimeUnit.DAYS.toSeconds(30);
+        String sql = "SELECT player_id, table_index, stat_name, resolution, bucket_start, amount_delta FROM stat_history WHERE resolution IN (?, ?) AND bucket_start >= ?";
+
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, StatHistory.HOURLY);
+            statement.setInt(2, StatHistory.DAILY);
+            statement.setLong(3, from);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    SyncChanges.PlayerStat stat = new SyncChanges.PlayerStat(rs.getInt("player_id"), rs.getInt("table_index"), rs.getString("stat_name"));
+                    long bucketSeconds = rs.getInt("resolution") == StatHistory.HOURLY ? TimeUnit.HOURS.toSeconds(1) : TimeUnit.DAYS.toSeconds(1);
+                    for (Window window : windows) {
+                        if (window.bucketSeconds >= bucketSeconds) {
+                            window.add(stat, rs.getLong("amount_delta"), rs.getLong("bucket_start"), now);
+                        }
+                    }
+                }
+            }
+            seeded = true;
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Gains leaderboards seeded ({} partitions in the longest window)", windows.get(windows.size() - 1).sums.size()); }
+        } catch (SQLException e) {
+            windows.forEach(window -> {
+                window.slots.forEach(Map::clear);
+                Arrays.fill(window.slotBuckets, -1);
+                window.sums.clear();
+                window.dirty.clear();
+            });
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error seeding gains leaderboards: {}", e.getMessage());
+        }
+    }
+
+    /**
+      * Add the gains of a synchronization to the current buckets.
+      *
+      * @param changes The changes committed by the synchronization.
+      */
+    public static synchronized void apply(SyncChanges changes) {
+        if (!seeded) {
+            return;
+        }
+        long now = now();
+        for (Window window : windows) {
+            window.advance(now);
+            changes.gains().forEach((stat, gain) -> window.add(stat, gain, now, now));
+        }
+    }
+
+    /**
+      * Write the changed leaderboards of all windows (without committing).
+      * The written state is taken over by {@link #commit()} after the transaction is committed.
+      *
+      * @param connection The connection to the database.
+      * @throws SQLException If an SQL error occurs.
+      */
+    public static synchronized void write(Connection connection) throws SQLException {
+        if (!seeded) {
+            return;
+        }
+
+        if (resetRequired) {
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM gains_leaderboard")) {
+                statement.executeUpdate();
+            }
+        }
+
+        try (PreparedStatement deleteStmt = connection.prepareStatement("DELETE FROM gains_leaderboard WHERE window_name = ? AND table_index = ? AND stat_name = ?");
+             PreparedStatement insertStmt = connection.prepareStatement("INSERT INTO gains_leaderboard (window_name, table_index, stat_name, position, player_id, amount) VALUES (?, ?, ?, ?, ?, ?)")) {
+
+            for (Window window : windows) {
+                window.pending.clear();
+                Set<SyncChanges.Partition> partitions = resetRequired ? window.sums.keySet() : window.dirty;
+
+                for (SyncChanges.Partition partition : partitions) {
+                    List<Entry> ranked = window.rank(partition);
+                    List<Entry> stored = resetRequired ? List.of() : window.written.getOrDefault(partition, List.of());
+                    if (ranked.equals(stored)) {
+                        continue;
+                    }
+
+                    if (!stored.isEmpty()) {
+                        deleteStmt.setString(1, window.name);
+                        deleteStmt.setInt(2, partition.tableIndex());
+                        deleteStmt.setString(3, partition.statName());
+                        deleteStmt.addBatch();
+                    }
+                    for (int i = 0; i < ranked.size(); i++) {
+                        insertStmt.setString(1, window.name);
+                        insertStmt.setInt(2, partition.tableIndex());
+                        insertStmt.setString(3, partition.statName());
+                        insertStmt.setInt(4, i + 1);
+                        insertStmt.setInt(5, ranked.get(i).playerId());
+                        insertStmt.setLong(6, ranked.get(i).amount());
+                        insertStmt.addBatch();
+                    }
+                    window.pending.put(partition, ranked);
+                }
+            }
+
+            deleteStmt.executeBatch();
+            insertStmt.executeBatch();
+        }
+    }
+
+    /**
+      * Take over the state written by {@link #write(Connection)} after its transaction was committed.
+      */
+    public static synchronized void commit() {
+        if (!seeded) {
+            return;
+        }
+        for (Window window : windows) {
+            if (resetRequired) {
+                window.written.clear();
+            }
+            window.pending.forEach((partition, ranked) -> {
+                if (ranked.isEmpty()) {
+                    window.written.remove(partition);
+                } else {
+                    window.written.put(partition, ranked);
+                }
+            });
+            window.pending.clear();
+            window.dirty.clear();
+        }
+        resetRequired = false;
+    }
+
+    /**
+      * Publish the leaderboards changed only by buckets leaving their windows (syncs without written stat rows).
+      *
+      * @param connection The connection to the database.
+      */
+    public static synchronized void publishExpired(Connection connection) {
+        if (!seeded) {
+            return;
+        }
+        long now = now();
+        windows.forEach(window -> window.advance(now));
+        if (!resetRequired && windows.stream().allMatch(window -> window.dirty.isEmpty())) {
+            return;
+        }
+
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                write(connection);
+                connection.commit();
+                commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error publishing gains leaderboards: {}", e.getMessage());
+        }
+    }
+
+    private static long now() {
+        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    }
+}
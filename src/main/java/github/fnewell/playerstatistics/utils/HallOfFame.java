@@ -0,0 +1,208 @@
+package github.fnewell.playerstatistics.utils;
+
+import github.fnewell.playerstatistics.PlayerStatistics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+  * Maintains the 'hall_of_fame' table from the rankings of the leaderboard index, scored by the {@link ScoringEngine}.
+  * Scores are computed in memory after every published synchronization and compared with the stored rows,
+  * so only the rows of players whose scores changed are written, inside the publish transaction of the positions.
+  * The table is rebuilt once per server run (and after a failed publish):
+  * the new table is built as a shadow table and swapped in, so web readers never see a half-built table.
+  */
+public class HallOfFame {
+
+    private static final String TABLE = "hall_of_fame";
+    private static final String SHADOW_TABLE = "hall_of_fame_shadow";
+    private static final String OLD_TABLE = "hall_of_fame_old";
+
+    private static volatile boolean rebuildRequired = true;
+
+    private static Map<Integer, int[]> stored = new HashMap<>();   // Rows stored in the table (by player ID)
+    private static Map<Integer, int[]> pending = null;             // Rows written by the running publish transaction
+
+    /**
+      * Check if the Hall of Fame has to be rebuilt (it may not match the leaderboards).
+      *
+      * @return True if a rebuild is required.
+      */
+    public static boolean isRebuildRequired() {
+        return rebuildRequired;
+    }
+
+    /**
+      * Write the Hall of Fame rows whose scores changed with the published positions.
+      * Called inside the publish transaction, nothing is committed here.
+      * The written rows are taken over by {@link #commit()} after the transaction is committed.
+      *
+      * @param connection The connection to the database.
+      * @param positionUpdates The position updates being published.
+      * @throws SQLException If an SQL error occurs.
+      */
+    public static synchronized void write(Connection connection, Collection<LeaderboardIndex.PositionUpdates> positionUpdates) throws SQLException {
+        pending = null;
+        if (rebuildRequired) {
+            return;
+        }
+
+        Map<Integer, int[]> rows = computeRows(connection, positionUpdates);
+        if (rows == null) {
+            rebuildRequired = true;
+            return;
+        }
+
+        int changed = 0;
+        try (PreparedStatement insertStmt = connection.prepareStatement("INSERT INTO hall_of_fame (first_place, second_place, third_place, fourth_place, fifth_place, score, player_id) VALUES (?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement updateStmt = connection.prepareStatement("UPDATE hall_of_fame SET first_place = ?, second_place = ?, third_place = ?, fourth_place = ?, fifth_place = ?, score = ? WHERE player_id = ?");
+             PreparedStatement deleteStmt = connection.prepareStatement("DELETE FROM hall_of_fame WHERE player_id = ?")) {
+
+            for (Map.Entry<Integer, int[]> entry : rows.entrySet()) {
+                int[] storedRow = stored.get(entry.getKey());
+                if (Arrays.equals(storedRow, entry.getValue())) {
+                    continue;
+                }
+                PreparedStatement statement = (storedRow == null) ? insertStmt : updateStmt;
+                setRow(statement, entry.getKey(), entry.getValue());
+                statement.addBatch();
+                changed++;
+            }
+            for (Integer playerId : stored.keySet()) {
+                if (!rows.containsKey(playerId)) {
+                    deleteStmt.setInt(1, playerId);
+                    deleteStmt.addBatch();
+                    changed++;
+                }
+            }
+
+            deleteStmt.executeBatch();
+            updateStmt.executeBatch();
+            insertStmt.executeBatch();
+        }
+        pending = rows;
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Hall of Fame updated ({} of {} players changed)", changed, rows.size()); }
+    }
+
+    /**
+      * Take over the rows written by {@link #write(Connection, Collection)} after its transaction was committed.
+      */
+    public static synchronized void commit() {
+        if (pending != null) {
+            stored = pending;
+            pending = null;
+        }
+    }
+
+    /**
+      * Rebuild the whole Hall of Fame from the rankings of the leaderboard index.
+      * The rows are built into a shadow table, which then replaces the table in one short swap.
+      *
+      * @param connection The connection to the database.
+      */
+    public static synchronized void rebuild(Connection connection) {
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Rebuilding Hall of Fame ..."); }
+
+        try {
+            long start = System.nanoTime();
+            Map<Integer, int[]> rows = computeRows(connection, List.of());
+            if (rows == null) {
+                PlayerStatistics.LOGGER.warn("Leaderboard index is not seeded, Hall of Fame is not rebuilt.");
+                return;
+            }
+            long generation = DatabaseUtils.getSyncGeneration(connection);
+
+            // Build the shadow table (outside of any transaction, readers do not see it)
+            execute(connection, "DROP TABLE IF EXISTS " + SHADOW_TABLE);
+            execute(connection, DatabaseInitializer.createHallOfFameSQL(SHADOW_TABLE, String.valueOf(generation), DatabaseUtils.DB_TYPE));
+
+            try (PreparedStatement insertStmt = connection.prepareStatement("""
+                    INSERT INTO hall_of_fame_shadow (first_place, second_place, third_place, fourth_place, fifth_place, score, player_id)
+                    VALUES (?, ?, ?, ?, ?, ?, ?)
+                 """)) {
+                for (Map.Entry<Integer, int[]> entry : rows.entrySet()) {
+                    setRow(insertStmt, entry.getKey(), entry.getValue());
+                    insertStmt.addBatch();
+                }
+                insertStmt.executeBatch();
+            }
+            execute(connection, DatabaseInitializer.createHallOfFameIndexSQL(SHADOW_TABLE, String.valueOf(generation)));
+
+            swap(connection);
+            stored = rows;
+            rebuildRequired = false;
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Hall of Fame rebuilt ({} players, {} ms)", rows.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)); }
+        } catch (SQLException e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error rebuilding Hall of Fame: {}", e.getMessage());
+        }
+    }
+
+    /**
+      * Score the rankings of the leaderboard index (including the given uncommitted position updates).
+      *
+      * @return The rows by player ID, or null if the leaderboard index is not seeded.
+      */
+    private static Map<Integer, int[]> computeRows(Connection connection, Collection<LeaderboardIndex.PositionUpdates> positionUpdates) throws SQLException {
+        Map<SyncChanges.Partition, int[]> rankings = LeaderboardIndex.rankings(positionUpdates);
+        if (rankings == null) {
+            return null;
+        }
+        Map<SyncChanges.Partition, Integer> playerCounts = ScoringEngine.isNormalized() ? StatRollups.playerCounts(connection) : Map.of();
+        return ScoringEngine.score(rankings, playerCounts);
+    }
+
+    /**
+      * Set the parameters of an insert or update statement (points of the positions 1 - 5, score, player ID).
+      */
+    private static void setRow(PreparedStatement statement, int playerId, int[] row) throws SQLException {
+        for (int i = 0; i < ScoringEngine.COLUMNS; i++) {
+            statement.setInt(i + 1, row[i]);
+        }
+        statement.setInt(ScoringEngine.COLUMNS + 1, playerId);
+    }
+
+    /**
+      * Replace the Hall of Fame table with the shadow table and publish the next sync generation.
+      * MySQL and MariaDB swap both tables in one atomic RENAME TABLE statement,
+      * SQLite and PostgreSQL rename the tables inside one transaction (their DDL is transactional).
+      */
+    private static void swap(Connection connection) throws SQLException {
+        if ("MYSQL".equals(DatabaseUtils.DB_TYPE) || "MARIADB".equals(DatabaseUtils.DB_TYPE)) {
+            execute(connection, "DROP TABLE IF EXISTS " + OLD_TABLE);
+            execute(connection, "RENAME TABLE " + TABLE + " TO " + OLD_TABLE + ", " + SHADOW_TABLE + " TO " + TABLE);
+            DatabaseUtils.incrementSyncGeneration(connection);
+            execute(connection, "DROP TABLE " + OLD_TABLE);
+            return;
+        }
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            execute(connection, "ALTER TABLE " + TABLE + " RENAME TO " + OLD_TABLE);
+            execute(connection, "ALTER TABLE " + SHADOW_TABLE + " RENAME TO " + TABLE);
+            execute(connection, "DROP TABLE " + OLD_TABLE);
+            DatabaseUtils.incrementSyncGeneration(connection);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.execute();
+        }
+    }
+}
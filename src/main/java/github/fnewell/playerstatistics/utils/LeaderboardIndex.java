@@ -0,0 +1,504 @@
+package github.fnewell.playerstatistics.utils;
+
+import github.fnewell.playerstatistics.PlayerStatistics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static github.fnewell.playerstatistics.utils.DatabaseUtils.DB_TYPE;
+import static github.fnewell.playerstatistics.utils.DatabaseUtils.LEADERBOARD_SIZE;
+import static github.fnewell.playerstatistics.utils.DatabaseUtils.TABLE_NAMES;
+import static github.fnewell.playerstatistics.utils.DatabaseUtils.getDatabaseConnection;
+
+
+/**
+  * In-memory top-K index of every leaderboard partition (stat table, stat name).
+  * It is seeded from the database once, then maintained from the committed stat deltas,
+  * so positions are computed from the changes only and just the changed positions are written back
+  * (inside the publish transaction of the sync).
+  * Every partition keeps a few more players than ranked, so most decreases can be handled without the database.
+  * If a partition runs out of known players, it is reloaded from the database when its positions are written.
+  */
+public class LeaderboardIndex {
+
+    // Number of players kept per partition (ranked players + reserve for decreases)
+    static final int DEPTH = LEADERBOARD_SIZE * 2;
+
+    private static final Map<SyncChanges.Partition, Board> boards = new ConcurrentHashMap<>();
+    private static volatile boolean seeded = false;
+
+    // Partitions whose positions could not be published, ranked again by the next publish
+    private static final Set<SyncChanges.Partition> retries = ConcurrentHashMap.newKeySet();
+
+    /**
+      * Top players of one partition, ordered by amount (descending), ties broken by player ID (ascending).
+      */
+    static class Board {
+        final int[] playerIds = new int[DEPTH + 1];
+        final int[] amounts = new int[DEPTH + 1];
+        int size = 0;
+        boolean complete = true;    // True if the board contains every ranked row of the partition
+        boolean dirty = false;      // True if the board has to be reloaded from the database
+        private final int[] written = new int[LEADERBOARD_SIZE];   // Player IDs stored at positions 1..K (0 = none)
+
+        synchronized void apply(int playerId, int amount) {
+            remove(playerId);
+
+            // If the board is not complete, a player behind the known players can not be placed
+            // (players missing in the board could be ahead of it)
+            if (amount > 0 && amount != StatSnapshot.MISSING
+                    && (complete || (size > 0 && before(amount, playerId, amounts[size - 1], playerIds[size - 1])))) {
+                insert(playerId, amount);
+            }
+
+            // Not enough known players to rank the partition, reload it from the database
+            if (!complete && size < LEADERBOARD_SIZE) {
+                dirty = true;
+            }
+        }
+
+        private void remove(int playerId) {
+            for (int i = 0; i < size; i++) {
+                if (playerIds[i] == playerId) {
+                    System.arraycopy(playerIds, i + 1, playerIds, i, size - i - 1);
+                    System.arraycopy(amounts, i + 1, amounts, i, size - i - 1);
+                    size--;
+                    return;
+                }
+            }
+        }
+
+        void insert(int playerId, int amount) {
+            int i = size;
+            while (i > 0 && before(amount, playerId, amounts[i - 1], playerIds[i - 1])) {
+                playerIds[i] = playerIds[i - 1];
+                amounts[i] = amounts[i - 1];
+                i--;
+            }
+            playerIds[i] = playerId;
+            amounts[i] = amount;
+
+            if (++size > DEPTH) {
+                size = DEPTH;
+                complete = false;
+            }
+        }
+
+        /**
+          * Check if the stored positions match the ranking of the board.
+          */
+        private synchronized boolean isWrittenRanked() {
+            for (int i = 0; i < LEADERBOARD_SIZE; i++) {
+                int ranked = i < size ? playerIds[i] : 0;
+                if (written[i] != ranked) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean before(int amount, int playerId, int otherAmount, int otherPlayerId) {
+            return amount > otherAmount || (amount == otherAmount && playerId < otherPlayerId);
+        }
+    }
+
+    /**
+      * Seed the index from the database (once per server run).
+      * Loads the top players and the stored positions of every partition.
+      * On PostgreSQL, the stored positions are reconciled with the stat amounts first.
+      * Partitions whose stored positions do not match their top players (e.g. the server stopped between
+      * the stat commit and the position publish) are queued to be ranked again by the next publish.
+      *
+      * @param connection The connection to the database.
+      */
+    public static synchronized void seed(Connection connection) {
+        if (seeded) {
+            return;
+        }
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Seeding leaderboard index ..."); }
+        boards.clear();
+
+        if ("POSTGRESQL".equals(DB_TYPE)) {
+            reconcilePositions();
+        }
+
+        try {
+            for (int tableIndex = 0; tableIndex < TABLE_NAMES.size(); tableIndex++) {
+                String tableName = TABLE_NAMES.get(tableIndex);
+                String topSQL = """
+                    SELECT stat_name, player_id, amount FROM (
+                        SELECT stat_name, player_id, amount,
+                               ROW_NUMBER() OVER (PARTITION BY stat_name ORDER BY amount DESC, player_id ASC) AS row_num
+                        FROM %s
+                        WHERE amount > 0
+                    ) ranked
+                    WHERE row_num <= %d
+                    ORDER BY stat_name, row_num
+                """.formatted(tableName, DEPTH + 1);
+
+                try (PreparedStatement statement = connection.prepareStatement(topSQL);
+                     ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        Board board = boards.computeIfAbsent(new SyncChanges.Partition(tableIndex, rs.getString("stat_name")), partition -> new Board());
+                        board.insert(rs.getInt("player_id"), rs.getInt("amount"));
+                    }
+                }
+
+                try (PreparedStatement statement = connection.prepareStatement("SELECT stat_name, player_id, position FROM " + tableName + " WHERE position IS NOT NULL");
+                     ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        int position = rs.getInt("position");
+                        if (position >= 1 && position <= LEADERBOARD_SIZE) {
+                            Board board = boards.computeIfAbsent(new SyncChanges.Partition(tableIndex, rs.getString("stat_name")), partition -> new Board());
+                            board.written[position - 1] = rs.getInt("player_id");
+                        }
+                    }
+                }
+            }
+
+            // Stored positions can lag behind the committed amounts if a publish was lost, rank those partitions again
+            int mismatched = 0;
+            for (Map.Entry<SyncChanges.Partition, Board> entry : boards.entrySet()) {
+                if (!entry.getValue().isWrittenRanked()) {
+                    retries.add(entry.getKey());
+                    mismatched++;
+                }
+            }
+            seeded = true;
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Leaderboard index seeded ({} partitions, {} with stale positions)", boards.size(), mismatched); }
+        } catch (SQLException e) {
+            boards.clear();
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error seeding leaderboard index: {}", e.getMessage());
+        }
+    }
+
+    /**
+      * Rank every stat table with one set-based UPDATE ... FROM (ROW_NUMBER) statement (PostgreSQL).
+      * Only the rows whose position differs are written. The tables are ranked concurrently on pooled connections.
+      * Older versions did not write any positions on PostgreSQL, and the index only writes the partitions touched by a sync,
+      * so this brings the stored positions in line once per server run.
+      */
+    private static void reconcilePositions() {
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Reconciling leaderboard positions ..."); }
+
+        long start = System.nanoTime();
+        AtomicLong updatedRows = new AtomicLong();
+        SyncExecutors.Phase phase = SyncExecutors.phase("reconcile positions", SyncExecutors.concurrency(SyncExecutors.Resource.DATABASE));
+
+        for (String tableName : TABLE_NAMES) {
+            String reconcileSQL = """
+                UPDATE %1$s AS stats
+                SET position = ranked.new_position
+                FROM (
+                    SELECT player_id, stat_name, CASE WHEN amount > 0 AND row_num <= %2$d THEN row_num END AS new_position
+                    FROM (
+                        SELECT player_id, stat_name, amount, position,
+                               ROW_NUMBER() OVER (PARTITION BY stat_name ORDER BY amount DESC, player_id ASC) AS row_num
+                        FROM %1$s
+                    ) numbered
+                    WHERE (amount > 0 AND row_num <= %2$d) OR position IS NOT NULL
+                ) ranked
+                WHERE stats.player_id = ranked.player_id
+                  AND stats.stat_name = ranked.stat_name
+                  AND stats.position IS DISTINCT FROM ranked.new_position
+            """.formatted(tableName, LEADERBOARD_SIZE);
+
+            phase.submit(() -> SyncExecutors.withPermit(SyncExecutors.Resource.DATABASE, () -> {
+                long tableStart = System.nanoTime();
+                try (Connection connection = getDatabaseConnection();
+                     PreparedStatement statement = connection.prepareStatement(reconcileSQL)) {
+                    int updated = statement.executeUpdate();
+                    updatedRows.addAndGet(updated);
+                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Positions reconciled in table: {} ({} rows, {} ms)", tableName, updated, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - tableStart)); }
+                }
+            }));
+        }
+
+        try {
+            phase.await(3, TimeUnit.MINUTES);
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Leaderboard positions reconciled ({} rows, {} ms)", updatedRows.get(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)); }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Executor interrupted (reconcile positions): {}", e.getMessage());
+        }
+    }
+
+    /**
+      * Apply a committed stat change to the index.
+      *
+      * @param delta The committed change.
+      */
+    public static void apply(StatDelta delta) {
+        if (!seeded) {
+            return;     // Partitions are loaded from the database when their positions are written
+        }
+        boards.computeIfAbsent(new SyncChanges.Partition(delta.tableIndex(), delta.statName()), partition -> new Board())
+                .apply(delta.playerId(), delta.newAmount());
+    }
+
+    /**
+      * Pending position updates of one stat table.
+      * They are computed from the index without writing anything, written inside the publish transaction,
+      * and applied to the index only after that transaction is committed.
+      */
+    public static class PositionUpdates {
+        private final String tableName;
+        private final List<String> statNames = new ArrayList<>();
+        private final List<Integer> playerIds = new ArrayList<>();
+        private final List<Integer> positions = new ArrayList<>();      // 0 = no position
+        private final List<SyncChanges.PositionChange> positionChanges = new ArrayList<>();
+        private final Map<Board, int[]> rankedBoards = new HashMap<>();
+
+        private PositionUpdates(String tableName) {
+            this.tableName = tableName;
+        }
+
+        private void add(String statName, int playerId, int position) {
+            statNames.add(statName);
+            playerIds.add(playerId);
+            positions.add(position);
+        }
+
+        /**
+          * Get the number of rows to update.
+          *
+          * @return The number of rows.
+          */
+        public int size() {
+            return playerIds.size();
+        }
+
+        /**
+          * Get the position changes (for the Hall of Fame).
+          *
+          * @return The position changes.
+          */
+        public List<SyncChanges.PositionChange> positionChanges() {
+            return positionChanges;
+        }
+
+        /**
+          * Write the updates (without committing).
+          *
+          * @param connection The connection to the database.
+          * @throws SQLException If an SQL error occurs.
+          */
+        public void write(Connection connection) throws SQLException {
+            if (playerIds.isEmpty()) {
+                return;
+            }
+            try (PreparedStatement updateStmt = connection.prepareStatement("UPDATE " + tableName + " SET position = ? WHERE player_id = ? AND stat_name = ?")) {
+                for (int i = 0; i < playerIds.size(); i++) {
+                    if (positions.get(i) == 0) {
+                        updateStmt.setNull(1, Types.INTEGER);
+                    } else {
+                        updateStmt.setInt(1, positions.get(i));
+                    }
+                    updateStmt.setInt(2, playerIds.get(i));
+                    updateStmt.setString(3, statNames.get(i));
+                    updateStmt.addBatch();
+                }
+                updateStmt.executeBatch();
+            }
+        }
+
+        /**
+          * Apply the committed updates to the index and report the position changes.
+          *
+          * @param changes The collector of the committed changes.
+          */
+        public void commit(SyncChanges changes) {
+            rankedBoards.forEach((board, ranked) -> {
+                synchronized (board) {
+                    System.arraycopy(ranked, 0, board.written, 0, ranked.length);
+                }
+            });
+            positionChanges.forEach(changes::recordPosition);
+        }
+    }
+
+    /**
+      * Schedule partitions whose positions could not be published to be ranked again by the next publish.
+      * Their boards are reloaded from the database, so they match the stored positions again.
+      *
+      * @param tableIndex The index of the stat table.
+      * @param statNames The stats (partitions).
+      */
+    public static void retry(int tableIndex, Collection<String> statNames) {
+        for (String statName : statNames) {
+            SyncChanges.Partition partition = new SyncChanges.Partition(tableIndex, statName);
+            Board board = boards.get(partition);
+            if (board != null) {
+                synchronized (board) {
+                    board.dirty = true;
+                }
+            }
+            retries.add(partition);
+        }
+    }
+
+    /**
+      * Check if partitions are waiting to be ranked again.
+      *
+      * @return True if the next publish has partitions to retry.
+      */
+    public static boolean hasRetries() {
+        return !retries.isEmpty();
+    }
+
+    /**
+      * Take the partitions waiting to be ranked again (they are removed from the retries).
+      *
+      * @return The partitions to retry.
+      */
+    public static Set<SyncChanges.Partition> takeRetries() {
+        Set<SyncChanges.Partition> taken = new HashSet<>();
+        for (SyncChanges.Partition partition : retries) {
+            if (retries.remove(partition)) {
+                taken.add(partition);
+            }
+        }
+        return taken;
+    }
+
+    /**
+      * Compute the position updates of the given partitions of a stat table.
+      * Partitions which are not known or ran out of known players are reloaded from the database first,
+      * nothing is written.
+      *
+      * @param connection The connection to the database.
+      * @param tableIndex The index of the stat table.
+      * @param statNames The stats (partitions) to rank.
+      * @return The pending position updates.
+      * @throws SQLException If an SQL error occurs.
+      */
+    public static PositionUpdates preparePositions(Connection connection, int tableIndex, List<String> statNames) throws SQLException {
+        String tableName = TABLE_NAMES.get(tableIndex);
+        PositionUpdates updates = new PositionUpdates(tableName);
+
+        for (String statName : statNames) {
+            SyncChanges.Partition partition = new SyncChanges.Partition(tableIndex, statName);
+            Board board = boards.get(partition);
+            if (board == null || board.dirty) {
+                board = loadPartition(connection, tableName, statName);
+                if (seeded) {
+                    boards.put(partition, board);   // Unseeded boards would not be maintained by apply(), so they are not cached
+                }
+            }
+
+            synchronized (board) {
+                int[] ranked = new int[LEADERBOARD_SIZE];
+                for (int i = 0; i < Math.min(board.size, LEADERBOARD_SIZE); i++) {
+                    ranked[i] = board.playerIds[i];
+                }
+
+                // Clear the players who are not ranked anymore
+                for (int playerId : board.written) {
+                    if (playerId != 0 && indexOf(ranked, playerId) < 0) {
+                        updates.add(statName, playerId, 0);
+                    }
+                }
+
+                // Set the changed positions
+                for (int i = 0; i < ranked.length; i++) {
+                    if (board.written[i] != ranked[i]) {
+                        if (ranked[i] != 0) {
+                            updates.add(statName, ranked[i], i + 1);
+                            updates.positionChanges.add(new SyncChanges.PositionChange(ranked[i], i + 1, 1));
+                        }
+                        if (board.written[i] != 0) {
+                            updates.positionChanges.add(new SyncChanges.PositionChange(board.written[i], i + 1, -1));
+                        }
+                    }
+                }
+                updates.rankedBoards.put(board, ranked);
+            }
+
+            StatSyncTask.progressFrom.incrementAndGet();
+        }
+        return updates;
+    }
+
+    /**
+      * Get the ranked players of every partition, as published after the given pending updates are committed.
+      *
+      * @param pending The position updates not committed yet (their rankings replace the stored ones).
+      * @return The ranked player IDs (positions 1 - 5, 0 = none) by partition, or null if the index is not seeded.
+      */
+    public static Map<SyncChanges.Partition, int[]> rankings(Collection<PositionUpdates> pending) {
+        if (!seeded) {
+            return null;
+        }
+
+        Map<Board, int[]> overrides = new IdentityHashMap<>();
+        for (PositionUpdates updates : pending) {
+            overrides.putAll(updates.rankedBoards);
+        }
+
+        Map<SyncChanges.Partition, int[]> rankings = new HashMap<>();
+        boards.forEach((partition, board) -> {
+            synchronized (board) {
+                int[] ranked = overrides.containsKey(board) ? overrides.get(board) : board.written.clone();
+                rankings.put(partition, ranked);
+            }
+        });
+        return rankings;
+    }
+
+    /**
+      * Load one partition (top players and stored positions) from the database.
+      */
+    private static Board loadPartition(Connection connection, String tableName, String statName) throws SQLException {
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Loading leaderboard partition: {} / {}", tableName, statName); }
+
+        Board board = new Board();
+        String topSQL = "SELECT player_id, amount FROM " + tableName + " WHERE stat_name = ? AND amount > 0 ORDER BY amount DESC, player_id ASC LIMIT " + (DEPTH + 1);
+        try (PreparedStatement statement = connection.prepareStatement(topSQL)) {
+            statement.setString(1, statName);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    board.insert(rs.getInt("player_id"), rs.getInt("amount"));
+                }
+            }
+        }
+
+        String positionedSQL = "SELECT player_id, position FROM " + tableName + " WHERE stat_name = ? AND position IS NOT NULL";
+        try (PreparedStatement statement = connection.prepareStatement(positionedSQL)) {
+            statement.setString(1, statName);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    int position = rs.getInt("position");
+                    if (position >= 1 && position <= LEADERBOARD_SIZE) {
+                        board.written[position - 1] = rs.getInt("player_id");
+                    }
+                }
+            }
+        }
+        return board;
+    }
+
+    private static int indexOf(int[] array, int value) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,166 @@
+package github.fnewell.playerstatistics.utils;
+
+import github.fnewell.playerstatistics.PlayerStatistics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+
+/**
+  * In-memory copy of the 'uuid_map' table (player UUID -> player ID and last online time).
+  * It is loaded once per sync and used to resolve the IDs of all changed players in bulk:
+  * new players are inserted in one batch and last online times are updated in one batch,
+  * so the sync workers do not need any extra round trips before writing stats.
+  */
+public class PlayerIdentityMap {
+
+    // Maximum number of parameters in one 'IN (...)' list
+    private static final int IN_CHUNK_SIZE = 500;
+
+    private final Map<UUID, Integer> ids = new HashMap<>();
+    private final Map<Integer, Long> lastOnline = new HashMap<>();
+
+    /**
+      * Load all players from the 'uuid_map' table.
+      *
+      * @param connection The connection to the database.
+      * @return The loaded identity map.
+      * @throws SQLException If an SQL error occurs.
+      */
+    public static PlayerIdentityMap load(Connection connection) throws SQLException {
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Loading player identities ..."); }
+
+        PlayerIdentityMap identities = new PlayerIdentityMap();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT id, player_uuid, player_last_online FROM uuid_map");
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                try {
+                    int id = rs.getInt("id");
+                    identities.ids.put(UUID.fromString(rs.getString("player_uuid")), id);
+                    identities.lastOnline.put(id, readLastOnline(rs));
+                } catch (IllegalArgumentException ignored) {}
+            }
+        }
+
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Player identities loaded ({} players)", identities.ids.size()); }
+        return identities;
+    }
+
+    /**
+      * Get the ID of a player.
+      *
+      * @param playerUUID The UUID of the player.
+      * @return The player ID or null if the player is not known.
+      */
+    public Integer getId(UUID playerUUID) {
+        return ids.get(playerUUID);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+      * Resolve the IDs of the given players: insert new players and update the last online time of known ones.
+      * All changes are written in batches and committed in one transaction.
+      *
+      * @param connection The connection to the database.
+      * @param players A map containing player UUIDs as keys and their last online times (in milliseconds) as values.
+      * @return The IDs of the players which were inserted.
+      * @throws SQLException If an SQL error occurs.
+      */
+    public List<Integer> resolve(Connection connection, Map<UUID, Long> players) throws SQLException {
+        List<UUID> newPlayers = new ArrayList<>();
+        Map<Integer, Long> updatedPlayers = new HashMap<>();
+
+        players.forEach((playerUUID, online) -> {
+            Integer id = ids.get(playerUUID);
+            if (id == null) {
+                newPlayers.add(playerUUID);
+            } else if (!online.equals(lastOnline.get(id))) {
+                updatedPlayers.put(id, online);
+            }
+        });
+
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Resolving player identities ({} new, {} updated) ...", newPlayers.size(), updatedPlayers.size()); }
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            // Insert new players in one batch
+            if (!newPlayers.isEmpty()) {
+                try (PreparedStatement insertStmt = connection.prepareStatement("INSERT INTO uuid_map (player_uuid, player_last_online) VALUES (?, ?)")) {
+                    for (UUID playerUUID : newPlayers) {
+                        insertStmt.setString(1, playerUUID.toString());
+                        insertStmt.setTimestamp(2, new Timestamp(players.get(playerUUID)));
+                        insertStmt.addBatch();
+                    }
+                    insertStmt.executeBatch();
+                }
+            }
+
+            // Update last online times in one batch
+            if (!updatedPlayers.isEmpty()) {
+                try (PreparedStatement updateStmt = connection.prepareStatement("UPDATE uuid_map SET player_last_online = ? WHERE id = ?")) {
+                    for (Map.Entry<Integer, Long> entry : updatedPlayers.entrySet()) {
+                        updateStmt.setTimestamp(1, new Timestamp(entry.getValue()));
+                        updateStmt.setInt(2, entry.getKey());
+                        updateStmt.addBatch();
+                    }
+                    updateStmt.executeBatch();
+                }
+            }
+
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        lastOnline.putAll(updatedPlayers);
+
+        // Fetch the generated IDs of the new players (generated keys of batches are not portable across drivers)
+        List<Integer> insertedIds = new ArrayList<>();
+        for (int from = 0; from < newPlayers.size(); from += IN_CHUNK_SIZE) {
+            List<UUID> chunk = newPlayers.subList(from, Math.min(from + IN_CHUNK_SIZE, newPlayers.size()));
+            String sql = "SELECT id, player_uuid FROM uuid_map WHERE player_uuid IN (" + "?, ".repeat(chunk.size() - 1) + "?)";
+
+            try (PreparedStatement selectStmt = connection.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    selectStmt.setString(i + 1, chunk.get(i).toString());
+                }
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        int id = rs.getInt("id");
+                        UUID playerUUID = UUID.fromString(rs.getString("player_uuid"));
+                        ids.put(playerUUID, id);
+                        lastOnline.put(id, players.get(playerUUID));
+                        insertedIds.add(id);
+                    }
+                }
+            }
+        }
+
+        return insertedIds;
+    }
+
+    /**
+      * Read the last online time of a player (stored as a number in SQLite and as a timestamp elsewhere).
+      */
+    private static long readLastOnline(ResultSet rs) throws SQLException {
+        if ("SQLITE".equals(DatabaseUtils.DB_TYPE)) {
+            return rs.getLong("player_last_online");
+        }
+        Timestamp timestamp = rs.getTimestamp("player_last_online");
+        return timestamp == null ? 0 : timestamp.getTime();
+    }
+}
@@ -0,0 +1,119 @@
+package github.fnewell.playerstatistics.utils;
+
+import java.util.Arrays;
+
+
+/**
+  * Reusable holder for the parsed statistics of one player.
+  * Stats are stored per stat table in parallel arrays (stat name / amount) which are only cleared between players,
+  * so the buffers of the sync pipeline are recycled instead of allocating new collections for every parsed file.
+  */
+public class PlayerStatsBuffer {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final String[][] names = new String[DatabaseUtils.TABLE_NAMES.size()][];
+    private final int[][] amounts = new int[DatabaseUtils.TABLE_NAMES.size()][];
+    private final int[] sizes = new int[DatabaseUtils.TABLE_NAMES.size()];
+
+    // Length and content hash of the parsed stats file
+    private int contentLength = 0;
+    private long contentHash = 0;
+
+    public PlayerStatsBuffer() {
+        for (int i = 0; i < sizes.length; i++) {
+            names[i] = new String[INITIAL_CAPACITY];
+            amounts[i] = new int[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+      * Get the index of a stat table.
+      *
+      * @param tableName The name of the stat table (without the 'minecraft:' prefix).
+      * @return The index of the table or -1 if the table is not supported.
+      */
+    public static int tableIndex(String tableName) {
+        return DatabaseUtils.TABLE_NAMES.indexOf(tableName);
+    }
+
+    /**
+      * Clear the buffer, keeping the allocated arrays for the next player.
+      */
+    public void reset() {
+        for (int i = 0; i < sizes.length; i++) {
+            Arrays.fill(names[i], 0, sizes[i], null);
+            sizes[i] = 0;
+        }
+        contentLength = 0;
+        contentHash = 0;
+    }
+
+    /**
+      * Set the length and content hash of the parsed stats file.
+      *
+      * @param contentLength The length of the file in bytes.
+      * @param contentHash The content hash of the file (see {@link SyncManifest#hash(byte[], int)}).
+      */
+    public void setContent(int contentLength, long contentHash) {
+        this.contentLength = contentLength;
+        this.contentHash = contentHash;
+    }
+
+    public int getContentLength() {
+        return contentLength;
+    }
+
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    /**
+      * Add a stat to the buffer.
+      *
+      * @param tableIndex The index of the stat table.
+      * @param statName The name of the stat (without the 'minecraft:' prefix).
+      * @param amount The value of the stat.
+      */
+    public void add(int tableIndex, String statName, int amount) {
+        int size = sizes[tableIndex];
+        if (size == names[tableIndex].length) {
+            names[tableIndex] = Arrays.copyOf(names[tableIndex], size * 2);
+            amounts[tableIndex] = Arrays.copyOf(amounts[tableIndex], size * 2);
+        }
+        names[tableIndex][size] = statName;
+        amounts[tableIndex][size] = amount;
+        sizes[tableIndex] = size + 1;
+    }
+
+    /**
+      * Get the number of stats in a stat table.
+      *
+      * @param tableIndex The index of the stat table.
+      * @return The number of stats.
+      */
+    public int size(int tableIndex) {
+        return sizes[tableIndex];
+    }
+
+    /**
+      * Get the total number of stats in all stat tables.
+      *
+      * @return The number of stats.
+      */
+    public int totalSize() {
+        int total = 0;
+        for (int size : sizes) {
+            total += size;
+        }
+        return total;
+    }
+
+    public String statName(int tableIndex, int i) {
+        return names[tableIndex][i];
+    }
+
+    public int amount(int tableIndex, int i) {
+        return amounts[tableIndex][i];
+    }
+}
@@ -0,0 +1,292 @@
+package github.fnewell.playerstatistics.utils;
+
+import github.fnewell.playerstatistics.PlayerStatistics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static github.fnewell.playerstatistics.utils.DatabaseUtils.TABLE_NAMES;
+
+
+/**
+  * Full-rank index of every leaderboard partition (stat table, stat name): the amounts of all players, sorted.
+  * The rank of an amount is found with a binary search, so the rank and percentile of any player in any stat
+  * are answered in microseconds, without a COUNT(*) query per stat.
+  * The index is seeded from the database once, then maintained from the committed stat deltas:
+  * the deltas of a partition are collected and merged into its sorted array in one pass (on the next lookup or after the sync).
+  */
+public class RankIndex {
+
+    private static final Map<SyncChanges.Partition, Ranking> rankings = new ConcurrentHashMap<>();
+    private static volatile boolean seeded = false;
+
+    /**
+      * Rank of a player in one stat.
+      *
+      * @param tableIndex The index of the stat table.
+      * @param statName The name of the stat.
+      * @param amount The amount of the player.
+      * @param rank The rank of the player (1 = highest amount, players with the same amount share the rank).
+      * @param players The number of players with the stat.
+      */
+    public record Rank(int tableIndex, String statName, int amount, int rank, int players) {
+
+        /**
+          * Get the share of players ranked at or above the player ("top 7%").
+          *
+          * @return The share in percent (0 - 100].
+          */
+        public double topPercent() {
+            return players == 0 ? 100 : rank * 100.0 / players;
+        }
+
+        /**
+          * Get the percentile of the player (share of players with a lower amount).
+          *
+          * @return The percentile in percent [0 - 100).
+          */
+        public double percentile() {
+            return players == 0 ? 0 : (players - rank) * 100.0 / players;
+        }
+    }
+
+    /**
+      * Sorted amounts (ascending) of one partition, with the deltas not merged yet.
+      */
+    static class Ranking {
+        private int[] amounts = new int[0];
+        private int size = 0;
+        private final IntList added = new IntList();
+        private final IntList removed = new IntList();
+
+        synchronized void add(int amount) {
+            added.add(amount);
+        }
+
+        synchronized void remove(int amount) {
+            removed.add(amount);
+        }
+
+        /**
+          * Merge the pending deltas into the sorted amounts (one pass over the array).
+          */
+        synchronized void merge() {
+            if (added.size == 0 && removed.size == 0) {
+                return;
+            }
+            int[] adds = added.sorted();
+            int[] removes = removed.sorted();
+
+            int[] merged = new int[Math.max(size + adds.length - removes.length, 0)];
+            int count = 0;
+            int i = 0;
+            int a = 0;
+            int r = 0;
+            while (i < size || a < adds.length) {
+                int next;
+                if (a >= adds.length || (i < size && amounts[i] <= adds[a])) {
+                    next = amounts[i++];
+                } else {
+                    next = adds[a++];
+                }
+
+                // Skip the removed amounts (both lists are sorted)
+                while (r < removes.length && removes[r] < next) {
+                    r++;
+                }
+                if (r < removes.length && removes[r] == next) {
+                    r++;
+                    continue;
+                }
+                if (count == merged.length) {
+                    merged = Arrays.copyOf(merged, Math.max(count * 2, 16));
+                }
+                merged[count++] = next;
+            }
+
+            amounts = merged;
+            size = count;
+            added.size = 0;
+            removed.size = 0;
+        }
+
+        /**
+          * Get the rank of an amount (1 + number of higher amounts) and the number of players.
+          */
+        synchronized int[] rank(int amount) {
+            merge();
+            // First index with an amount above the given one
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (amounts[mid] <= amount) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return new int[]{ size - low + 1, size };
+        }
+    }
+
+    /**
+      * Growable list of primitive ints.
+      */
+    private static class IntList {
+        private int[] values = new int[8];
+        private int size = 0;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private int[] sorted() {
+            int[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    /**
+      * Seed the index from the database (once per server run).
+      * The amounts are loaded unsorted and sorted in memory, so the database does not have to sort them.
+      *
+      * @param connection The connection to the database.
+      */
+    public static synchronized void seed(Connection connection) {
+        if (seeded) {
+            return;
+        }
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Seeding rank index ..."); }
+
+        try {
+            long start = System.nanoTime();
+            long rows = 0;
+            for (int tableIndex = 0; tableIndex < TABLE_NAMES.size(); tableIndex++) {
+                Map<String, IntList> amounts = new HashMap<>();
+                try (PreparedStatement statement = connection.prepareStatement("SELECT stat_name, amount FROM " + TABLE_NAMES.get(tableIndex) + " WHERE amount > 0")) {
+                    statement.setFetchSize(10000);
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            amounts.computeIfAbsent(rs.getString("stat_name"), statName -> new IntList()).add(rs.getInt("amount"));
+                            rows++;
+                        }
+                    }
+                }
+
+                for (Map.Entry<String, IntList> entry : amounts.entrySet()) {
+                    Ranking ranking = new Ranking();
+                    ranking.amounts = entry.getValue().sorted();
+                    ranking.size = ranking.amounts.length;
+                    rankings.put(new SyncChanges.Partition(tableIndex, entry.getKey()), ranking);
+                }
+            }
+            seeded = true;
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Rank index seeded ({} partitions, {} rows, {} ms)", rankings.size(), rows, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)); }
+        } catch (SQLException e) {
+            rankings.clear();
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error seeding rank index: {}", e.getMessage());
+        }
+    }
+
+    /**
+      * Check if the index is seeded and can answer lookups.
+      *
+      * @return True if the index is seeded.
+      */
+    public static boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+      * Apply a committed stat change to the index (merged on the next lookup or {@link #merge()}).
+      *
+      * @param delta The committed change.
+      */
+    public static void apply(StatDelta delta) {
+        if (!seeded) {
+            return;
+        }
+        boolean oldRanked = !delta.isInsert() && delta.oldAmount() > 0;
+        boolean newRanked = !delta.isRemoval() && delta.newAmount() > 0;
+        if (!oldRanked && !newRanked) {
+            return;
+        }
+
+        Ranking ranking = rankings.computeIfAbsent(new SyncChanges.Partition(delta.tableIndex(), delta.statName()), partition -> new Ranking());
+        if (oldRanked) {
+            ranking.remove(delta.oldAmount());
+        }
+        if (newRanked) {
+            ranking.add(delta.newAmount());
+        }
+    }
+
+    /**
+      * Merge the pending deltas of all partitions (after a sync, so lookups do not have to).
+      */
+    public static void merge() {
+        rankings.values().forEach(Ranking::merge);
+    }
+
+    /**
+      * Get the rank of an amount in one stat.
+      *
+      * @param tableIndex The index of the stat table.
+      * @param statName The name of the stat.
+      * @param amount The amount (of a player).
+      * @return The rank, or null if the index is not seeded or the amount is not ranked (zero or less).
+      */
+    public static Rank rank(int tableIndex, String statName, int amount) {
+        if (!seeded || amount <= 0 || amount == StatSnapshot.MISSING) {
+            return null;
+        }
+        Ranking ranking = rankings.get(new SyncChanges.Partition(tableIndex, statName));
+        if (ranking == null) {
+            return null;
+        }
+        int[] rank = ranking.rank(amount);
+        return new Rank(tableIndex, statName, amount, rank[0], rank[1]);
+    }
+
+    /**
+      * Get the ranks of a player in all their stats (the stats are read from the stat cache).
+      *
+      * @param connection The connection to the database (used if the player's stats are not cached).
+      * @param playerId The ID of the player.
+      * @return The ranks of the player, ordered by table and stat name (empty if the index is not seeded).
+      * @throws SQLException If an SQL error occurs.
+      */
+    public static List<Rank> ranks(Connection connection, int playerId) throws SQLException {
+        List<Rank> ranks = new ArrayList<>();
+        if (!seeded) {
+            return ranks;
+        }
+
+        StatSnapshot snapshot = StatValueCache.get(connection, playerId);
+        for (int slot = 0; slot < snapshot.capacity(); slot++) {
+            if (snapshot.isUsed(slot)) {
+                Rank rank = rank(snapshot.tableIndexAt(slot), snapshot.statNameAt(slot), snapshot.amountAt(slot));
+                if (rank != null) {
+                    ranks.add(rank);
+                }
+            }
+        }
+        ranks.sort((a, b) -> a.tableIndex() != b.tableIndex() ? Integer.compare(a.tableIndex(), b.tableIndex()) : a.statName().compareTo(b.statName()));
+        return ranks;
+    }
+}
@@ -0,0 +1,118 @@
+package github.fnewell.playerstatistics.utils;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigValue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static github.fnewell.playerstatistics.utils.DatabaseUtils.TABLE_NAMES;
+
+
+/**
+  * Hall of Fame scoring configured in the 'hall-of-fame-section' of the config.
+  * Every ranked position gives the configured points (the length of the points list is the podium depth),
+  * scaled by the weight of the stat (or of its table), and optionally by the percentile of the position
+  * within all players of the stat. Scores are computed in one in-memory pass over the rankings.
+  */
+public class ScoringEngine {
+
+    // Number of Hall of Fame columns (first_place - fifth_place) + the score
+    public static final int COLUMNS = DatabaseUtils.LEADERBOARD_SIZE + 1;
+
+    private static double[] points = null;
+    private static boolean normalized = false;
+    private static final Map<Integer, Double> tableWeights = new HashMap<>();
+    private static final Map<SyncChanges.Partition, Double> statWeights = new HashMap<>();
+
+    /**
+      * Load the scoring from the config (on first use).
+      */
+    private static synchronized void load() {
+        if (points != null) {
+            return;
+        }
+
+        Config config = ConfigUtils.config.getConfig("hall-of-fame");
+        List<Integer> configuredPoints = config.getIntList("points");
+        points = new double[configuredPoints.size()];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = configuredPoints.get(i);
+        }
+        normalized = config.getBoolean("normalized");
+
+        Config configuredTableWeights = config.getConfig("table-weights");
+        Config configuredStatWeights = config.getConfig("stat-weights");
+        for (int tableIndex = 0; tableIndex < TABLE_NAMES.size(); tableIndex++) {
+            String tableName = TABLE_NAMES.get(tableIndex);
+            if (configuredTableWeights.hasPath(tableName)) {
+                tableWeights.put(tableIndex, configuredTableWeights.getDouble(tableName));
+            }
+            if (configuredStatWeights.hasPath(tableName)) {
+                ConfigObject weights = configuredStatWeights.getObject(tableName);
+                for (Map.Entry<String, ConfigValue> weight : weights.entrySet()) {
+                    if (weight.getValue().unwrapped() instanceof Number number) {
+                        statWeights.put(new SyncChanges.Partition(tableIndex, weight.getKey()), number.doubleValue());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+      * Check if the scoring needs the number of players of every stat.
+      *
+      * @return True if percentile-based scoring is enabled.
+      */
+    public static boolean isNormalized() {
+        load();
+        return normalized;
+    }
+
+    /**
+      * Compute the Hall of Fame rows of all ranked players.
+      *
+      * @param rankings The ranked player IDs (positions 1 - 5, 0 = none) of every partition.
+      * @param playerCounts The number of players of every partition (only used for normalized scoring).
+      * @return The rows by player ID: points of the positions 1 - 5 and the score.
+      */
+    public static Map<Integer, int[]> score(Map<SyncChanges.Partition, int[]> rankings, Map<SyncChanges.Partition, Integer> playerCounts) {
+        load();
+
+        Map<Integer, double[]> sums = new HashMap<>();
+        rankings.forEach((partition, ranked) -> {
+            double weight = statWeights.getOrDefault(partition, tableWeights.getOrDefault(partition.tableIndex(), 1.0));
+            if (weight == 0) {
+                return;
+            }
+
+            for (int i = 0; i < Math.min(ranked.length, points.length); i++) {
+                if (ranked[i] == 0) {
+                    continue;
+                }
+                double value = points[i] * weight;
+                if (normalized) {
+                    // Share of the players of the stat ranked at or behind this position (a sole player keeps all points)
+                    int players = Math.max(playerCounts.getOrDefault(partition, 0), i + 1);
+                    value *= (double) (players - i) / players;
+                }
+                sums.computeIfAbsent(ranked[i], playerId -> new double[COLUMNS - 1])[i] += value;
+            }
+        });
+
+        Map<Integer, int[]> rows = new HashMap<>();
+        sums.forEach((playerId, values) -> {
+            int[] row = new int[COLUMNS];
+            for (int i = 0; i < values.length; i++) {
+                row[i] = (int) Math.round(values[i]);
+                row[COLUMNS - 1] += row[i];
+            }
+            if (row[COLUMNS - 1] != 0) {
+                rows.put(playerId, row);
+            }
+        });
+        return rows;
+    }
+}
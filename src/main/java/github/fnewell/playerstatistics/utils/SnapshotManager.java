@@ -0,0 +1,476 @@
+package github.fnewell.playerstatistics.utils;
+
+import github.fnewell.playerstatistics.PlayerStatistics;
+import github.fnewell.playerstatistics.db.LocalDatabase;
+import net.neoforged.fml.loading.FMLPaths;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+  * Immutable, versioned copies of the local database for the webpage.
+  * After a synchronization which published new data, the database is copied with 'VACUUM INTO' (a consistent, defragmented copy
+  * taken in one read transaction) to a temporary file, which is then renamed to 'player-statistics-<generation>-<time>.db'.
+  * A snapshot is only written if the sync generation changed since the newest snapshot, and at most once per
+  * 'web-server.snapshot-min-interval' (a sync within the interval defers the snapshot to the end of the interval).
+  * The web server serves the newest complete snapshot, so visitors never get a torn file and never read the live database.
+  * Replaced snapshots are kept for a while ('web-server.snapshots-kept', 'web-server.snapshot-retention').
+  * With lazy loading enabled, the snapshots are rewritten with a small page size, so they can be read page by page over HTTP.
+  * Every new snapshot is compressed once in the background (zstd if available on the classpath, gzip, deflate),
+  * so the web server can send a compressed variant without compressing per request. Compression runs on its own
+  * low-priority thread, so it does not take threads or file permits from the synchronization.
+  */
+public class SnapshotManager {
+
+    private static final Path SNAPSHOT_DIR = FMLPaths.GAMEDIR.get().resolve("mods/player-statistics/snapshots");
+    private static final Path LIVE_DATABASE = FMLPaths.GAMEDIR.get().resolve("mods/player-statistics/player-statistics.db");
+    private static final String PREFIX = "player-statistics-";
+    private static final String SUFFIX = ".db";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // Compression level of the zstd variant (compressed once per snapshot, in the background)
+    private static final int ZSTD_LEVEL = 12;
+
+    /**
+      * Compressed variant of a snapshot.
+      *
+      * @param encoding The HTTP content coding ('zstd', 'gzip', 'deflate').
+      * @param extension The extension appended to the snapshot file name.
+      */
+    public record Encoding(String encoding, String extension) {}
+
+    // Supported encodings, in order of preference
+    public static final List<Encoding> ENCODINGS = List.of(
+            new Encoding("zstd", ".zst"),
+            new Encoding("gzip", ".gz"),
+            new Encoding("deflate", ".deflate")
+    );
+
+    private static volatile Path latest = null;
+    private static boolean scanned = false;
+    private static Path publishing = null;      // Snapshot being rewritten on the compression thread (not published yet)
+
+    // Low-priority thread rewriting (lazy loading page size) and compressing the new snapshots (one task after another)
+    private static ExecutorService compressor = null;
+
+    // Snapshot deferred to the end of the minimum interval (created on its own thread)
+    private static ScheduledExecutorService deferrer = null;
+    private static boolean deferred = false;
+
+    /**
+      * Write a new snapshot of the local database and delete the snapshots which are not kept anymore.
+      * Does nothing if the database is not local (SQLite) or the newest snapshot has the current sync generation.
+      * Within the minimum interval after the newest snapshot, the snapshot is deferred to the end of the interval.
+      *
+      * @param connection The connection to the database.
+      */
+    public static synchronized void create(Connection connection) {
+        if (!"SQLITE".equals(DatabaseUtils.DB_TYPE)) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        Path temp = null;
+        try {
+            Files.createDirectories(SNAPSHOT_DIR);
+            scan();
+
+            // Nothing was published since the newest snapshot
+            Path newest = publishing != null ? publishing : latest;
+            long generation = DatabaseUtils.getSyncGeneration(connection);
+            if (newest != null && generationOf(newest) == generation) {
+                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Database snapshot is up to date (generation {}).", generation); }
+                return;
+            }
+
+            // Too soon after the newest snapshot, write it at the end of the interval instead
+            long wait = (newest != null ? createdAt(newest) : 0) + ConfigUtils.config.getInt("web-server.snapshot-min-interval") * 1000L - System.currentTimeMillis();
+            if (wait > 0) {
+                defer(wait);
+                return;
+            }
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Creating database snapshot ..."); }
+
+            String name = PREFIX + generation + "-" + System.currentTimeMillis();
+            temp = SNAPSHOT_DIR.resolve(name + TEMP_SUFFIX);
+            Files.deleteIfExists(temp);
+
+            try (PreparedStatement statement = connection.prepareStatement("VACUUM INTO ?")) {
+                statement.setString(1, temp.toString());
+                statement.execute();
+            }
+            Path snapshot = SNAPSHOT_DIR.resolve(name + SUFFIX);
+            if (ConfigUtils.config.getBoolean("web-server.lazy-loading.enabled")) {
+                // The copy has the page size of the live database, it is rewritten on the compression thread
+                // (the live database is not touched) and published when done
+                Path copy = temp;
+                publishing = snapshot;
+                compressor().submit(() -> {
+                    try {
+                        tunePageSize(copy, ConfigUtils.config.getInt("web-server.lazy-loading.page-size"));
+                        publish(copy, snapshot, start);
+                    } catch (SQLException | IOException e) {
+                        synchronized (SnapshotManager.class) {
+                            if (publishing == snapshot) {
+                                publishing = null;
+                            }
+                        }
+                        try {
+                            Files.deleteIfExists(copy);
+                        } catch (IOException ignored) {}
+                        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+                        PlayerStatistics.LOGGER.error("Error creating database snapshot: {}", e.getMessage());
+                    }
+                });
+                return;
+            }
+            publish(temp, snapshot, start);
+        } catch (SQLException | IOException e) {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {}
+            }
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error creating database snapshot: {}", e.getMessage());
+        }
+    }
+
+    /**
+      * Publish a complete snapshot under its final name, delete the snapshots which are not kept anymore
+      * and compress the new one in the background.
+      */
+    private static synchronized void publish(Path temp, Path snapshot, long start) throws IOException {
+        if (publishing == snapshot) {
+            publishing = null;
+        }
+        Files.move(temp, snapshot, StandardCopyOption.ATOMIC_MOVE);
+        latest = snapshot;
+        DatabaseUtils.resetReadConnectionPool();
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Database snapshot created: {} ({} bytes, {} ms)", snapshot.getFileName(), Files.size(snapshot), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)); }
+
+        deleteOld();
+        compressInBackground(snapshot);
+    }
+
+    /**
+      * Schedule a snapshot after the given time (once, later syncs within the interval are covered by it).
+      */
+    private static void defer(long delayMillis) {
+        if (deferred) {
+            return;
+        }
+        if (deferrer == null) {
+            deferrer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "player-statistics-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        deferred = true;
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Database snapshot deferred by {} ms.", delayMillis); }
+
+        deferrer.schedule(() -> {
+            synchronized (SnapshotManager.class) {
+                deferred = false;
+            }
+            try (Connection connection = DatabaseUtils.getDatabaseConnection()) {
+                create(connection);
+            } catch (Exception e) {
+                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+                PlayerStatistics.LOGGER.error("Error creating deferred database snapshot: {}", e.getMessage());
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+      * Stop the deferred snapshot and the compression (called when the server stops).
+      */
+    public static synchronized void shutdown() {
+        if (deferrer != null) {
+            deferrer.shutdownNow();
+            deferrer = null;
+        }
+        deferred = false;
+        publishing = null;
+        if (compressor != null) {
+            compressor.shutdownNow();      // Unfinished variants are temporary files, deleted by the next scan
+            compressor = null;
+        }
+    }
+
+    /**
+      * Get the database file to serve: the newest complete snapshot, or the live database if there is no snapshot yet.
+      *
+      * @return The path to the database file.
+      */
+    public static Path servedFile() {
+        Path snapshot = latest;
+        if (snapshot == null) {
+            synchronized (SnapshotManager.class) {
+                scan();
+                snapshot = latest;
+            }
+        }
+        return snapshot != null ? snapshot : LIVE_DATABASE;
+    }
+
+    /**
+      * Get a kept snapshot by its version.
+      *
+      * @param version The version of the snapshot (see {@link #versionOf(Path)}).
+      * @return The path to the snapshot, or null if it does not exist (anymore).
+      */
+    public static Path snapshot(String version) {
+        if (!version.startsWith(PREFIX) || version.contains("/") || version.contains("\\") || version.contains("..")) {
+            return null;
+        }
+        Path snapshot = SNAPSHOT_DIR.resolve(version + SUFFIX);
+        return Files.exists(snapshot) ? snapshot : null;
+    }
+
+    /**
+      * Rewrite a snapshot with the page size used for lazy loading (smaller pages mean smaller range requests).
+      */
+    private static void tunePageSize(Path snapshot, int pageSize) throws SQLException {
+        try (Connection connection = LocalDatabase.getConnection(snapshot);
+             Statement statement = connection.createStatement()) {
+            try (ResultSet rs = statement.executeQuery("PRAGMA page_size")) {
+                if (rs.next() && rs.getInt(1) == pageSize) {
+                    return;
+                }
+            }
+            // The page size of an existing database only changes with a VACUUM (rollback journal mode)
+            statement.execute("PRAGMA journal_mode = DELETE");
+            statement.execute("PRAGMA page_size = " + pageSize);
+            statement.execute("VACUUM");
+        }
+    }
+
+    /**
+      * Get a compressed variant of a snapshot.
+      *
+      * @param snapshot The path to the snapshot.
+      * @param encoding The encoding of the variant.
+      * @return The path to the variant, or null if it does not exist (yet).
+      */
+    public static Path variant(Path snapshot, Encoding encoding) {
+        if (versionOf(snapshot) == null) {
+            return null;
+        }
+        Path variant = snapshot.resolveSibling(snapshot.getFileName() + encoding.extension());
+        return Files.exists(variant) ? variant : null;
+    }
+
+    /**
+      * Compress a new snapshot into all available encodings on the compression thread.
+      * Must be called while holding the class lock.
+      */
+    private static void compressInBackground(Path snapshot) {
+        for (Encoding encoding : ENCODINGS) {
+            if ("zstd".equals(encoding.encoding()) && !isZstdAvailable()) {
+                continue;
+            }
+            compressor().submit(() -> {
+                try {
+                    compress(snapshot, encoding);
+                } catch (Exception e) {
+                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+                    PlayerStatistics.LOGGER.error("Error compressing database snapshot ({}): {}", encoding.encoding(), e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+      * Get the low-priority thread which rewrites and compresses the snapshots, create it on first use.
+      * Must be called while holding the class lock.
+      */
+    private static ExecutorService compressor() {
+        if (compressor == null) {
+            compressor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "player-statistics-compress");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+        return compressor;
+    }
+
+    /**
+      * Write one compressed variant of a snapshot (to a temporary file, renamed when complete).
+      */
+    private static void compress(Path snapshot, Encoding encoding) throws Exception {
+        if (!Files.exists(snapshot)) {
+            return;     // Deleted before it was compressed
+        }
+        long start = System.nanoTime();
+        Path variant = snapshot.resolveSibling(snapshot.getFileName() + encoding.extension());
+        Path temp = variant.resolveSibling(variant.getFileName() + TEMP_SUFFIX);
+
+        try {
+            try (OutputStream out = compressor(encoding, Files.newOutputStream(temp))) {
+                Files.copy(snapshot, out);
+            }
+            Files.move(temp, variant, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        // The snapshot may have been deleted in the meantime
+        if (!Files.exists(snapshot)) {
+            Files.deleteIfExists(variant);
+            return;
+        }
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Database snapshot compressed: {} ({} bytes, {} ms)", variant.getFileName(), Files.size(variant), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)); }
+    }
+
+    /**
+      * Wrap a stream into the compressor of an encoding (best compression, it runs once per snapshot).
+      * The zstd compressor (zstd-jni) is loaded by reflection, it is optional.
+      */
+    private static OutputStream compressor(Encoding encoding, OutputStream out) throws Exception {
+        return switch (encoding.encoding()) {
+            case "zstd" -> (OutputStream) Class.forName("com.github.luben.zstd.ZstdOutputStream")
+                    .getConstructor(OutputStream.class, int.class)
+                    .newInstance(out, ZSTD_LEVEL);
+            case "gzip" -> new GZIPOutputStream(out, 65536) {{ def.setLevel(Deflater.BEST_COMPRESSION); }};
+            case "deflate" -> new DeflaterOutputStream(out, new Deflater(Deflater.BEST_COMPRESSION), 65536);     // zlib format, as HTTP 'deflate' expects
+            default -> throw new IllegalArgumentException("Not supported encoding: " + encoding.encoding());
+        };
+    }
+
+    private static boolean isZstdAvailable() {
+        try {
+            Class.forName("com.github.luben.zstd.ZstdOutputStream");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+      * Get the version of a snapshot (its file name without the extension).
+      *
+      * @param file The path to a database file.
+      * @return The version, or null if the file is not a snapshot.
+      */
+    public static String versionOf(Path file) {
+        String fileName = file.getFileName().toString();
+        if (!file.startsWith(SNAPSHOT_DIR) || !fileName.startsWith(PREFIX) || !fileName.endsWith(SUFFIX)) {
+            return null;
+        }
+        return fileName.substring(0, fileName.length() - SUFFIX.length());
+    }
+
+    /**
+      * Find the newest snapshot left by a previous server run and delete unfinished temporary files (once).
+      */
+    private static void scan() {
+        if (scanned) {
+            return;
+        }
+        scanned = true;
+        if (!Files.isDirectory(SNAPSHOT_DIR)) {
+            return;
+        }
+
+        try (Stream<Path> files = Files.list(SNAPSHOT_DIR)) {
+            for (Path file : files.toList()) {
+                if (file.getFileName().toString().contains(TEMP_SUFFIX)) {     // Including journals of temporary files
+                    Files.deleteIfExists(file);
+                }
+            }
+            List<Path> snapshots = snapshots();
+            if (latest == null && !snapshots.isEmpty()) {
+                latest = snapshots.get(0);
+            }
+        } catch (IOException e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error reading database snapshots: {}", e.getMessage());
+        }
+    }
+
+    /**
+      * Delete the old snapshots: a snapshot is deleted once it is not among the newest 'web-server.snapshots-kept'
+      * and was replaced by a newer one for longer than 'web-server.snapshot-retention',
+      * so pages which loaded an older version (lazy loading) can finish reading it.
+      * Snapshots still being downloaded stay readable through their open file handles (on Windows, they are deleted next time).
+      */
+    private static void deleteOld() throws IOException {
+        List<Path> snapshots = snapshots();
+        int kept = ConfigUtils.config.getInt("web-server.snapshots-kept");
+        long replacedBefore = System.currentTimeMillis() - ConfigUtils.config.getInt("web-server.snapshot-retention") * 1000L;
+        for (int i = kept; i < snapshots.size(); i++) {
+            // Replaced when the next newer snapshot was created
+            if (createdAt(snapshots.get(i - 1)) > replacedBefore) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(snapshots.get(i));
+                for (Encoding encoding : ENCODINGS) {
+                    Files.deleteIfExists(snapshots.get(i).resolveSibling(snapshots.get(i).getFileName() + encoding.extension()));
+                }
+            } catch (IOException e) {
+                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Could not delete snapshot {}: {}", snapshots.get(i).getFileName(), e.getMessage()); }
+            }
+        }
+    }
+
+    /**
+      * List the complete snapshots, newest first.
+      */
+    private static List<Path> snapshots() throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (Stream<Path> files = Files.list(SNAPSHOT_DIR)) {
+            files.filter(file -> versionOf(file) != null).forEach(snapshots::add);
+        }
+        snapshots.sort(Comparator.comparingLong(SnapshotManager::createdAt).reversed());
+        return snapshots;
+    }
+
+    /**
+      * Get the sync generation of a snapshot from its name ('player-statistics-<generation>-<time>.db').
+      */
+    private static long generationOf(Path snapshot) {
+        String version = versionOf(snapshot);
+        try {
+            return Long.parseLong(version.substring(PREFIX.length(), version.lastIndexOf('-')));
+        } catch (NumberFormatException | NullPointerException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    /**
+      * Get the creation time of a snapshot from its name ('player-statistics-<generation>-<time>.db').
+      */
+    private static long createdAt(Path snapshot) {
+        String version = versionOf(snapshot);
+        try {
+            return Long.parseLong(version.substring(version.lastIndexOf('-') + 1));
+        } catch (NumberFormatException | NullPointerException e) {
+            return 0;
+        }
+    }
+}
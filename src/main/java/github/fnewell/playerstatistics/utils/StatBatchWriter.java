@@ -0,0 +1,306 @@
+package github.fnewell.playerstatistics.utils;
+
+import github.fnewell.playerstatistics.PlayerStatistics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+
+/**
+  * Batched writer for player statistics.
+  * One parameterized upsert statement is prepared per stat table and reused for all players handled by the writer.
+  * Rows are collected with addBatch() and flushed (and committed) once the configured batch size is reached,
+  * so one chunk of many players costs a single round trip per stat table.
+  * Only rows which were inserted, changed or removed since the last sync (see {@link StatValueCache}) are written.
+  */
+public class StatBatchWriter implements AutoCloseable {
+
+    private final Connection connection;
+    private final String dbType;
+    private final int batchSize;
+    private final boolean previousAutoCommit;
+
+    private final SyncChanges changes;
+
+    private final PreparedStatement[] upsertStatements = new PreparedStatement[DatabaseUtils.TABLE_NAMES.size()];
+    private final PreparedStatement[] deleteStatements = new PreparedStatement[DatabaseUtils.TABLE_NAMES.size()];
+    private PreparedStatement manifestStatement;
+    private int pendingManifest = 0;
+    private final int[] pendingUpserts = new int[DatabaseUtils.TABLE_NAMES.size()];
+    private final int[] pendingDeletes = new int[DatabaseUtils.TABLE_NAMES.size()];
+    private int pendingTotal = 0;
+
+    // Changes of the current chunk, published only after the chunk is committed
+    private final List<StatDelta> pendingDeltas = new ArrayList<>();
+    private final Map<Integer, StatSnapshot> pendingSnapshots = new HashMap<>();
+    private int pendingUnchanged = 0;
+
+    /**
+      * Create a new batch writer on the given connection.
+      * The connection is switched to manual commit until the writer is closed.
+      *
+      * @param connection The connection to the database (owned by the calling worker).
+      * @param dbType The type of the database.
+      * @param batchSize The number of rows after which the batches are flushed and committed.
+      * @param changes The collector of the committed changes.
+      * @throws SQLException If an SQL error occurs.
+      */
+    public StatBatchWriter(Connection connection, String dbType, int batchSize, SyncChanges changes) throws SQLException {
+        this.connection = connection;
+        this.dbType = dbType;
+        this.batchSize = Math.max(1, batchSize);
+        this.changes = changes;
+        this.previousAutoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+    }
+
+    /**
+      * Get the connection used by this writer.
+      *
+      * @return The connection to the database.
+      */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+      * Add the changed stats of a player to the batches.
+      * The stats are compared with the last synchronized values, unchanged rows are skipped.
+      * The batches are flushed when the number of pending rows reaches the batch size.
+      *
+      * @param playerId The ID of the player.
+      * @param stats The parsed player statistics.
+      * @throws SQLException If an SQL error occurs.
+      */
+    public void addPlayer(int playerId, PlayerStatsBuffer stats) throws SQLException {
+        StatSnapshot previous = pendingSnapshots.get(playerId);
+        if (previous == null) {
+            previous = StatValueCache.getCached(playerId);
+        }
+        if (previous == null) {
+            previous = StatValueCache.get(connection, playerId);
+
+            // End the read transaction before the chunk is written (the batches are only executed by flush()):
+            // an SQLite connection holding SHARED gets SQLITE_BUSY at once when another writer holds RESERVED,
+            // the busy handler does not help with lock upgrades
+            connection.commit();
+        }
+        StatSnapshot current = StatSnapshot.of(stats);
+
+        // Inserted and changed rows
+        for (int slot = 0; slot < current.capacity(); slot++) {
+            if (!current.isUsed(slot)) {
+                continue;
+            }
+            int tableIndex = current.tableIndexAt(slot);
+            String statName = current.statNameAt(slot);
+            int amount = current.amountAt(slot);
+            int oldAmount = previous.get(tableIndex, statName);
+
+            if (oldAmount == amount) {
+                pendingUnchanged++;
+                continue;
+            }
+            addUpsert(tableIndex, playerId, statName, amount);
+            pendingDeltas.add(new StatDelta(tableIndex, statName, playerId, oldAmount, amount));
+        }
+
+        // Removed rows
+        for (int slot = 0; slot < previous.capacity(); slot++) {
+            if (!previous.isUsed(slot)) {
+                continue;
+            }
+            int tableIndex = previous.tableIndexAt(slot);
+            String statName = previous.statNameAt(slot);
+
+            if (current.get(tableIndex, statName) == StatSnapshot.MISSING) {
+                addDelete(tableIndex, playerId, statName);
+                pendingDeltas.add(new StatDelta(tableIndex, statName, playerId, previous.amountAt(slot), StatSnapshot.MISSING));
+            }
+        }
+
+        pendingSnapshots.put(playerId, current);
+
+        if (pendingTotal >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+      * Add the manifest entry of a synchronized stats file, it is committed together with the stats.
+      *
+      * @param playerUUID The UUID of the player.
+      * @param entry The state of the synchronized stats file.
+      * @throws SQLException If an SQL error occurs.
+      */
+    public void addManifest(UUID playerUUID, SyncManifest.Entry entry) throws SQLException {
+        if (manifestStatement == null) {
+            manifestStatement = connection.prepareStatement(SyncManifest.upsertSQL(dbType));
+        }
+
+        manifestStatement.setString(1, playerUUID.toString());
+        manifestStatement.setLong(2, entry.size());
+        manifestStatement.setLong(3, entry.lastModified());
+        manifestStatement.setLong(4, entry.contentHash());
+        manifestStatement.addBatch();
+
+        pendingManifest++;
+    }
+
+    /**
+      * Add one stat row to the upsert batch of its table.
+      */
+    private void addUpsert(int tableIndex, int playerId, String statName, int amount) throws SQLException {
+        PreparedStatement statement = upsertStatements[tableIndex];
+        if (statement == null) {
+            statement = connection.prepareStatement(upsertSQL(dbType, DatabaseUtils.TABLE_NAMES.get(tableIndex)));
+            upsertStatements[tableIndex] = statement;
+        }
+
+        statement.setInt(1, playerId);
+        statement.setString(2, statName);
+        statement.setInt(3, amount);
+        statement.addBatch();
+
+        pendingUpserts[tableIndex]++;
+        pendingTotal++;
+    }
+
+    /**
+      * Add one stat row to the delete batch of its table.
+      */
+    private void addDelete(int tableIndex, int playerId, String statName) throws SQLException {
+        PreparedStatement statement = deleteStatements[tableIndex];
+        if (statement == null) {
+            statement = connection.prepareStatement("DELETE FROM " + DatabaseUtils.TABLE_NAMES.get(tableIndex) + " WHERE player_id = ? AND stat_name = ?");
+            deleteStatements[tableIndex] = statement;
+        }
+
+        statement.setInt(1, playerId);
+        statement.setString(2, statName);
+        statement.addBatch();
+
+        pendingDeletes[tableIndex]++;
+        pendingTotal++;
+    }
+
+    /**
+      * Execute all pending batches and commit the chunk.
+      * The changes of the chunk are published only after the commit.
+      * If a batch fails, the whole chunk is rolled back and the cached stats of its players are dropped.
+      *
+      * @throws SQLException If an SQL error occurs.
+      */
+    public void flush() throws SQLException {
+        if (PlayerStatistics.DEBUG && pendingTotal > 0) { PlayerStatistics.LOGGER.info("Flushing {} stat rows ...", pendingTotal); }
+
+        try {
+            for (int tableIndex = 0; tableIndex < pendingUpserts.length; tableIndex++) {
+                if (pendingUpserts[tableIndex] > 0) {
+                    upsertStatements[tableIndex].executeBatch();
+                }
+                if (pendingDeletes[tableIndex] > 0) {
+                    deleteStatements[tableIndex].executeBatch();
+                }
+            }
+            if (pendingManifest > 0) {
+                manifestStatement.executeBatch();
+            }
+            connection.commit();
+            if (PlayerStatistics.DEBUG && pendingTotal > 0) { PlayerStatistics.LOGGER.info("Stat rows flushed!"); }
+
+            // Publish the committed changes
+            pendingSnapshots.forEach(StatValueCache::put);
+            for (StatDelta delta : pendingDeltas) {
+                changes.record(delta);
+                LeaderboardIndex.apply(delta);
+                RankIndex.apply(delta);
+            }
+            changes.recordUnchanged(pendingUnchanged);
+        } catch (SQLException e) {
+            connection.rollback();
+            clearBatches(upsertStatements);
+            clearBatches(deleteStatements);
+            if (manifestStatement != null) {
+                manifestStatement.clearBatch();
+            }
+            pendingSnapshots.keySet().forEach(StatValueCache::invalidate);
+            throw e;
+        } finally {
+            Arrays.fill(pendingUpserts, 0);
+            Arrays.fill(pendingDeletes, 0);
+            pendingTotal = 0;
+            pendingManifest = 0;
+            pendingDeltas.clear();
+            pendingSnapshots.clear();
+            pendingUnchanged = 0;
+        }
+    }
+
+    private static void clearBatches(PreparedStatement[] statements) throws SQLException {
+        for (PreparedStatement statement : statements) {
+            if (statement != null) {
+                statement.clearBatch();
+            }
+        }
+    }
+
+    /**
+      * Flush the remaining rows, close the statements and restore the commit mode of the connection.
+      *
+      * @throws SQLException If an SQL error occurs.
+      */
+    @Override
+    public void close() throws SQLException {
+        try {
+            flush();
+        } finally {
+            closeStatements(upsertStatements);
+            closeStatements(deleteStatements);
+            if (manifestStatement != null) {
+                manifestStatement.close();
+            }
+            connection.setAutoCommit(previousAutoCommit);
+        }
+    }
+
+    private static void closeStatements(PreparedStatement[] statements) throws SQLException {
+        for (PreparedStatement statement : statements) {
+            if (statement != null) {
+                statement.close();
+            }
+        }
+    }
+
+    /**
+      * Get the parameterized upsert statement for a stat table.
+      *
+      * @param dbType The type of the database.
+      * @param tableName The name of the stat table.
+      * @return The upsert SQL.
+      */
+    static String upsertSQL(String dbType, String tableName) {
+        return switch (dbType) {
+            case "MARIADB", "MYSQL" ->
+                    """
+                        INSERT INTO %s (player_id, stat_name, amount)
+                        VALUES (?, ?, ?)
+                        ON DUPLICATE KEY UPDATE amount = VALUES(amount)
+                    """.formatted(tableName);
+            case "SQLITE", "POSTGRESQL" ->
+                    """
+                        INSERT INTO %s (player_id, stat_name, amount)
+                        VALUES (?, ?, ?)
+                        ON CONFLICT (player_id, stat_name) DO UPDATE SET amount = excluded.amount
+                    """.formatted(tableName);
+            default -> throw new IllegalArgumentException("Unsupported database type: " + dbType);
+        };
+    }
+}
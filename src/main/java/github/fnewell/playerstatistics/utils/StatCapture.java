@@ -0,0 +1,278 @@
+package github.fnewell.playerstatistics.utils;
+
+import github.fnewell.playerstatistics.PlayerStatistics;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.stats.Stat;
+import net.minecraft.stats.StatsCounter;
+import net.minecraft.world.level.Level;
+import net.neoforged.fml.util.ObfuscationReflectionHelper;
+import net.neoforged.neoforge.event.entity.player.PlayerEvent;
+import net.neoforged.neoforge.event.level.LevelEvent;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+  * Captures the stats of online players directly from the server (in-memory stat counters), bypassing the stats files.
+  * Stats are captured on the server thread when a player logs out, when the overworld is saved and when the server stops,
+  * then they are handed to a background thread which writes them through the regular sync writer.
+  * Stats files of captured (online) players are skipped by the stats folder watcher. Once the server has written a captured
+  * player's stats file, its state is recorded in the sync manifest, so the next full scan skips the file as well.
+  */
+public class StatCapture {
+
+    private static final String PREFIX = "minecraft";
+
+    // Captured stats waiting to be written (the newest capture of a player replaces the older one)
+    private static final Map<UUID, PlayerStatsBuffer> pending = new ConcurrentHashMap<>();
+
+    // Nicks of the captured players (from their game profiles, written with their stats)
+    private static final Map<UUID, String> nicks = new ConcurrentHashMap<>();
+
+    // Players whose stats are captured in memory (online players, and logged out players until their stats file is written)
+    private static final Set<UUID> capturedPlayers = ConcurrentHashMap.newKeySet();
+
+    // Logged out players whose final stats file was not written yet (the server writes it after the logout event)
+    private static final Set<UUID> loggedOutPlayers = ConcurrentHashMap.newKeySet();
+
+    // Single writer thread, so the captures are written in order
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "player-statistics-capture");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+      * Check if the stat capture is enabled in the config.
+      *
+      * @return True if the stat capture is enabled.
+      */
+    public static boolean isEnabled() {
+        return ConfigUtils.config != null && ConfigUtils.config.getBoolean("sync-capture");
+    }
+
+    /**
+      * Check if the stats of a player are captured in memory (so its stats file does not need to be parsed).
+      *
+      * @param playerUUID The UUID of the player.
+      * @return True if the player is online and its stats are captured.
+      */
+    public static boolean isCaptured(UUID playerUUID) {
+        return capturedPlayers.contains(playerUUID);
+    }
+
+    /**
+      * Capture the stats of a player who is logging out.
+      * The player stays captured until the server has written its stats file (after this event),
+      * so the watcher does not parse the final stats file again.
+      */
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        if (!isEnabled() || !(event.getEntity() instanceof ServerPlayer player)) {
+            return;
+        }
+
+        capture(player);
+        capturedPlayers.add(player.getUUID());
+        loggedOutPlayers.add(player.getUUID());
+        scheduleWrite();
+    }
+
+    /**
+      * Capture the stats of all online players when the overworld is saved (autosave, /save-all).
+      * The stats files of all players (and of the players who logged out since the last save) were written just before.
+      */
+    public static void onLevelSave(LevelEvent.Save event) {
+        if (!isEnabled() || !(event.getLevel() instanceof ServerLevel level) || level.dimension() != Level.OVERWORLD) {
+            return;
+        }
+
+        captureAll(level.getServer());
+
+        Set<UUID> written = new HashSet<>(capturedPlayers);
+        capturedPlayers.removeAll(loggedOutPlayers);
+        loggedOutPlayers.clear();
+        scheduleManifest(written);
+    }
+
+    /**
+      * Handle a written stats file of a captured player (called by the stats folder watcher).
+      * The file state is recorded in the sync manifest, logged out players are released.
+      *
+      * @param playerUUID The UUID of the player.
+      */
+    public static void onStatsFileWritten(UUID playerUUID) {
+        if (loggedOutPlayers.remove(playerUUID)) {
+            capturedPlayers.remove(playerUUID);
+        }
+        scheduleManifest(Set.of(playerUUID));
+    }
+
+    /**
+      * Capture the stats of all online players and schedule them to be written.
+      * Must be called on the server thread.
+      *
+      * @param server The Minecraft server.
+      */
+    public static void captureAll(MinecraftServer server) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        for (ServerPlayer player : server.getPlayerList().getPlayers()) {
+            capture(player);
+            capturedPlayers.add(player.getUUID());
+            loggedOutPlayers.remove(player.getUUID());     // Logged in again
+        }
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Captured stats of {} online players.", server.getPlayerList().getPlayers().size()); }
+        scheduleWrite();
+    }
+
+    /**
+      * Copy the stat counters of a player into a new stats buffer.
+      * Only the non-zero counters are stored by the server, so this is proportional to the stats the player has.
+      *
+      * @param player The player.
+      */
+    private static void capture(ServerPlayer player) {
+        try {
+            Object2IntMap<Stat<?>> counters = ObfuscationReflectionHelper.getPrivateValue(StatsCounter.class, player.getStats(), "stats");
+            PlayerStatsBuffer stats = new PlayerStatsBuffer();
+
+            for (Object2IntMap.Entry<Stat<?>> counter : counters.object2IntEntrySet()) {
+                Stat<?> stat = counter.getKey();
+                ResourceLocation typeKey = BuiltInRegistries.STAT_TYPE.getKey(stat.getType());
+                if (typeKey == null || !PREFIX.equals(typeKey.getNamespace())) {
+                    continue;
+                }
+                int tableIndex = PlayerStatsBuffer.tableIndex(typeKey.getPath());
+                ResourceLocation statKey = statKey(stat);
+                if (tableIndex < 0 || statKey == null) {
+                    continue;
+                }
+
+                // Same stat names as in the stats files (without the 'minecraft:' prefix)
+                String statName = PREFIX.equals(statKey.getNamespace()) ? statKey.getPath() : statKey.toString();
+                stats.add(tableIndex, statName, counter.getIntValue());
+            }
+
+            nicks.put(player.getUUID(), player.getGameProfile().getName());
+            pending.put(player.getUUID(), stats);
+        } catch (Exception e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error while capturing player stats: {}", e.getMessage());
+        }
+    }
+
+    private static <T> ResourceLocation statKey(Stat<T> stat) {
+        return stat.getType().getRegistry().getKey(stat.getValue());
+    }
+
+    /**
+      * Schedule the pending captures to be written on the capture thread.
+      */
+    private static void scheduleWrite() {
+        if (pending.isEmpty() || writer.isShutdown()) {
+            return;
+        }
+
+        writer.submit(() -> {
+            if (pending.isEmpty()) {
+                return;     // Already written together with an earlier capture
+            }
+
+            Map<UUID, PlayerStatsBuffer> captured = new HashMap<>();
+            Map<UUID, String> capturedNicks = new HashMap<>();
+            for (UUID playerUUID : pending.keySet()) {
+                PlayerStatsBuffer stats = pending.remove(playerUUID);
+                if (stats != null) {
+                    captured.put(playerUUID, stats);
+                    String nick = nicks.get(playerUUID);
+                    if (nick != null) {
+                        capturedNicks.put(playerUUID, nick);
+                    }
+                }
+            }
+
+            if (!StatSyncTask.syncCapturedStats(captured, capturedNicks)) {
+                // Keep the failed captures for the next attempt (unless the player was captured again meanwhile)
+                captured.forEach(pending::putIfAbsent);
+            }
+        });
+    }
+
+    /**
+      * Schedule the stats files of captured players to be recorded in the sync manifest (on the capture thread,
+      * after their captured stats were written). Players whose capture was not written yet are skipped,
+      * so their stats files are still synchronized by the next full scan.
+      *
+      * @param players The UUIDs of the players.
+      */
+    private static void scheduleManifest(Set<UUID> players) {
+        if (players.isEmpty() || writer.isShutdown()) {
+            return;
+        }
+
+        Path statsDir = Path.of(ConfigUtils.config.getString("stats-folder"));
+        writer.submit(() -> {
+            Map<UUID, SyncManifest.Entry> written = new HashMap<>();
+            for (UUID playerUUID : players) {
+                if (pending.containsKey(playerUUID)) {
+                    continue;
+                }
+                try {
+                    written.put(playerUUID, SyncManifest.entry(statsDir.resolve(playerUUID + ".json")));
+                } catch (NoSuchFileException ignored) {
+                } catch (IOException e) {
+                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+                }
+            }
+            if (written.isEmpty()) {
+                return;
+            }
+
+            try (Connection connection = DatabaseUtils.getDatabaseConnection()) {
+                SyncManifest.touch(connection, written);
+            } catch (Exception e) {
+                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+                PlayerStatistics.LOGGER.error("Error while recording captured stats files: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+      * Write the remaining captures and stop the capture thread.
+      * Called during the server shutdown, before the database connections are closed.
+      */
+    public static void shutdown() {
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Shutting down stat capture ..."); }
+
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+        }
+        capturedPlayers.clear();
+        loggedOutPlayers.clear();
+        nicks.clear();
+    }
+}
@@ -0,0 +1,32 @@
+package github.fnewell.playerstatistics.utils;
+
+
+/**
+  * One changed stat row produced by the sync.
+  * A missing old amount means the row was inserted, a missing new amount means the row was removed.
+  *
+  * @param tableIndex The index of the stat table.
+  * @param statName The name of the stat.
+  * @param playerId The ID of the player.
+  * @param oldAmount The last synchronized value or {@link StatSnapshot#MISSING}.
+  * @param newAmount The new value or {@link StatSnapshot#MISSING}.
+  */
+public record StatDelta(int tableIndex, String statName, int playerId, int oldAmount, int newAmount) {
+
+    public boolean isInsert() {
+        return oldAmount == StatSnapshot.MISSING;
+    }
+
+    public boolean isRemoval() {
+        return newAmount == StatSnapshot.MISSING;
+    }
+
+    /**
+      * Get the difference between the new and the old value (missing values count as zero).
+      *
+      * @return The difference.
+      */
+    public long difference() {
+        return (long) (isRemoval() ? 0 : newAmount) - (isInsert() ? 0 : oldAmount);
+    }
+}
@@ -0,0 +1,270 @@
+package github.fnewell.playerstatistics.utils;
+
+import github.fnewell.playerstatistics.PlayerStatistics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+  * Time series of the stat gains of every player ('stat_history').
+  * Every published synchronization adds the gains of the changed (player, stat) rows to the bucket of the current hour.
+  * Old buckets are merged into coarser ones (hourly -> daily -> weekly) and weekly buckets are deleted after the retention,
+  * so the table grows with the activity of the players, not with the number of syncs.
+  * Buckets are aligned to UTC (weeks start on Monday), bucket_start is in epoch seconds.
+  */
+public class StatHistory {
+
+    public static final int HOURLY = 0;
+    public static final int DAILY = 1;
+    public static final int WEEKLY = 2;
+
+    private static final long HOUR = TimeUnit.HOURS.toSeconds(1);
+    private static final long DAY = TimeUnit.DAYS.toSeconds(1);
+    private static final long WEEK = TimeUnit.DAYS.toSeconds(7);
+    private static final long MONDAY_OFFSET = TimeUnit.DAYS.toSeconds(3);     // Epoch starts on Thursday, Monday + 3 days aligns to it
+
+    private static long lastCompaction = 0;
+
+    // Gains of publishes which were rolled back (their stat rows are committed already), written by the next publish
+    private static final Map<SyncChanges.PlayerStat, Long> retries = new HashMap<>();
+    private static boolean retriesWritten = false;
+
+    /**
+      * One bucket of the history.
+      *
+      * @param bucketStart The start of the bucket (epoch seconds).
+      * @param resolution The resolution of the bucket ({@link #HOURLY}, {@link #DAILY}, {@link #WEEKLY}).
+      * @param amountDelta The gain within the bucket.
+      */
+    public record Bucket(long bucketStart, int resolution, long amountDelta) {}
+
+    /**
+      * Check if the stat history is enabled in the config.
+      *
+      * @return True if the stat history is enabled.
+      */
+    public static boolean isEnabled() {
+        return ConfigUtils.config.getBoolean("stat-history.enabled");
+    }
+
+    /**
+      * Add the gains of a synchronization to the bucket of the current hour.
+      * The gains of earlier publishes which were rolled back ({@link #retry(SyncChanges)}) are written with them.
+      * Called inside the publish transaction, nothing is committed here ({@link #commit()} follows the commit).
+      *
+      * @param connection The connection to the database.
+      * @param changes The changes committed by the synchronization.
+      * @throws SQLException If an SQL error occurs.
+      */
+    public static synchronized void write(Connection connection, SyncChanges changes) throws SQLException {
+        retriesWritten = false;
+        if (!isEnabled()) {
+            return;
+        }
+        Map<SyncChanges.PlayerStat, Long> gains = new HashMap<>(changes.gains());
+        retries.forEach((stat, gain) -> gains.merge(stat, gain, Long::sum));
+        if (gains.isEmpty()) {
+            return;
+        }
+
+        long now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        long bucketStart = now - now % HOUR;
+
+        try (PreparedStatement statement = connection.prepareStatement(upsertSQL())) {
+            for (Map.Entry<SyncChanges.PlayerStat, Long> gain : gains.entrySet()) {
+                statement.setInt(1, gain.getKey().playerId());
+                statement.setInt(2, gain.getKey().tableIndex());
+                statement.setString(3, gain.getKey().statName());
+                statement.setInt(4, HOURLY);
+                statement.setLong(5, bucketStart);
+                statement.setLong(6, gain.getValue());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+        retriesWritten = !retries.isEmpty();
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Stat history updated ({} rows, {} retried)", gains.size(), retries.size()); }
+    }
+
+    /**
+      * Forget the retried gains after the publish transaction which wrote them was committed.
+      */
+    public static synchronized void commit() {
+        if (retriesWritten) {
+            retries.clear();
+            retriesWritten = false;
+        }
+    }
+
+    /**
+      * Keep the gains of a publish which was rolled back, so the next publish writes them.
+      * The gains leaderboards counted them already, so the history stays in step with their windows.
+      *
+      * @param changes The changes committed by the synchronization.
+      */
+    public static synchronized void retry(SyncChanges changes) {
+        retriesWritten = false;
+        if (!isEnabled()) {
+            return;
+        }
+        changes.gains().forEach((stat, gain) -> retries.merge(stat, gain, Long::sum));
+        retries.values().removeIf(gain -> gain == 0);
+    }
+
+    /**
+      * Check if gains of a rolled back publish are waiting to be written.
+      *
+      * @return True if the next publish has gains to retry.
+      */
+    public static synchronized boolean hasRetries() {
+        return !retries.isEmpty();
+    }
+
+    /**
+      * Merge old buckets into coarser ones and delete the expired weekly buckets (at most once per hour).
+      * All steps run in one transaction, so a range query never counts a gain twice or misses it.
+      *
+      * @param connection The connection to the database.
+      */
+    public static void compact(Connection connection) {
+        long now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        if (!isEnabled() || now - lastCompaction < HOUR) {
+            return;
+        }
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Compacting stat history ..."); }
+
+        long hourlyCutoff = now - ConfigUtils.config.getInt("stat-history.hourly-retention-hours") * HOUR;
+        long dailyCutoff = now - ConfigUtils.config.getInt("stat-history.daily-retention-days") * DAY;
+        long weeklyCutoff = now - ConfigUtils.config.getInt("stat-history.weekly-retention-weeks") * WEEK;
+
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                int merged = merge(connection, HOURLY, DAILY, "bucket_start - (bucket_start % " + DAY + ")", hourlyCutoff);
+                merged += merge(connection, DAILY, WEEKLY, "bucket_start - ((bucket_start + " + MONDAY_OFFSET + ") % " + WEEK + ")", dailyCutoff);
+                int deleted = delete(connection, WEEKLY, weeklyCutoff);
+                connection.commit();
+                lastCompaction = now;
+                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Stat history compacted ({} rows merged, {} rows expired)", merged, deleted); }
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error compacting stat history: {}", e.getMessage());
+        }
+    }
+
+    /**
+      * Get the history of one stat of a player within a time range, ordered by time.
+      * Buckets of different resolutions do not overlap in gains, so the gains of the range are the sum of all buckets.
+      *
+      * @param connection The connection to the database.
+      * @param playerId The ID of the player.
+      * @param tableIndex The index of the stat table.
+      * @param statName The name of the stat.
+      * @param from The start of the range (epoch seconds, inclusive).
+      * @param to The end of the range (epoch seconds, exclusive).
+      * @return The buckets within the range.
+      * @throws SQLException If an SQL error occurs.
+      */
+    public static List<Bucket> query(Connection connection, int playerId, int tableIndex, String statName, long from, long to) throws SQLException {
+        String sql = """
+            SELECT bucket_start, resolution, amount_delta FROM stat_history
+            WHERE player_id = ? AND table_index = ? AND stat_name = ? AND bucket_start >= ? AND bucket_start < ?
+            ORDER BY bucket_start, resolution
+        """;
+
+        List<Bucket> buckets = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, playerId);
+            statement.setInt(2, tableIndex);
+            statement.setString(3, statName);
+            statement.setLong(4, from);
+            statement.setLong(5, to);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    buckets.add(new Bucket(rs.getLong("bucket_start"), rs.getInt("resolution"), rs.getLong("amount_delta")));
+                }
+            }
+        }
+        return buckets;
+    }
+
+    /**
+      * Merge the buckets of one resolution older than the cutoff into the buckets of the next resolution.
+      */
+    private static int merge(Connection connection, int fromResolution, int toResolution, String bucketExpression, long cutoff) throws SQLException {
+        String selectSQL = """
+            SELECT player_id, table_index, stat_name, %d AS resolution, %s AS bucket_start, SUM(amount_delta) AS amount_delta
+            FROM stat_history
+            WHERE resolution = %d AND bucket_start < ?
+            GROUP BY player_id, table_index, stat_name, %s
+        """.formatted(toResolution, bucketExpression, fromResolution, bucketExpression);
+
+        // MySQL / MariaDB: the grouped rows are selected from a derived table, so the update can refer to them by its alias
+        // (columns of a grouped INSERT ... SELECT can not be referenced in ON DUPLICATE KEY UPDATE)
+        String mergeSQL = switch (DatabaseUtils.DB_TYPE) {
+            case "MARIADB", "MYSQL" ->
+                    "INSERT INTO stat_history (player_id, table_index, stat_name, resolution, bucket_start, amount_delta) " +
+                    "SELECT merged.player_id, merged.table_index, merged.stat_name, merged.resolution, merged.bucket_start, merged.amount_delta FROM (" + selectSQL + ") AS merged" +
+                    " ON DUPLICATE KEY UPDATE amount_delta = stat_history.amount_delta + merged.amount_delta";
+            case "SQLITE", "POSTGRESQL" ->
+                    "INSERT INTO stat_history (player_id, table_index, stat_name, resolution, bucket_start, amount_delta) " + selectSQL +
+                    " ON CONFLICT (player_id, table_index, stat_name, resolution, bucket_start) DO UPDATE SET amount_delta = stat_history.amount_delta + excluded.amount_delta";
+            default -> throw new IllegalArgumentException("Not supported database type (stat history): " + DatabaseUtils.DB_TYPE);
+        };
+
+        try (PreparedStatement statement = connection.prepareStatement(mergeSQL)) {
+            statement.setLong(1, cutoff);
+            statement.executeUpdate();
+        }
+        return delete(connection, fromResolution, cutoff);
+    }
+
+    /**
+      * Delete the buckets of one resolution older than the cutoff.
+      */
+    private static int delete(Connection connection, int resolution, long cutoff) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM stat_history WHERE resolution = ? AND bucket_start < ?")) {
+            statement.setInt(1, resolution);
+            statement.setLong(2, cutoff);
+            return statement.executeUpdate();
+        }
+    }
+
+    /**
+      * Get the upsert SQL adding a gain to a bucket, based on the database type.
+      *
+      * @return The upsert SQL (parameters: player_id, table_index, stat_name, resolution, bucket_start, amount_delta).
+      */
+    private static String upsertSQL() {
+        return switch (DatabaseUtils.DB_TYPE) {
+            case "MARIADB", "MYSQL" ->
+                    """
+                        INSERT INTO stat_history (player_id, table_index, stat_name, resolution, bucket_start, amount_delta)
+                        VALUES (?, ?, ?, ?, ?, ?)
+                        ON DUPLICATE KEY UPDATE amount_delta = amount_delta + VALUES(amount_delta)
+                    """;
+            case "SQLITE", "POSTGRESQL" ->
+                    """
+                        INSERT INTO stat_history (player_id, table_index, stat_name, resolution, bucket_start, amount_delta)
+                        VALUES (?, ?, ?, ?, ?, ?)
+                        ON CONFLICT (player_id, table_index, stat_name, resolution, bucket_start) DO UPDATE SET amount_delta = stat_history.amount_delta + excluded.amount_delta
+                    """;
+            default -> throw new IllegalArgumentException("Not supported database type (stat history): " + DatabaseUtils.DB_TYPE);
+        };
+    }
+}
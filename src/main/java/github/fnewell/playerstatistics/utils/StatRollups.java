@@ -0,0 +1,233 @@
+package github.fnewell.playerstatistics.utils;
+
+import github.fnewell.playerstatistics.PlayerStatistics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static github.fnewell.playerstatistics.utils.DatabaseUtils.TABLE_NAMES;
+
+
+/**
+  * Maintains the server-wide aggregates of every stat ('<table>_rollup': sum, number of players, maximum, minimum)
+  * from the committed row deltas, so dashboards read one row instead of scanning the stat tables.
+  * Sums and counts are adjusted by the deltas. The extremes only need a lookup (on the (stat_name, amount) index)
+  * when the row holding the current maximum or minimum was lowered or raised.
+  * The rollups are rebuilt from the stat tables once per server run.
+  */
+public class StatRollups {
+
+    // Maximum number of stat names in one IN (...) list
+    private static final int CHUNK_SIZE = 500;
+
+    private static volatile boolean rebuildRequired = true;
+
+    // Stored aggregates of one stat
+    private record Rollup(long totalAmount, int playerCount, int maxAmount, int minAmount) {}
+
+    /**
+      * Check if the rollups have to be rebuilt (they may not match the stat tables).
+      *
+      * @return True if a rebuild is required.
+      */
+    public static boolean isRebuildRequired() {
+        return rebuildRequired;
+    }
+
+    /**
+      * Write the rollups of the partitions changed by a synchronization.
+      * Called inside the publish transaction, nothing is committed here.
+      *
+      * @param connection The connection to the database.
+      * @param changes The changes committed by the synchronization.
+      * @throws SQLException If an SQL error occurs.
+      */
+    public static void write(Connection connection, SyncChanges changes) throws SQLException {
+        if (rebuildRequired || changes.rollupChanges().isEmpty()) {
+            return;
+        }
+
+        // Group the changes by table
+        Map<Integer, Map<String, SyncChanges.RollupChange>> tables = new TreeMap<>();
+        changes.rollupChanges().forEach((partition, change) ->
+                tables.computeIfAbsent(partition.tableIndex(), tableIndex -> new HashMap<>()).put(partition.statName(), change));
+
+        for (Map.Entry<Integer, Map<String, SyncChanges.RollupChange>> table : tables.entrySet()) {
+            String tableName = TABLE_NAMES.get(table.getKey());
+            Map<String, Rollup> stored = loadRows(connection, tableName, new ArrayList<>(table.getValue().keySet()));
+
+            try (PreparedStatement insertStmt = connection.prepareStatement("INSERT INTO " + tableName + "_rollup (total_amount, player_count, max_amount, min_amount, stat_name) VALUES (?, ?, ?, ?, ?)");
+                 PreparedStatement updateStmt = connection.prepareStatement("UPDATE " + tableName + "_rollup SET total_amount = ?, player_count = ?, max_amount = ?, min_amount = ? WHERE stat_name = ?");
+                 PreparedStatement deleteStmt = connection.prepareStatement("DELETE FROM " + tableName + "_rollup WHERE stat_name = ?")) {
+
+                for (Map.Entry<String, SyncChanges.RollupChange> entry : table.getValue().entrySet()) {
+                    String statName = entry.getKey();
+                    SyncChanges.RollupChange change = entry.getValue();
+                    Rollup rollup = stored.get(statName);
+
+                    int playerCount = (rollup == null ? 0 : rollup.playerCount()) + change.countDelta();
+                    if (playerCount <= 0) {
+                        if (rollup != null) {
+                            deleteStmt.setString(1, statName);
+                            deleteStmt.addBatch();
+                        }
+                        continue;
+                    }
+
+                    long totalAmount = (rollup == null ? 0 : rollup.totalAmount()) + change.amountDelta();
+                    int maxAmount;
+                    int minAmount;
+                    if (rollup == null) {
+                        maxAmount = change.maxAdded();
+                        minAmount = change.minAdded();
+                    } else {
+                        // An added value beyond the stored extreme is the new extreme, a replaced extreme has to be looked up
+                        if (change.maxAdded() >= rollup.maxAmount()) {
+                            maxAmount = change.maxAdded();
+                        } else if (change.maxRemoved() >= rollup.maxAmount()) {
+                            maxAmount = lookupExtreme(connection, tableName, statName, "MAX");
+                        } else {
+                            maxAmount = rollup.maxAmount();
+                        }
+                        if (change.minAdded() <= rollup.minAmount()) {
+                            minAmount = change.minAdded();
+                        } else if (change.minRemoved() <= rollup.minAmount()) {
+                            minAmount = lookupExtreme(connection, tableName, statName, "MIN");
+                        } else {
+                            minAmount = rollup.minAmount();
+                        }
+                    }
+
+                    PreparedStatement statement = (rollup == null) ? insertStmt : updateStmt;
+                    statement.setLong(1, totalAmount);
+                    statement.setInt(2, playerCount);
+                    statement.setInt(3, maxAmount);
+                    statement.setInt(4, minAmount);
+                    statement.setString(5, statName);
+                    statement.addBatch();
+                }
+
+                deleteStmt.executeBatch();
+                updateStmt.executeBatch();
+                insertStmt.executeBatch();
+            }
+        }
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Rollups updated ({} stats)", changes.rollupChanges().size()); }
+    }
+
+    /**
+      * Rebuild the rollups of all stat tables with one aggregate query per table.
+      * Every table is replaced in one transaction, so readers never see it empty.
+      *
+      * @param connection The connection to the database.
+      */
+    public static void rebuild(Connection connection) {
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Rebuilding stat rollups ..."); }
+
+        try {
+            long start = System.nanoTime();
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                for (String tableName : TABLE_NAMES) {
+                    try (PreparedStatement clearStmt = connection.prepareStatement("DELETE FROM " + tableName + "_rollup");
+                         PreparedStatement fillStmt = connection.prepareStatement(
+                                 "INSERT INTO " + tableName + "_rollup (stat_name, total_amount, player_count, max_amount, min_amount) " +
+                                 "SELECT stat_name, SUM(amount), COUNT(*), MAX(amount), MIN(amount) FROM " + tableName + " GROUP BY stat_name")) {
+                        clearStmt.executeUpdate();
+                        fillStmt.executeUpdate();
+                    }
+                }
+                connection.commit();
+                rebuildRequired = false;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Stat rollups rebuilt ({} ms)", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)); }
+        } catch (SQLException e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error rebuilding stat rollups: {}", e.getMessage());
+        }
+    }
+
+    /**
+      * Mark the rollups for a rebuild (e.g. after a failed publish).
+      */
+    public static void invalidate() {
+        rebuildRequired = true;
+    }
+
+    /**
+      * Get the number of players of every stat (from the rollup tables).
+      *
+      * @param connection The connection to the database.
+      * @return The number of players by partition.
+      * @throws SQLException If an SQL error occurs.
+      */
+    public static Map<SyncChanges.Partition, Integer> playerCounts(Connection connection) throws SQLException {
+        Map<SyncChanges.Partition, Integer> playerCounts = new HashMap<>();
+        for (int tableIndex = 0; tableIndex < TABLE_NAMES.size(); tableIndex++) {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT stat_name, player_count FROM " + TABLE_NAMES.get(tableIndex) + "_rollup");
+                 ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    playerCounts.put(new SyncChanges.Partition(tableIndex, rs.getString("stat_name")), rs.getInt("player_count"));
+                }
+            }
+        }
+        return playerCounts;
+    }
+
+    /**
+      * Load the stored rollups of the given stats of a table.
+      */
+    private static Map<String, Rollup> loadRows(Connection connection, String tableName, List<String> statNames) throws SQLException {
+        Map<String, Rollup> rows = new HashMap<>();
+
+        for (int from = 0; from < statNames.size(); from += CHUNK_SIZE) {
+            List<String> chunk = statNames.subList(from, Math.min(from + CHUNK_SIZE, statNames.size()));
+            String selectSQL = "SELECT stat_name, total_amount, player_count, max_amount, min_amount FROM " + tableName + "_rollup WHERE stat_name IN (" +
+                    String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+
+            try (PreparedStatement statement = connection.prepareStatement(selectSQL)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    statement.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        rows.put(rs.getString("stat_name"), new Rollup(
+                                rs.getLong("total_amount"),
+                                rs.getInt("player_count"),
+                                rs.getInt("max_amount"),
+                                rs.getInt("min_amount")
+                        ));
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+      * Look up the maximum or minimum amount of a stat (uses the (stat_name, amount) index).
+      */
+    private static int lookupExtreme(Connection connection, String tableName, String statName, String function) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT " + function + "(amount) FROM " + tableName + " WHERE stat_name = ?")) {
+            statement.setString(1, statName);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+}
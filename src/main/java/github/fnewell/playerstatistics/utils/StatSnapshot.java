@@ -0,0 +1,150 @@
+package github.fnewell.playerstatistics.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+  * Compact snapshot of the last synchronized stat values of one player.
+  * Values are kept in an open-addressing hash table (stat table index + stat name -> amount)
+  * backed by primitive arrays, with stat names shared between all snapshots.
+  */
+public class StatSnapshot {
+
+    // Value returned for stats which are not in the snapshot
+    public static final int MISSING = Integer.MIN_VALUE;
+
+    // Shared stat name instances, so snapshots of many players do not hold copies of the same strings
+    private static final ConcurrentHashMap<String, String> CANONICAL_NAMES = new ConcurrentHashMap<>();
+
+    private String[] names;
+    private byte[] tables;
+    private int[] amounts;
+    private int size = 0;
+
+    /**
+      * Create a new snapshot with room for the given number of stats.
+      *
+      * @param expectedSize The expected number of stats.
+      */
+    public StatSnapshot(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2 - 1)) << 1;
+        names = new String[capacity];
+        tables = new byte[capacity];
+        amounts = new int[capacity];
+    }
+
+    /**
+      * Create a snapshot from parsed player statistics.
+      *
+      * @param stats The parsed player statistics.
+      * @return The snapshot.
+      */
+    public static StatSnapshot of(PlayerStatsBuffer stats) {
+        StatSnapshot snapshot = new StatSnapshot(stats.totalSize());
+        for (int tableIndex = 0; tableIndex < DatabaseUtils.TABLE_NAMES.size(); tableIndex++) {
+            for (int i = 0; i < stats.size(tableIndex); i++) {
+                snapshot.put(tableIndex, stats.statName(tableIndex, i), stats.amount(tableIndex, i));
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+      * Get the value of a stat.
+      *
+      * @param tableIndex The index of the stat table.
+      * @param statName The name of the stat.
+      * @return The value or {@link #MISSING} if the stat is not in the snapshot.
+      */
+    public int get(int tableIndex, String statName) {
+        int slot = find(tableIndex, statName);
+        return names[slot] == null ? MISSING : amounts[slot];
+    }
+
+    /**
+      * Set the value of a stat.
+      *
+      * @param tableIndex The index of the stat table.
+      * @param statName The name of the stat.
+      * @param amount The value of the stat.
+      */
+    public void put(int tableIndex, String statName, int amount) {
+        int slot = find(tableIndex, statName);
+        if (names[slot] == null) {
+            names[slot] = CANONICAL_NAMES.computeIfAbsent(statName, name -> name);
+            tables[slot] = (byte) tableIndex;
+            size++;
+        }
+        amounts[slot] = amount;
+
+        if (size * 2 > names.length) {
+            grow();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+      * Get the number of slots (some of them are empty), to be used with the slot accessors.
+      *
+      * @return The number of slots.
+      */
+    public int capacity() {
+        return names.length;
+    }
+
+    public boolean isUsed(int slot) {
+        return names[slot] != null;
+    }
+
+    public int tableIndexAt(int slot) {
+        return tables[slot];
+    }
+
+    public String statNameAt(int slot) {
+        return names[slot];
+    }
+
+    public int amountAt(int slot) {
+        return amounts[slot];
+    }
+
+    /**
+      * Find the slot of a stat (linear probing).
+      *
+      * @return The slot of the stat or the empty slot where it would be inserted.
+      */
+    private int find(int tableIndex, String statName) {
+        int mask = names.length - 1;
+        int slot = (statName.hashCode() * 31 + tableIndex) * 0x9E3779B9 >>> 7 & mask;
+        while (names[slot] != null) {
+            if (tables[slot] == tableIndex && (names[slot] == statName || names[slot].equals(statName))) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+      * Double the capacity of the hash table.
+      */
+    private void grow() {
+        String[] oldNames = names;
+        byte[] oldTables = tables;
+        int[] oldAmounts = amounts;
+
+        names = new String[oldNames.length * 2];
+        tables = new byte[oldNames.length * 2];
+        amounts = new int[oldNames.length * 2];
+        size = 0;
+
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] != null) {
+                put(oldTables[i], oldNames[i], oldAmounts[i]);
+            }
+        }
+    }
+}
@@ -16,11 +16,15 @@ public class StatSyncScheduler {
     private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
 
     /**
-      * Starts the scheduled sync task with the interval specified in the config and delays the first run by 1 minute
+      * Starts the scheduled sync task with the interval specified in the config and delays the first run by 1 minute.
+      * Also starts the stats folder watcher, the scheduled full sync is the safety net for changes it missed.
       */
     public static void startScheduledSync() {
         if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Starting scheduled synchronization ..."); }
 
+        // Start the incremental sync of changed stats files (if enabled)
+        StatsFolderWatcher.startWatching();
+
         int intervalMinutes = ConfigUtils.config.getInt("sync-interval");   // Get the interval from the config
 
         // If the interval is less than or equal to 0, disable the scheduled sync
@@ -53,6 +57,8 @@ public class StatSyncScheduler {
     public static void stopScheduledSync() {
         if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Stopping scheduled synchronization ..."); }
 
+        StatsFolderWatcher.stopWatching();
+
         if (!isScheduled) {
             if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Scheduled synchronization is not running."); }
             return;
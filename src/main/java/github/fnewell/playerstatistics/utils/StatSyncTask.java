@@ -1,17 +1,17 @@
 package github.fnewell.playerstatistics.utils;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import github.fnewell.playerstatistics.PlayerStatistics;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.sql.*;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static github.fnewell.playerstatistics.utils.DatabaseUtils.*;
 
@@ -23,13 +23,22 @@ public class StatSyncTask {
     // Variables to store synchronization status
     public static String status = "Idle";       // Actual status of the synchronization
     public static String lastSync = "Never";    // Last synchronization time
-    public static int progressFrom = 0;         // Number of already done tasks
+    public static final AtomicInteger progressFrom = new AtomicInteger();   // Number of already done tasks (incremented by concurrent tasks)
     public static int progressTo = 0;           // Total number of tasks
     public static int playersToUpdate = 0;      // Number of players to update (if zero, no update is needed)
+    public static String lastPipelineStats = "None";    // Throughput of the sync pipeline stages of the last sync
+
+    // Full scans and incremental syncs never run at the same time
+    private static final ReentrantLock SYNC_LOCK = new ReentrantLock();
+
+    // Player identities are kept between syncs (reloaded by every full scan)
+    private static PlayerIdentityMap identities = null;
+    private static boolean databaseInitialized = false;
 
     /**
       * Synchronize all player statistics with the database.
       * This method is called periodically by the scheduler or manually by a command.
+      * The whole stats folder is scanned, so it also catches changes missed by the stats folder watcher.
       *
       * @return True if the synchronization was successful, false otherwise.
       */
@@ -60,18 +69,14 @@ public class StatSyncTask {
         if (PlayerStatistics.DEBUG) { return false; }
         //////////  DEBUG*/
 
+        SYNC_LOCK.lock();
         try {
             try (Connection connection = getDatabaseConnection()) {
                 if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Database connection established."); }
                 status = "Initializing";
 
                 // Database initialization
-                String DbType = ConfigUtils.config.getString("database.type");
-                if ("LOCAL".equals(DatabaseUtils.DB_LOCATION)) {
-                    DbType = "SQLITE";
-                }
-                DatabaseInitializer.initializeDatabase(connection, DbType);
-                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Database initialized."); }
+                initializeDatabase(connection);
 
                 // Check if the stats folder exists
                 //Path statsDir = Path.of("world/stats");
@@ -90,16 +95,16 @@ public class StatSyncTask {
                 }
                 if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Last global sync time: {}", lastGlobalSyncTime); }
 
-                // Prefetching all 'lastModified' values
-                Map<UUID, Timestamp> fileTimestamps = new HashMap<>();
+                // Prefetching size and 'lastModified' of all stats files
+                Map<UUID, SyncManifest.Entry> fileStates = new HashMap<>();
                 Map<UUID, Path> playerFiles = new HashMap<>();
                 try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(statsDir, "*.json")) {
                     for (Path statsFile : directoryStream) {
                         UUID playerUUID = extractUUIDFromFile(statsFile);
                         if (playerUUID != null) {
-                            Timestamp lastModified = new Timestamp(Files.getLastModifiedTime(statsFile).toMillis());
-                            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("... Player UUID: {} / Last modified: {}", playerUUID, lastModified); }
-                            fileTimestamps.put(playerUUID, lastModified);
+                            BasicFileAttributes attributes = Files.readAttributes(statsFile, BasicFileAttributes.class);
+                            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("... Player UUID: {} / Last modified: {}", playerUUID, attributes.lastModifiedTime()); }
+                            fileStates.put(playerUUID, new SyncManifest.Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), 0));
                             playerFiles.put(playerUUID, statsFile);
                         }
                     }
@@ -110,147 +115,416 @@ public class StatSyncTask {
                     return false;
                 }
 
-                // Set total players
-                progressTo = fileTimestamps.size();
+                // A full scan reloads the player identities, so players changed outside the mod are picked up
+                identities = PlayerIdentityMap.load(connection);
 
-                // Set syncing status
-                status = "Syncing data";
+                return syncPlayerFiles(connection, fileStates, playerFiles, SyncManifest.load(connection), true);
+            }
+        } catch (Exception e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error while synchronizing player stats: {}", e.getMessage());
 
-                // Parallel synchronization of player statistics
-                // Get players last online time
-                Map<String, Timestamp> dbPlayers = fetchPlayerDataFromDatabase(connection);
-
-                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Syncing player stats ..."); }
-
-                try (ExecutorService executor = Executors.newFixedThreadPool(ConfigUtils.config.getInt("sync-thread-count"))) {
-                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Executor created."); }
-                    PlayerStatistics.executors.add(executor);   // Add the executor to the list of executors for cleanup
-
-                    fileTimestamps.forEach((playerUUID, lastModified) -> {
-                        Timestamp playerLastOnline = dbPlayers.get(playerUUID.toString());
-
-                        if (playerLastOnline == null || lastModified.after(dbPlayers.get(playerUUID.toString()))) {
-                            playersToUpdate++;
-
-                            executor.submit(() -> {
-                                try {
-                                    JsonNode rootNode = MAPPER.readTree(playerFiles.get(playerUUID).toFile());
-                                    JsonNode stats = rootNode.get("stats");
-
-                                    if (stats != null) {
-                                        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("/Syncing player stats for UUID: {} (executor: {})", playerUUID, Thread.currentThread().threadId()); }
-                                        syncPlayerStats(connection, playerUUID, lastModified, stats);
-                                        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("\\Player stats synced for UUID: {} (executor: {})", playerUUID, Thread.currentThread().threadId()); }
-                                    }
-                                } catch (Exception e) {
-                                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
-                                    PlayerStatistics.LOGGER.error("Error while syncing player stats: {}", e.getMessage());
-                                }
-                            });
-                        }
-                    });
+            identities = null;  // Reload the identities next time, they could be out of sync with the database
+            playersToUpdate = 0;
+            status = "Idle";
+            return false;
+        } finally {
+            SYNC_LOCK.unlock();
+        }
+    }
 
-                    executor.shutdown();
-                    if (!executor.awaitTermination(3, TimeUnit.MINUTES)) {
-                        executor.shutdownNow();
+    /**
+      * Synchronize the statistics of the given players with the database (incremental sync).
+      * Only the stats files of these players are read, the rest of the stats folder is not scanned.
+      * This method is called by the stats folder watcher shortly after the files were written.
+      *
+      * @param players The UUIDs of the players whose stats files changed.
+      * @return True if the synchronization was successful, false if it failed or another synchronization is running.
+      */
+    public static boolean syncPlayers(Collection<UUID> players) {
+        if (!SYNC_LOCK.tryLock()) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Another synchronization is running, incremental sync postponed."); }
+            return false;
+        }
+
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Synchronizing stats of {} players ...", players.size()); }
+
+        try {
+            try (Connection connection = getDatabaseConnection()) {
+                status = "Initializing";
+
+                if (!databaseInitialized) {
+                    initializeDatabase(connection);
+                }
+
+                Path statsDir = Path.of(ConfigUtils.config.getString("stats-folder"));
+                Map<UUID, SyncManifest.Entry> fileStates = new HashMap<>();
+                Map<UUID, Path> playerFiles = new HashMap<>();
+                for (UUID playerUUID : players) {
+                    Path statsFile = statsDir.resolve(playerUUID + ".json");
+                    try {
+                        BasicFileAttributes attributes = Files.readAttributes(statsFile, BasicFileAttributes.class);
+                        fileStates.put(playerUUID, new SyncManifest.Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), 0));
+                        playerFiles.put(playerUUID, statsFile);
+                    } catch (NoSuchFileException ignored) {
+                        // The file was removed (or renamed) after the event, nothing to sync
                     }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
-                    PlayerStatistics.LOGGER.error("Executor interrupted: {}", e.getMessage());
+                }
 
-                    status = "Idle";
-                    return false;
+                if (identities == null) {
+                    identities = PlayerIdentityMap.load(connection);
                 }
 
+                return syncPlayerFiles(connection, fileStates, playerFiles, SyncManifest.load(connection, fileStates.keySet()), false);
+            }
+        } catch (Exception e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error while synchronizing player stats: {}", e.getMessage());
 
-                // Reset synced counters
-                progressTo = 0;
-                progressFrom = 0;
+            identities = null;  // Reload the identities next time, they could be out of sync with the database
+            playersToUpdate = 0;
+            status = "Idle";
+            return false;
+        } finally {
+            SYNC_LOCK.unlock();
+        }
+    }
 
-                // Fetch and update missing player nicks
-                if (playersToUpdate > 0) {
-                    status = "Fetching nicks";
-                    fetchAndUpdateMissingPlayerNicks(connection);
-                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Player nicks fetched.");}
+    /**
+      * Check if a synchronization (full or incremental) is running.
+      *
+      * @return True if a synchronization is running.
+      */
+    public static boolean isSyncRunning() {
+        return SYNC_LOCK.isLocked();
+    }
 
-                    // Reset fetched counters
-                    progressTo = 0;
-                    progressFrom = 0;
-                }
+    /**
+      * Initialize the database tables (only once per server run for incremental syncs) and seed the leaderboard index.
+      *
+      * @param connection The connection to the database.
+      */
+    private static void initializeDatabase(Connection connection) {
+        String DbType = ConfigUtils.config.getString("database.type");
+        if ("LOCAL".equals(DatabaseUtils.DB_LOCATION)) {
+            DbType = "SQLITE";
+        }
+        DatabaseInitializer.initializeDatabase(connection, DbType);
+        databaseInitialized = true;
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Database initialized."); }
+
+        // Load the leaderboards into memory (only once per server run)
+        LeaderboardIndex.seed(connection);
+        RankIndex.seed(connection);
+        GainsLeaderboards.seed(connection);
+    }
 
-                // Update the positions of the players in the database
-                if (playersToUpdate > 0) {
-                    status = "Updating positions";
-                    DatabaseUtils.updatePositionsForTable(connection);
-                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Player positions updated."); }
+    /**
+      * Synchronize the given stats files with the database.
+      * Shared by the full scan and the incremental sync: files unchanged by the sync manifest are skipped,
+      * the changed ones are written by the sync workers, then nicks, positions, Hall of Fame and metadata are updated.
+      * Must be called with the sync lock held.
+      *
+      * @param connection The connection to the database.
+      * @param fileStates The size and last modified time of the stats files.
+      * @param playerFiles The stats files of the players.
+      * @param manifest The sync manifest entries of (at least) these players.
+      * @param fullScan True for a full scan of the stats folder, false for an incremental sync.
+      * @return True if the synchronization was successful, false otherwise.
+      * @throws Exception If an error occurs.
+      */
+    private static boolean syncPlayerFiles(Connection connection, Map<UUID, SyncManifest.Entry> fileStates, Map<UUID, Path> playerFiles, Map<UUID, SyncManifest.Entry> manifest, boolean fullScan) throws Exception {
+        // Set syncing status
+        status = "Syncing data";
+
+        // Collect the players whose stats file changed since the last sync (by the sync manifest)
+        Map<UUID, SyncManifest.Entry> touchedFiles = new HashMap<>();
+        List<UUID> changedPlayers = new ArrayList<>();
+        fileStates.forEach((playerUUID, fileState) -> {
+            SyncManifest.Entry synced = manifest.get(playerUUID);
+            SyncManifest.Entry unchanged = SyncManifest.checkUnchanged(playerFiles.get(playerUUID), fileState, synced);
+
+            if (unchanged == null) {
+                changedPlayers.add(playerUUID);
+            } else if (unchanged != synced) {
+                touchedFiles.put(playerUUID, unchanged);
+            }
+        });
+        playersToUpdate = changedPlayers.size();
 
-                    progressTo = 0;
-                    progressFrom = 0;
-                }
+        // Remember the new modified time of files which were rewritten without changes
+        SyncManifest.touch(connection, touchedFiles);
 
-                // Populate Hall of Fame table with the top players
-                if (playersToUpdate > 0) {
-                    status = "Populating Hall of Fame";
-                    DatabaseUtils.populateHallOfFame(connection);
-                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Hall of Fame populated."); }
-                }
+        // Resolve the IDs of all changed players in bulk (insert new players, update last online times)
+        Map<UUID, Long> changedLastOnline = new HashMap<>();
+        for (UUID playerUUID : changedPlayers) {
+            changedLastOnline.put(playerUUID, fileStates.get(playerUUID).lastModified());
+        }
+        Map<Integer, UUID> newPlayers = resolvePlayers(connection, changedLastOnline);
 
-                // Get server name, description, url and server icon
-                // Server name and url from config file
-                // Server description from server.properties
-                // Server icon from server-icon.png
-                String serverName = ConfigUtils.config.getString("web-server.server-name");
-                String serverDesc = null;
-                String serverUrl = ConfigUtils.config.getString("web-server.server-url");
-                byte[] serverIcon = null;
-
-                // Try to read server description from server.properties
-                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Reading server properties ..."); }
-                File serverPropertiesFile = new File("server.properties");
-                if (serverPropertiesFile.exists()) {
-                    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(serverPropertiesFile), StandardCharsets.UTF_8))) {
-                        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Server properties file found."); }
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            if (line.startsWith("motd=")) {
-                                serverDesc = line.substring(5);
-                                break;
-                            }
-                        }
-                    } catch (IOException e) {
-                        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
-                        PlayerStatistics.LOGGER.error("Error while reading server.properties: {}", e.getMessage());
+        // Set total players
+        progressTo = changedPlayers.size();
 
-                        status = "Idle";
-                        return false;
-                    }
-                }
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Syncing player stats ({} changed, {} touched, {} files) ...", changedPlayers.size(), touchedFiles.size(), fileStates.size()); }
+
+        SyncChanges changes = new SyncChanges();
+        try {
+            // Read, parse and write stages run concurrently, connected by bounded queues
+            SyncPipeline pipeline = new SyncPipeline(changedPlayers, playerFiles, fileStates, identities, changes);
+            pipeline.run(3, TimeUnit.MINUTES);
+            lastPipelineStats = pipeline.summary();
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Sync pipeline: {}", lastPipelineStats); }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Executor interrupted: {}", e.getMessage());
 
-                // Try to read server icon from server-icon.png
-                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Reading server icon ..."); }
-                Path serverIconPath = Path.of("server-icon.png");
-                if (Files.exists(serverIconPath)) {
-                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Server icon found."); }
-                    serverIcon = Files.readAllBytes(serverIconPath);
+            status = "Idle";
+            return false;
+        }
+
+
+        return finishSync(connection, changes, newPlayers, fullScan);
+    }
+
+    /**
+      * Synchronize the stats captured in memory from the server (see {@link StatCapture}) with the database.
+      * The stats are written through the same batch writer as parsed stats files, without any file I/O.
+      * Waits for a running synchronization to finish.
+      *
+      * @param captured A map containing player UUIDs as keys and their captured stats as values.
+      * @param nicks A map containing player UUIDs as keys and their nicknames (from their game profiles) as values.
+      * @return True if the synchronization was successful, false otherwise.
+      */
+    public static boolean syncCapturedStats(Map<UUID, PlayerStatsBuffer> captured, Map<UUID, String> nicks) {
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Synchronizing captured stats of {} players ...", captured.size()); }
+
+        SYNC_LOCK.lock();
+        try {
+            try (Connection connection = getDatabaseConnection()) {
+                status = "Initializing";
+
+                if (!databaseInitialized) {
+                    initializeDatabase(connection);
+                }
+                if (identities == null) {
+                    identities = PlayerIdentityMap.load(connection);
                 }
 
-                // Update Sync Metadata
-                updateSyncMetadata(connection, serverName, serverDesc, serverUrl, serverIcon);
-                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Sync metadata updated."); }
+                status = "Syncing data";
+                playersToUpdate = captured.size();
 
-                playersToUpdate = 0;
-                status = "Idle";
-                return true;
+                // Captured players are online right now
+                long now = System.currentTimeMillis();
+                Map<UUID, Long> capturedLastOnline = new HashMap<>();
+                for (UUID playerUUID : captured.keySet()) {
+                    capturedLastOnline.put(playerUUID, now);
+                }
+                Map<Integer, UUID> newPlayers = resolvePlayers(connection, capturedLastOnline);
+                progressTo = captured.size();
+
+                // Captured players are online, so their nicks are known without any API lookup
+                Map<Integer, String> capturedNicks = new HashMap<>();
+                nicks.forEach((playerUUID, nick) -> {
+                    if (captured.containsKey(playerUUID)) {
+                        capturedNicks.put(identities.getId(playerUUID), nick);
+                    }
+                });
+                updatePlayerNicks(connection, capturedNicks);
+                newPlayers.keySet().removeAll(capturedNicks.keySet());
+
+                SyncChanges changes = new SyncChanges();
+                try (StatBatchWriter writer = new StatBatchWriter(connection, DatabaseUtils.DB_TYPE, ConfigUtils.config.getInt("sync-batch-size"), changes)) {
+                    for (Map.Entry<UUID, PlayerStatsBuffer> entry : captured.entrySet()) {
+                        syncPlayerStats(writer, identities.getId(entry.getKey()), entry.getValue());
+                    }
+                }
+
+                return finishSync(connection, changes, newPlayers, false);
             }
         } catch (Exception e) {
             if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
-            PlayerStatistics.LOGGER.error("Error while synchronizing player stats: {}", e.getMessage());
+            PlayerStatistics.LOGGER.error("Error while synchronizing captured player stats: {}", e.getMessage());
 
+            identities = null;  // Reload the identities next time, they could be out of sync with the database
             playersToUpdate = 0;
             status = "Idle";
             return false;
+        } finally {
+            SYNC_LOCK.unlock();
+        }
+    }
+
+    /**
+      * Resolve the IDs of the given players in bulk and prepare their last synced stats.
+      *
+      * @param connection The connection to the database.
+      * @param lastOnline A map containing player UUIDs as keys and their last online times (in milliseconds) as values.
+      * @return The players inserted into the database (player ID -> UUID), their nicks are not known yet.
+      * @throws SQLException If an SQL error occurs.
+      */
+    private static Map<Integer, UUID> resolvePlayers(Connection connection, Map<UUID, Long> lastOnline) throws SQLException {
+        Set<Integer> insertedIds = new HashSet<>(identities.resolve(connection, lastOnline));
+
+        // Prepare the last synced stats of the players (new players have none)
+        for (Integer playerId : insertedIds) {
+            StatValueCache.put(playerId, new StatSnapshot(8));
+        }
+        List<Integer> playerIds = new ArrayList<>();
+        Map<Integer, UUID> newPlayers = new HashMap<>();
+        for (UUID playerUUID : lastOnline.keySet()) {
+            int playerId = identities.getId(playerUUID);
+            playerIds.add(playerId);
+            if (insertedIds.contains(playerId)) {
+                newPlayers.put(playerId, playerUUID);
+            }
+        }
+        StatValueCache.preload(connection, playerIds);
+        return newPlayers;
+    }
+
+    /**
+      * Finish a synchronization: fetch missing nicks, update positions and Hall of Fame (if some stat rows were written)
+      * and the sync metadata.
+      * Only full scans look up all missing nicks and re-read the server details, incremental syncs (watcher, stat capture)
+      * run after every autosave and logout, so they only look up the nicks of the players they inserted.
+      *
+      * @param connection The connection to the database.
+      * @param changes The changes committed by the synchronization.
+      * @param newPlayers The players inserted by this synchronization whose nicks are not known (player ID -> UUID).
+      * @param fullScan True for a full scan of the stats folder, false for an incremental sync.
+      * @return True if the synchronization was successful, false otherwise.
+      * @throws Exception If an error occurs.
+      */
+    private static boolean finishSync(Connection connection, SyncChanges changes, Map<Integer, UUID> newPlayers, boolean fullScan) throws Exception {
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Stat rows synced: {}", changes.summary()); }
+
+        // Reset synced counters
+        progressTo = 0;
+        progressFrom.set(0);
+
+        // Fetch and update missing player nicks
+        if (fullScan && playersToUpdate > 0) {
+            status = "Fetching nicks";
+            fetchAndUpdateMissingPlayerNicks(connection);
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Player nicks fetched.");}
+
+            // Reset fetched counters
+            progressTo = 0;
+            progressFrom.set(0);
+        } else if (!newPlayers.isEmpty()) {
+            status = "Fetching nicks";
+            fetchAndUpdatePlayerNicks(newPlayers);
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Player nicks fetched.");}
+
+            // Reset fetched counters
+            progressTo = 0;
+            progressFrom.set(0);
+        }
+
+        // Publish the positions, Hall of Fame and rollups of the written stat rows (and retry partitions and gains which failed before)
+        if (changes.writtenRows() > 0 || LeaderboardIndex.hasRetries() || StatHistory.hasRetries()) {
+            status = "Updating positions";
+            DatabaseUtils.publishChanges(connection, changes);
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Player positions updated."); }
+
+            // Merge the committed stat rows into the rank index, so rank lookups do not have to
+            RankIndex.merge();
+
+            progressTo = 0;
+            progressFrom.set(0);
+        }
+
+        // Rebuild the stat rollups if they may not match the stat tables (before the Hall of Fame, normalized scores use their player counts)
+        if (StatRollups.isRebuildRequired()) {
+            status = "Rebuilding rollups";
+            StatRollups.rebuild(connection);
+        }
+
+        // Rebuild the Hall of Fame if it may not match the positions (the changed rows are published with the positions)
+        if (HallOfFame.isRebuildRequired()) {
+            status = "Rebuilding Hall of Fame";
+            HallOfFame.rebuild(connection);
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Hall of Fame rebuilt."); }
+        }
+
+        // Publish the gains leaderboards changed by buckets leaving their windows
+        GainsLeaderboards.publishExpired(connection);
+
+        // Merge old stat history buckets (at most once per hour)
+        StatHistory.compact(connection);
+
+        if (fullScan) {
+            if (!updateServerMetadata(connection)) {
+                status = "Idle";
+                return false;
+            }
+        } else {
+            updateSyncTime(connection);
         }
+
+        // Write a consistent snapshot of the local database for the webpage
+        status = "Creating snapshot";
+        SnapshotManager.create(connection);
+
+        // Close connections which were idle for too long
+        getConnectionPool().evictIdle();
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Connection pool: {}", getConnectionPool().stats()); }
+
+        playersToUpdate = 0;
+        status = "Idle";
+        return true;
+    }
+
+    /**
+      * Read the server name, description, url and icon and update the sync metadata (full scans only).
+      *
+      * @param connection The connection to the database.
+      * @return True if the sync metadata was updated, false if server.properties could not be read.
+      * @throws IOException If the server icon can not be read.
+      */
+    private static boolean updateServerMetadata(Connection connection) throws IOException {
+        // Get server name, description, url and server icon
+        // Server name and url from config file
+        // Server description from server.properties
+        // Server icon from server-icon.png
+        String serverName = ConfigUtils.config.getString("web-server.server-name");
+        String serverDesc = null;
+        String serverUrl = ConfigUtils.config.getString("web-server.server-url");
+        byte[] serverIcon = null;
+
+        // Try to read server description from server.properties
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Reading server properties ..."); }
+        File serverPropertiesFile = new File("server.properties");
+        if (serverPropertiesFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(serverPropertiesFile), StandardCharsets.UTF_8))) {
+                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Server properties file found."); }
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("motd=")) {
+                        serverDesc = line.substring(5);
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+                PlayerStatistics.LOGGER.error("Error while reading server.properties: {}", e.getMessage());
+                return false;
+            }
+        }
+
+        // Try to read server icon from server-icon.png
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Reading server icon ..."); }
+        Path serverIconPath = Path.of("server-icon.png");
+        if (Files.exists(serverIconPath)) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Server icon found."); }
+            serverIcon = Files.readAllBytes(serverIconPath);
+        }
+
+        // Update Sync Metadata
+        updateSyncMetadata(connection, serverName, serverDesc, serverUrl, serverIcon);
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Sync metadata updated."); }
+        return true;
     }
 
     /**
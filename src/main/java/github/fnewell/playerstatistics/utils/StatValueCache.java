@@ -0,0 +1,184 @@
+package github.fnewell.playerstatistics.utils;
+
+import github.fnewell.playerstatistics.PlayerStatistics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+  * Cache of the last synchronized stat values of each player (player ID -> snapshot).
+  * It is used to write only the stats which were inserted, changed or removed since the last sync.
+  * The cache is bounded (least recently synced players are dropped), missing players are loaded from the database.
+  */
+public class StatValueCache {
+
+    // Number of players loaded by one preload query
+    private static final int PRELOAD_CHUNK_SIZE = 500;
+
+    private static final Map<Integer, StatSnapshot> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, StatSnapshot> eldest) {
+            return size() > ConfigUtils.config.getInt("sync-delta-cache-size");
+        }
+    };
+
+    /**
+      * Get the last synchronized stats of a player, load them from the database if they are not cached.
+      *
+      * @param connection The connection to the database.
+      * @param playerId The ID of the player.
+      * @return The snapshot of the last synchronized stats.
+      * @throws SQLException If an SQL error occurs.
+      */
+    public static StatSnapshot get(Connection connection, int playerId) throws SQLException {
+        StatSnapshot snapshot;
+        synchronized (CACHE) {
+            snapshot = CACHE.get(playerId);
+        }
+        if (snapshot == null) {
+            snapshot = load(connection, playerId);
+        }
+        return snapshot;
+    }
+
+    /**
+      * Get the last synchronized stats of a player if they are cached.
+      *
+      * @param playerId The ID of the player.
+      * @return The snapshot of the last synchronized stats, or null if the player is not cached.
+      */
+    public static StatSnapshot getCached(int playerId) {
+        synchronized (CACHE) {
+            return CACHE.get(playerId);
+        }
+    }
+
+    /**
+      * Store the stats of a player after they were committed to the database.
+      *
+      * @param playerId The ID of the player.
+      * @param snapshot The committed stats.
+      */
+    public static void put(int playerId, StatSnapshot snapshot) {
+        synchronized (CACHE) {
+            CACHE.put(playerId, snapshot);
+        }
+    }
+
+    /**
+      * Drop the cached stats of a player (e.g. when writing the player's stats failed).
+      *
+      * @param playerId The ID of the player.
+      */
+    public static void invalidate(int playerId) {
+        synchronized (CACHE) {
+            CACHE.remove(playerId);
+        }
+    }
+
+    /**
+      * Drop all cached stats.
+      */
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /**
+      * Load the stored stats of many players into the cache in bulk (one query per stat table and chunk of players).
+      * Players which are already cached are skipped, at most as many players as the cache can hold are loaded.
+      *
+      * @param connection The connection to the database.
+      * @param playerIds The IDs of the players.
+      * @throws SQLException If an SQL error occurs.
+      */
+    public static void preload(Connection connection, List<Integer> playerIds) throws SQLException {
+        List<Integer> missing = new ArrayList<>();
+        int limit = ConfigUtils.config.getInt("sync-delta-cache-size");
+        synchronized (CACHE) {
+            for (Integer playerId : playerIds) {
+                if (missing.size() >= limit) {
+                    break;
+                }
+                if (!CACHE.containsKey(playerId)) {
+                    missing.add(playerId);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Preloading stored stats of {} players ...", missing.size()); }
+
+        for (int from = 0; from < missing.size(); from += PRELOAD_CHUNK_SIZE) {
+            List<Integer> chunk = missing.subList(from, Math.min(from + PRELOAD_CHUNK_SIZE, missing.size()));
+            Map<Integer, StatSnapshot> snapshots = new HashMap<>();
+            for (Integer playerId : chunk) {
+                snapshots.put(playerId, new StatSnapshot(64));
+            }
+
+            String inList = "?, ".repeat(chunk.size() - 1) + "?";
+            for (int tableIndex = 0; tableIndex < DatabaseUtils.TABLE_NAMES.size(); tableIndex++) {
+                String sql = "SELECT player_id, stat_name, amount FROM " + DatabaseUtils.TABLE_NAMES.get(tableIndex) + " WHERE player_id IN (" + inList + ")";
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        statement.setInt(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            snapshots.get(rs.getInt("player_id")).put(tableIndex, rs.getString("stat_name"), rs.getInt("amount"));
+                        }
+                    }
+                }
+            }
+
+            synchronized (CACHE) {
+                CACHE.putAll(snapshots);
+            }
+        }
+    }
+
+    /**
+      * Load the stats of a player from all stat tables in one query.
+      *
+      * @param connection The connection to the database.
+      * @param playerId The ID of the player.
+      * @return The snapshot of the stored stats.
+      * @throws SQLException If an SQL error occurs.
+      */
+    private static StatSnapshot load(Connection connection, int playerId) throws SQLException {
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Loading stored stats for player ID: {}", playerId); }
+
+        StringBuilder sql = new StringBuilder();
+        for (int tableIndex = 0; tableIndex < DatabaseUtils.TABLE_NAMES.size(); tableIndex++) {
+            if (!sql.isEmpty()) {
+                sql.append(" UNION ALL ");
+            }
+            sql.append("SELECT ").append(tableIndex).append(" AS table_index, stat_name, amount FROM ")
+                    .append(DatabaseUtils.TABLE_NAMES.get(tableIndex)).append(" WHERE player_id = ?");
+        }
+
+        StatSnapshot snapshot = new StatSnapshot(64);
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            for (int i = 1; i <= DatabaseUtils.TABLE_NAMES.size(); i++) {
+                statement.setInt(i, playerId);
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    snapshot.put(rs.getInt("table_index"), rs.getString("stat_name"), rs.getInt("amount"));
+                }
+            }
+        }
+        return snapshot;
+    }
+}
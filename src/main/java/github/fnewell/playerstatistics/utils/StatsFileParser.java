@@ -0,0 +1,136 @@
+package github.fnewell.playerstatistics.utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import github.fnewell.playerstatistics.PlayerStatistics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+  * Streaming parser for player statistics files ('world/stats/<uuid>.json').
+  * The file is read into a reusable (pooled) byte buffer and walked token by token,
+  * so no JSON tree is built and the stats are written straight into a {@link PlayerStatsBuffer}.
+  */
+public class StatsFileParser {
+
+    private static final String PREFIX = "minecraft:";
+
+    // Stat names without the 'minecraft:' prefix, shared by all parse workers.
+    // Jackson canonicalizes field names, so the keys are shared instances and lookups do not allocate.
+    private static final Map<String, String> NAME_CACHE = new ConcurrentHashMap<>();
+
+    /**
+      * Parse player statistics from a byte array into the given buffer.
+      *
+      * @param content The JSON content.
+      * @param length The number of valid bytes in the array.
+      * @param buffer The buffer to fill (it is not cleared by this method).
+      * @return True if the content contains a 'stats' object, false otherwise.
+      * @throws IOException If the content is not valid JSON.
+      */
+    public static boolean parse(byte[] content, int length, PlayerStatsBuffer buffer) throws IOException {
+        boolean statsFound = false;
+
+        try (JsonParser parser = StatSyncTask.MAPPER.getFactory().createParser(content, 0, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Stats file is not a JSON object");
+            }
+
+            // Root object: { "stats": { ... }, "DataVersion": ... }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+
+                if ("stats".equals(field) && value == JsonToken.START_OBJECT) {
+                    statsFound = true;
+                    parseStats(parser, buffer);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        return statsFound;
+    }
+
+    /**
+      * Parse the 'stats' object: { "minecraft:<type>": { "minecraft:<stat>": <amount>, ... }, ... }
+      */
+    private static void parseStats(JsonParser parser, PlayerStatsBuffer buffer) throws IOException {
+        Map<String, String> nameCache = NAME_CACHE;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String statType = stripPrefix(parser.currentName(), nameCache);
+            JsonToken value = parser.nextToken();
+            int tableIndex = PlayerStatsBuffer.tableIndex(statType);
+
+            if (value != JsonToken.START_OBJECT || tableIndex < 0) {
+                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Skipping unsupported stat type: {}", statType); }
+                parser.skipChildren();
+                continue;
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String statName = stripPrefix(parser.currentName(), nameCache);
+                if (parser.nextToken().isNumeric()) {
+                    buffer.add(tableIndex, statName, parser.getValueAsInt());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    /**
+      * Remove the 'minecraft:' prefix from a name, caching the result.
+      */
+    private static String stripPrefix(String name, Map<String, String> nameCache) {
+        String stripped = nameCache.get(name);
+        if (stripped == null) {
+            stripped = name.startsWith(PREFIX) ? name.substring(PREFIX.length()) : name;
+            nameCache.put(name, stripped);
+        }
+        return stripped;
+    }
+
+    /**
+      * Read the whole file into the reusable buffer, growing it when needed.
+      *
+      * @param file The file to read.
+      * @param holder Holder of the reusable buffer (the buffer is replaced if it is too small).
+      * @return The number of bytes read.
+      * @throws IOException If the file cannot be read.
+      */
+    static int read(Path file, byte[][] holder) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("Stats file is too large: " + file);
+            }
+            if (holder[0].length < size) {
+                holder[0] = new byte[(int) Math.max(size, holder[0].length * 2L)];
+            }
+
+            ByteBuffer target = ByteBuffer.wrap(holder[0]);
+            while (true) {
+                // Grow the buffer if the file grew while reading
+                if (!target.hasRemaining()) {
+                    byte[] grown = Arrays.copyOf(holder[0], holder[0].length * 2);
+                    target = ByteBuffer.wrap(grown).position(target.position());
+                    holder[0] = grown;
+                }
+                if (channel.read(target) < 0) {
+                    return target.position();
+                }
+            }
+        }
+    }
+}
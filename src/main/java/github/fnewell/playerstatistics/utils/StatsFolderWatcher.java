@@ -0,0 +1,188 @@
+package github.fnewell.playerstatistics.utils;
+
+import github.fnewell.playerstatistics.PlayerStatistics;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+  * Watches the stats folder and synchronizes changed stats files within seconds (incremental sync).
+  * Modify events are debounced per player: a file is synced once it was quiet for the debounce time,
+  * or at the latest after the max delay, so the bursts of events during world saves are coalesced into one sync.
+  * If the watch service overflows, a full scan is run instead. The periodic full scan stays the safety net.
+  */
+public class StatsFolderWatcher {
+
+    private static WatchService watchService = null;
+    private static Thread watcherThread = null;
+    private static ScheduledExecutorService flusher = null;
+
+    private static long debounceMillis;
+    private static long maxDelayMillis;
+
+    // Pending players (UUID -> {first event time, last event time})
+    private static final Map<UUID, long[]> pending = new ConcurrentHashMap<>();
+    private static volatile boolean fullScanRequested = false;
+
+    /**
+      * Start watching the stats folder if the watcher is enabled in the config.
+      */
+    public static synchronized void startWatching() {
+        if (!ConfigUtils.config.getBoolean("sync-watcher.enabled")) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Stats folder watcher is disabled."); }
+            return;
+        }
+        if (watchService != null) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Stats folder watcher is already running."); }
+            return;
+        }
+
+        debounceMillis = ConfigUtils.config.getInt("sync-watcher.debounce-seconds") * 1000L;
+        maxDelayMillis = ConfigUtils.config.getInt("sync-watcher.max-delay-seconds") * 1000L;
+
+        Path statsDir = Path.of(ConfigUtils.config.getString("stats-folder"));
+        try {
+            // The folder is created by Minecraft on the first save, create it now so it can be watched
+            Files.createDirectories(statsDir);
+            watchService = statsDir.getFileSystem().newWatchService();
+            statsDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error while starting the stats folder watcher: {}", e.getMessage());
+            closeWatchService();
+            return;
+        }
+
+        WatchService service = watchService;
+        watcherThread = new Thread(() -> watch(service), "player-statistics-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "player-statistics-watcher-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(StatsFolderWatcher::flush, 1, 1, TimeUnit.SECONDS);
+
+        PlayerStatistics.LOGGER.info("Watching the stats folder for changes (debounce: {} s, max delay: {} s).", debounceMillis / 1000, maxDelayMillis / 1000);
+    }
+
+    /**
+      * Stop watching the stats folder. Pending players are left to the next full scan.
+      */
+    public static synchronized void stopWatching() {
+        if (watchService == null) {
+            return;
+        }
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Stopping stats folder watcher ..."); }
+
+        flusher.shutdownNow();
+        closeWatchService();
+        watcherThread.interrupt();
+
+        flusher = null;
+        watcherThread = null;
+        pending.clear();
+        fullScanRequested = false;
+    }
+
+    /**
+      * Watch loop: records every changed stats file as pending.
+      */
+    private static void watch(WatchService service) {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Stats folder watcher overflowed, full scan requested."); }
+                    fullScanRequested = true;
+                    continue;
+                }
+
+                String fileName = event.context().toString();
+                if (!fileName.endsWith(".json")) {
+                    continue;
+                }
+                try {
+                    UUID playerUUID = UUID.fromString(fileName.substring(0, fileName.length() - 5));   // Remove ".json"
+                    if (StatCapture.isCaptured(playerUUID)) {
+                        StatCapture.onStatsFileWritten(playerUUID);    // Stats of online players are captured directly from the server
+                        continue;
+                    }
+                    pending.compute(playerUUID, (uuid, times) -> times == null ? new long[]{now, now} : new long[]{times[0], now});
+                } catch (IllegalArgumentException ignored) {}
+            }
+
+            if (!key.reset()) {
+                PlayerStatistics.LOGGER.warn("Stats folder is no longer accessible, stats folder watcher stopped.");
+                return;
+            }
+        }
+    }
+
+    /**
+      * Sync the pending players whose files were quiet for the debounce time (or waited for the max delay).
+      */
+    private static void flush() {
+        try {
+            if (StatSyncTask.isSyncRunning()) {
+                return;
+            }
+
+            if (fullScanRequested) {
+                fullScanRequested = false;
+                pending.clear();
+                StatSyncTask.syncAllPlayerStats();
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            List<UUID> due = new ArrayList<>();
+            pending.forEach((playerUUID, times) -> {
+                if (now - times[1] >= debounceMillis || now - times[0] >= maxDelayMillis) {
+                    due.add(playerUUID);
+                }
+            });
+            if (due.isEmpty()) {
+                return;
+            }
+
+            due.removeIf(playerUUID -> pending.remove(playerUUID) == null);
+            if (!StatSyncTask.syncPlayers(due)) {
+                // Keep the players pending (unless they changed again meanwhile) and try again after the debounce time
+                due.forEach(playerUUID -> pending.merge(playerUUID, new long[]{now, now}, (current, retry) -> current));
+            }
+        } catch (Exception e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error while synchronizing changed stats files: {}", e.getMessage());
+        }
+    }
+
+    private static void closeWatchService() {
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (IOException e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+        }
+        watchService = null;
+    }
+}
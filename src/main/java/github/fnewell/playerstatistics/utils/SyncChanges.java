@@ -0,0 +1,189 @@
+package github.fnewell.playerstatistics.utils;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+  * Collects the committed row changes of one synchronization run.
+  * Sync workers report the deltas of every committed chunk here.
+  * The (table, stat) partitions touched by the changes are collected too, so only their leaderboards are updated.
+  * The committed position changes of the leaderboards are collected for the Hall of Fame,
+  * the per-partition sum, count and extremes changes for the stat rollups,
+  * and the gain of every changed (player, stat) row for the stat history.
+  */
+public class SyncChanges {
+
+    /**
+      * One leaderboard partition: a stat of a stat table.
+      *
+      * @param tableIndex The index of the stat table.
+      * @param statName The name of the stat.
+      */
+    public record Partition(int tableIndex, String statName) {}
+
+    /**
+      * A player gained (delta = 1) or lost (delta = -1) a leaderboard position.
+      *
+      * @param playerId The ID of the player.
+      * @param position The position (1 - 5).
+      * @param delta The change of the number of times the player holds this position.
+      */
+    public record PositionChange(int playerId, int position, int delta) {}
+
+    /**
+      * Rollup changes of one partition: sum and count differences and the extremes of the added and removed values.
+      */
+    public static class RollupChange {
+        private long amountDelta = 0;
+        private int countDelta = 0;
+        private int maxAdded = Integer.MIN_VALUE;   // Extremes of the new values
+        private int minAdded = Integer.MAX_VALUE;
+        private int maxRemoved = Integer.MIN_VALUE; // Extremes of the replaced values
+        private int minRemoved = Integer.MAX_VALUE;
+
+        private synchronized void add(StatDelta delta) {
+            amountDelta += delta.difference();
+            if (!delta.isInsert()) {
+                maxRemoved = Math.max(maxRemoved, delta.oldAmount());
+                minRemoved = Math.min(minRemoved, delta.oldAmount());
+                countDelta--;
+            }
+            if (!delta.isRemoval()) {
+                maxAdded = Math.max(maxAdded, delta.newAmount());
+                minAdded = Math.min(minAdded, delta.newAmount());
+                countDelta++;
+            }
+        }
+
+        public long amountDelta() { return amountDelta; }
+        public int countDelta() { return countDelta; }
+        public int maxAdded() { return maxAdded; }
+        public int minAdded() { return minAdded; }
+        public int maxRemoved() { return maxRemoved; }
+        public int minRemoved() { return minRemoved; }
+    }
+
+    /**
+      * One stat row of a player.
+      *
+      * @param playerId The ID of the player.
+      * @param tableIndex The index of the stat table.
+      * @param statName The name of the stat.
+      */
+    public record PlayerStat(int playerId, int tableIndex, String statName) {}
+
+    private final Set<Partition> touchedPartitions = ConcurrentHashMap.newKeySet();
+    private final Queue<PositionChange> positionChanges = new ConcurrentLinkedQueue<>();
+    private final Map<Partition, RollupChange> rollupChanges = new ConcurrentHashMap<>();
+    private final Map<PlayerStat, Long> gains = new ConcurrentHashMap<>();
+
+    private final LongAdder inserted = new LongAdder();
+    private final LongAdder changed = new LongAdder();
+    private final LongAdder removed = new LongAdder();
+    private final LongAdder unchanged = new LongAdder();
+
+    /**
+      * Record a committed row change.
+      *
+      * @param delta The committed change.
+      */
+    public void record(StatDelta delta) {
+        Partition partition = new Partition(delta.tableIndex(), delta.statName());
+        touchedPartitions.add(partition);
+        rollupChanges.computeIfAbsent(partition, key -> new RollupChange()).add(delta);
+
+        // Inserted rows carry the whole value collected before the first sync, not a gain
+        if (!delta.isInsert() && !delta.isRemoval() && delta.difference() != 0) {
+            gains.merge(new PlayerStat(delta.playerId(), delta.tableIndex(), delta.statName()), delta.difference(), Long::sum);
+        }
+        if (delta.isInsert()) {
+            inserted.increment();
+        } else if (delta.isRemoval()) {
+            removed.increment();
+        } else {
+            changed.increment();
+        }
+    }
+
+    /**
+      * Record rows which were skipped because their value did not change.
+      *
+      * @param count The number of unchanged rows.
+      */
+    public void recordUnchanged(int count) {
+        unchanged.add(count);
+    }
+
+    /**
+      * Record a committed leaderboard position change.
+      *
+      * @param change The committed position change.
+      */
+    public void recordPosition(PositionChange change) {
+        positionChanges.add(change);
+    }
+
+    /**
+      * Get the number of written rows (inserted, changed and removed).
+      *
+      * @return The number of written rows.
+      */
+    public long writtenRows() {
+        return inserted.sum() + changed.sum() + removed.sum();
+    }
+
+    /**
+      * Get the partitions touched by the committed changes.
+      *
+      * @return The touched partitions.
+      */
+    public Set<Partition> touchedPartitions() {
+        return touchedPartitions;
+    }
+
+    /**
+      * Get the committed leaderboard position changes.
+      *
+      * @return The position changes.
+      */
+    public Queue<PositionChange> positionChanges() {
+        return positionChanges;
+    }
+
+    /**
+      * Get the rollup changes of the touched partitions.
+      *
+      * @return The rollup changes by partition.
+      */
+    public Map<Partition, RollupChange> rollupChanges() {
+        return rollupChanges;
+    }
+
+    /**
+      * Get the gains of the changed stat rows (new value minus old value).
+      *
+      * @return The gains by player stat.
+      */
+    public Map<PlayerStat, Long> gains() {
+        return gains;
+    }
+
+    /**
+      * Get a short summary of the changes.
+      *
+      * @return The summary as a human-readable string.
+      */
+    public String summary() {
+        return "inserted=" + inserted.sum() +
+                ", changed=" + changed.sum() +
+                ", removed=" + removed.sum() +
+                ", unchanged=" + unchanged.sum() +
+                ", partitions=" + touchedPartitions.size() +
+                ", positions=" + positionChanges.size();
+    }
+}
@@ -0,0 +1,219 @@
+package github.fnewell.playerstatistics.utils;
+
+import github.fnewell.playerstatistics.PlayerStatistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+  * Shared executor for all sync phases (stat workers, nick fetching, position updates, commands).
+  * In VIRTUAL mode every task runs on its own virtual thread, in PLATFORM mode on reusable platform threads.
+  * The concurrency of blocking work is capped by one semaphore per resource (database connections, HTTP calls, file reads),
+  * not by the number of threads. The executor is created on first use and shut down with the mod.
+  * Phases are awaited by the coordinating thread of a sync (scheduler, watcher, capture or command thread), never by a task
+  * of the executor itself. The PLATFORM pool is unbounded for the same reason: a task waiting for tasks of a bounded pool
+  * would deadlock as soon as all its threads wait.
+  */
+public class SyncExecutors {
+
+    /**
+      * Resources whose concurrent use is limited.
+      */
+    public enum Resource { DATABASE, HTTP, FILE }
+
+    /**
+      * Task which can throw a checked exception.
+      */
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    private static ExecutorService executor = null;
+    private static Semaphore databasePermits = null;
+    private static Semaphore httpPermits = null;
+    private static Semaphore filePermits = null;
+
+    /**
+      * Get the shared executor (created on first use).
+      *
+      * @return The shared executor.
+      */
+    public static synchronized ExecutorService executor() {
+        if (executor == null) {
+            initializePermits();
+
+            if ("VIRTUAL".equals(ConfigUtils.config.getString("sync-executor.mode"))) {
+                executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("player-statistics-sync-", 0).factory());
+            } else {
+                // Threads are created on demand and reused (idle ones expire), so tasks of different phases never wait for a free thread
+                AtomicInteger threadNumber = new AtomicInteger();
+                executor = Executors.newCachedThreadPool(runnable -> {
+                    Thread thread = new Thread(runnable, "player-statistics-sync-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Sync executor created (mode: {}, database: {}, http: {}, file: {})", ConfigUtils.config.getString("sync-executor.mode"), concurrency(Resource.DATABASE), concurrency(Resource.HTTP), concurrency(Resource.FILE)); }
+        }
+        return executor;
+    }
+
+    private static void initializePermits() {
+        if (databasePermits != null) {
+            return;
+        }
+        // One pooled connection is kept for the coordinating thread
+        databasePermits = new Semaphore(Math.max(1, ConfigUtils.config.getInt("database.pool-size") - 1), true);
+        httpPermits = new Semaphore(ConfigUtils.config.getInt("sync-executor.http-concurrency"), true);
+        filePermits = new Semaphore(ConfigUtils.config.getInt("sync-executor.file-read-concurrency"), true);
+    }
+
+    /**
+      * Get the maximum number of tasks which can use a resource at the same time.
+      *
+      * @param resource The resource.
+      * @return The concurrency limit of the resource.
+      */
+    public static synchronized int concurrency(Resource resource) {
+        initializePermits();
+        return switch (resource) {
+            case DATABASE -> Math.max(1, ConfigUtils.config.getInt("database.pool-size") - 1);
+            case HTTP -> ConfigUtils.config.getInt("sync-executor.http-concurrency");
+            case FILE -> ConfigUtils.config.getInt("sync-executor.file-read-concurrency");
+        };
+    }
+
+    private static synchronized Semaphore permits(Resource resource) {
+        initializePermits();
+        return switch (resource) {
+            case DATABASE -> databasePermits;
+            case HTTP -> httpPermits;
+            case FILE -> filePermits;
+        };
+    }
+
+    /**
+      * Run a task while holding a permit of a resource (waits for a free permit).
+      *
+      * @param resource The resource used by the task.
+      * @param task The task.
+      * @throws Exception If the task fails or the thread is interrupted while waiting.
+      */
+    public static void withPermit(Resource resource, Task task) throws Exception {
+        Semaphore semaphore = permits(resource);
+        semaphore.acquire();
+        try {
+            task.run();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+      * Start a new phase: a group of tasks submitted to the shared executor and awaited together.
+      *
+      * @param name The name of the phase (used in logs).
+      * @param maxConcurrency The maximum number of tasks of this phase running at the same time.
+      * @return The new phase.
+      */
+    public static Phase phase(String name, int maxConcurrency) {
+        return new Phase(name, maxConcurrency);
+    }
+
+    /**
+      * Group of tasks of one sync phase.
+      * Unlike a per-phase thread pool, waiting for the phase does not shut anything down.
+      */
+    public static class Phase {
+        private final String name;
+        private final Semaphore slots;
+        private final List<Future<?>> futures = new ArrayList<>();
+
+        private Phase(String name, int maxConcurrency) {
+            this.name = name;
+            this.slots = new Semaphore(Math.max(1, maxConcurrency));
+        }
+
+        /**
+          * Submit a task of this phase. Errors of the task are logged.
+          *
+          * @param task The task.
+          */
+        public void submit(Task task) {
+            futures.add(executor().submit(() -> {
+                try {
+                    slots.acquire();
+                    try {
+                        task.run();
+                    } finally {
+                        slots.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+                    PlayerStatistics.LOGGER.error("Error in sync phase '{}': {}", name, e.getMessage());
+                }
+            }));
+        }
+
+        /**
+          * Wait until all tasks of this phase are done. Tasks still running after the timeout are cancelled.
+          *
+          * @param timeout The maximum time to wait.
+          * @param unit The unit of the timeout.
+          * @return True if all tasks finished in time, false otherwise.
+          * @throws InterruptedException If the waiting thread is interrupted.
+          */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            boolean finished = true;
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (ExecutionException ignored) {
+                    // Already logged by the task wrapper
+                } catch (TimeoutException e) {
+                    finished = false;
+                    future.cancel(true);
+                }
+            }
+
+            if (!finished) {
+                PlayerStatistics.LOGGER.warn("Sync phase '{}' did not finish in time, remaining tasks were cancelled.", name);
+            }
+            return finished;
+        }
+    }
+
+    /**
+      * Shut down the shared executor, interrupting running tasks.
+      */
+    public static synchronized void shutdown() {
+        if (executor == null) {
+            return;
+        }
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Shutting down sync executor ..."); }
+
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                PlayerStatistics.LOGGER.warn("Sync executor did not terminate in time.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+}
@@ -0,0 +1,242 @@
+package github.fnewell.playerstatistics.utils;
+
+import github.fnewell.playerstatistics.PlayerStatistics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+
+/**
+  * Persisted manifest of synchronized stats files (table 'sync_manifest').
+  * For every player it stores the size, last modified time and content hash of the last synchronized stats file,
+  * so a file is skipped when its bytes did not change, even if Minecraft rewrote it or its modified time was reset.
+  * The content hash is only computed when size and modified time are inconclusive.
+  */
+public class SyncManifest {
+
+    /**
+      * State of one stats file.
+      *
+      * @param size The size of the file in bytes.
+      * @param lastModified The last modified time of the file (in milliseconds).
+      * @param contentHash The content hash of the file (0 if not computed).
+      */
+    public record Entry(long size, long lastModified, long contentHash) {}
+
+    // Maximum number of parameters in one 'IN (...)' list
+    private static final int IN_CHUNK_SIZE = 500;
+
+    // Reusable read buffer for hashing files on the coordinating thread
+    private static final ThreadLocal<ByteBuffer> THREAD_HASH_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(64 * 1024));
+
+    /**
+      * Load the whole manifest from the database.
+      *
+      * @param connection The connection to the database.
+      * @return A map containing player UUIDs as keys and the manifest entries as values.
+      */
+    public static Map<UUID, Entry> load(Connection connection) {
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Loading sync manifest ..."); }
+
+        Map<UUID, Entry> manifest = new HashMap<>();
+        String sql = "SELECT player_uuid, file_size, file_mtime, content_hash FROM sync_manifest";
+
+        try (PreparedStatement statement = connection.prepareStatement(sql);
+             ResultSet rs = statement.executeQuery()) {
+            readEntries(rs, manifest);
+        } catch (SQLException e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error loading sync manifest: {}", e.getMessage());
+        }
+
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Sync manifest loaded ({} entries)", manifest.size()); }
+        return manifest;
+    }
+
+    /**
+      * Load the manifest entries of the given players only (used by incremental syncs).
+      *
+      * @param connection The connection to the database.
+      * @param players The UUIDs of the players.
+      * @return A map containing player UUIDs as keys and the manifest entries as values.
+      */
+    public static Map<UUID, Entry> load(Connection connection, Collection<UUID> players) {
+        Map<UUID, Entry> manifest = new HashMap<>();
+        List<UUID> uuids = new ArrayList<>(players);
+
+        for (int from = 0; from < uuids.size(); from += IN_CHUNK_SIZE) {
+            List<UUID> chunk = uuids.subList(from, Math.min(from + IN_CHUNK_SIZE, uuids.size()));
+            String sql = "SELECT player_uuid, file_size, file_mtime, content_hash FROM sync_manifest WHERE player_uuid IN (" + "?, ".repeat(chunk.size() - 1) + "?)";
+
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    statement.setString(i + 1, chunk.get(i).toString());
+                }
+                try (ResultSet rs = statement.executeQuery()) {
+                    readEntries(rs, manifest);
+                }
+            } catch (SQLException e) {
+                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+                PlayerStatistics.LOGGER.error("Error loading sync manifest: {}", e.getMessage());
+            }
+        }
+        return manifest;
+    }
+
+    private static void readEntries(ResultSet rs, Map<UUID, Entry> manifest) throws SQLException {
+        while (rs.next()) {
+            try {
+                manifest.put(UUID.fromString(rs.getString("player_uuid")),
+                        new Entry(rs.getLong("file_size"), rs.getLong("file_mtime"), rs.getLong("content_hash")));
+            } catch (IllegalArgumentException ignored) {}
+        }
+    }
+
+    /**
+      * Decide if a stats file has to be synchronized.
+      * Files with the same size and modified time as in the manifest are skipped without reading them.
+      * Files with the same size but a different modified time are hashed and skipped if the content did not change.
+      *
+      * @param file The path to the stats file.
+      * @param current The current size and modified time of the file.
+      * @param synced The manifest entry of the last sync (or null if the file was never synchronized).
+      * @return The manifest entry describing the unchanged file (a new entry if only the modified time changed),
+      *         or null if the file has to be synchronized.
+      */
+    public static Entry checkUnchanged(Path file, Entry current, Entry synced) {
+        if (synced == null || synced.size() != current.size()) {
+            return null;
+        }
+        if (synced.lastModified() == current.lastModified()) {
+            return synced;
+        }
+
+        // Same size, different modified time: compare the content
+        try {
+            long hash = hashFile(file);
+            return hash == synced.contentHash() ? new Entry(current.size(), current.lastModified(), hash) : null;
+        } catch (IOException e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            return null;
+        }
+    }
+
+    /**
+      * Compute the content hash of a byte array (CRC32C and CRC32 combined to 64 bits).
+      *
+      * @param content The content.
+      * @param length The number of valid bytes in the array.
+      * @return The content hash.
+      */
+    public static long hash(byte[] content, int length) {
+        CRC32C crc32c = new CRC32C();
+        CRC32 crc32 = new CRC32();
+        crc32c.update(content, 0, length);
+        crc32.update(content, 0, length);
+        return crc32c.getValue() << 32 | crc32.getValue();
+    }
+
+    /**
+      * Read the current state of a stats file (size, modified time and content hash).
+      *
+      * @param file The path to the stats file.
+      * @return The manifest entry describing the file.
+      * @throws IOException If the file cannot be read.
+      */
+    public static Entry entry(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), hashFile(file));
+    }
+
+    /**
+      * Compute the content hash of a file.
+      *
+      * @param file The path to the file.
+      * @return The content hash.
+      * @throws IOException If the file cannot be read.
+      */
+    private static long hashFile(Path file) throws IOException {
+        CRC32C crc32c = new CRC32C();
+        CRC32 crc32 = new CRC32();
+        ByteBuffer buffer = THREAD_HASH_BUFFER.get();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc32c.update(buffer.duplicate());
+                crc32.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc32c.getValue() << 32 | crc32.getValue();
+    }
+
+    /**
+      * Get the upsert statement for the manifest.
+      *
+      * @param dbType The type of the database.
+      * @return The upsert SQL (parameters: player_uuid, file_size, file_mtime, content_hash).
+      */
+    public static String upsertSQL(String dbType) {
+        return switch (dbType) {
+            case "MARIADB", "MYSQL" ->
+                    """
+                        INSERT INTO sync_manifest (player_uuid, file_size, file_mtime, content_hash)
+                        VALUES (?, ?, ?, ?)
+                        ON DUPLICATE KEY UPDATE file_size = VALUES(file_size), file_mtime = VALUES(file_mtime), content_hash = VALUES(content_hash)
+                    """;
+            case "SQLITE", "POSTGRESQL" ->
+                    """
+                        INSERT INTO sync_manifest (player_uuid, file_size, file_mtime, content_hash)
+                        VALUES (?, ?, ?, ?)
+                        ON CONFLICT (player_uuid) DO UPDATE SET file_size = excluded.file_size, file_mtime = excluded.file_mtime, content_hash = excluded.content_hash
+                    """;
+            default -> throw new IllegalArgumentException("Unsupported database type: " + dbType);
+        };
+    }
+
+    /**
+      * Update the modified time of files whose content did not change, so they are skipped cheaply next time.
+      *
+      * @param connection The connection to the database.
+      * @param touched A map containing player UUIDs as keys and the current file state (with hash) as values.
+      */
+    public static void touch(Connection connection, Map<UUID, Entry> touched) {
+        if (touched.isEmpty()) {
+            return;
+        }
+        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Touching {} unchanged sync manifest entries ...", touched.size()); }
+
+        try (PreparedStatement statement = connection.prepareStatement(upsertSQL(DatabaseUtils.DB_TYPE))) {
+            for (Map.Entry<UUID, Entry> entry : touched.entrySet()) {
+                statement.setString(1, entry.getKey().toString());
+                statement.setLong(2, entry.getValue().size());
+                statement.setLong(3, entry.getValue().lastModified());
+                statement.setLong(4, entry.getValue().contentHash());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } catch (SQLException e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error updating sync manifest: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package github.fnewell.playerstatistics.utils;
+
+import github.fnewell.playerstatistics.PlayerStatistics;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static github.fnewell.playerstatistics.utils.DatabaseUtils.*;
+
+
+/**
+  * Staged sync pipeline: read stage (file I/O) -> parse stage (CPU) -> write stage (database).
+  * The stages are connected by bounded queues, so the slowest stage sets the pace and the others block instead of
+  * piling up work. Read and parse buffers are taken from bounded pools and recycled after the write stage.
+  * Every stage measures its own throughput.
+  */
+public class SyncPipeline {
+
+    private static final int QUEUE_CAPACITY = 64;
+
+    // File content read from disk (playerUUID == null marks the end of the stage)
+    private record ReadFile(UUID playerUUID, byte[][] content, int length) {}
+
+    // Parsed stats of one player (playerUUID == null marks the end of the stage)
+    private record ParsedStats(UUID playerUUID, PlayerStatsBuffer stats, boolean statsFound) {}
+
+    private static final ReadFile END_OF_FILES = new ReadFile(null, null, 0);
+    private static final ParsedStats END_OF_STATS = new ParsedStats(null, null, false);
+
+    /**
+      * Throughput of one stage.
+      */
+    private static class Stage {
+        private final String name;
+        private final int workers;
+        private final AtomicInteger running;
+        private final LongAdder items = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+
+        private Stage(String name, int workers) {
+            this.name = name;
+            this.workers = workers;
+            this.running = new AtomicInteger(workers);
+        }
+
+        private String summary(long wallNanos) {
+            double seconds = Math.max(1, wallNanos) / 1e9;
+            long utilization = Math.round(100.0 * busyNanos.sum() / Math.max(1, wallNanos * workers));
+            return name + " x" + workers + ": " + items.sum() + " (" + Math.round(items.sum() / seconds) + "/s, busy " + utilization + "%)";
+        }
+    }
+
+    private final Map<UUID, Path> playerFiles;
+    private final Map<UUID, SyncManifest.Entry> fileStates;
+    private final PlayerIdentityMap identities;
+    private final SyncChanges changes;
+
+    private final Stage readStage;
+    private final Stage parseStage;
+    private final Stage writeStage;
+
+    private final Queue<UUID> players = new ConcurrentLinkedQueue<>();
+    private final BlockingQueue<ReadFile> readFiles = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<ParsedStats> parsedStats = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    // Recycled buffers (sized so that every queue slot and every worker can hold one)
+    private final BlockingQueue<byte[][]> contentPool;
+    private final BlockingQueue<PlayerStatsBuffer> statsPool;
+
+    private long wallNanos = 0;
+
+    /**
+      * Create a new pipeline for one synchronization.
+      *
+      * @param players The players to synchronize.
+      * @param playerFiles The stats files of the players.
+      * @param fileStates The size and last modified time of the stats files.
+      * @param identities The resolved player IDs.
+      * @param changes The collector of the committed changes.
+      */
+    public SyncPipeline(Collection<UUID> players, Map<UUID, Path> playerFiles, Map<UUID, SyncManifest.Entry> fileStates, PlayerIdentityMap identities, SyncChanges changes) {
+        this.players.addAll(players);
+        this.playerFiles = playerFiles;
+        this.fileStates = fileStates;
+        this.identities = identities;
+        this.changes = changes;
+
+        int size = Math.max(1, players.size());
+        this.readStage = new Stage("read", Math.min(SyncExecutors.concurrency(SyncExecutors.Resource.FILE), size));
+        this.parseStage = new Stage("parse", Math.min(ConfigUtils.config.getInt("sync-executor.parse-concurrency"), size));
+        this.writeStage = new Stage("write", Math.min(SyncExecutors.concurrency(SyncExecutors.Resource.DATABASE), size));
+
+        int contentBuffers = QUEUE_CAPACITY + readStage.workers + parseStage.workers;
+        this.contentPool = new ArrayBlockingQueue<>(contentBuffers);
+        for (int i = 0; i < contentBuffers; i++) {
+            contentPool.add(new byte[][]{new byte[16 * 1024]});
+        }
+        int statsBuffers = QUEUE_CAPACITY + parseStage.workers + writeStage.workers;
+        this.statsPool = new ArrayBlockingQueue<>(statsBuffers);
+        for (int i = 0; i < statsBuffers; i++) {
+            statsPool.add(new PlayerStatsBuffer());
+        }
+    }
+
+    /**
+      * Run all stages on the shared sync executor and wait until the last player is written.
+      *
+      * @param timeout The maximum time to wait.
+      * @param unit The unit of the timeout.
+      * @return True if the pipeline finished in time, false otherwise.
+      * @throws InterruptedException If the waiting thread is interrupted.
+      */
+    public boolean run(long timeout, TimeUnit unit) throws InterruptedException {
+        long start = System.nanoTime();
+
+        // All stage workers have to run at the same time, otherwise a full queue would block forever
+        SyncExecutors.Phase phase = SyncExecutors.phase("pipeline", readStage.workers + parseStage.workers + writeStage.workers);
+        for (int i = 0; i < writeStage.workers; i++) {
+            phase.submit(() -> SyncExecutors.withPermit(SyncExecutors.Resource.DATABASE, this::writeWorker));
+        }
+        for (int i = 0; i < parseStage.workers; i++) {
+            phase.submit(this::parseWorker);
+        }
+        for (int i = 0; i < readStage.workers; i++) {
+            phase.submit(this::readWorker);
+        }
+
+        boolean finished = phase.await(timeout, unit);
+        wallNanos = System.nanoTime() - start;
+        return finished;
+    }
+
+    /**
+      * Read stage: reads stats files into pooled byte buffers.
+      */
+    private void readWorker() throws InterruptedException {
+        try {
+            UUID playerUUID;
+            while ((playerUUID = players.poll()) != null) {
+                byte[][] content = contentPool.take();
+                long start = System.nanoTime();
+                try {
+                    int[] length = new int[1];
+                    Path statsFile = playerFiles.get(playerUUID);
+                    SyncExecutors.withPermit(SyncExecutors.Resource.FILE, () -> length[0] = StatsFileParser.read(statsFile, content));
+                    readStage.busyNanos.add(System.nanoTime() - start);
+                    readStage.items.increment();
+                    readFiles.put(new ReadFile(playerUUID, content, length[0]));
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    contentPool.add(content);
+                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+                    PlayerStatistics.LOGGER.error("Error while reading player stats: {}", e.getMessage());
+                }
+            }
+        } finally {
+            if (readStage.running.decrementAndGet() == 0) {
+                for (int i = 0; i < parseStage.workers; i++) {
+                    readFiles.put(END_OF_FILES);
+                }
+            }
+        }
+    }
+
+    /**
+      * Parse stage: parses the read files into pooled stats buffers.
+      */
+    private void parseWorker() throws InterruptedException {
+        try {
+            ReadFile file;
+            while ((file = readFiles.take()) != END_OF_FILES) {
+                PlayerStatsBuffer stats = statsPool.take();
+                long start = System.nanoTime();
+                try {
+                    stats.reset();
+                    stats.setContent(file.length(), SyncManifest.hash(file.content()[0], file.length()));
+                    boolean statsFound = StatsFileParser.parse(file.content()[0], file.length(), stats);
+                    parseStage.busyNanos.add(System.nanoTime() - start);
+                    parseStage.items.increment();
+                    parsedStats.put(new ParsedStats(file.playerUUID(), stats, statsFound));
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    statsPool.add(stats);
+                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+                    PlayerStatistics.LOGGER.error("Error while parsing player stats: {}", e.getMessage());
+                } finally {
+                    contentPool.add(file.content());
+                }
+            }
+        } finally {
+            if (parseStage.running.decrementAndGet() == 0) {
+                for (int i = 0; i < writeStage.workers; i++) {
+                    parsedStats.put(END_OF_STATS);
+                }
+            }
+        }
+    }
+
+    /**
+      * Write stage: every worker leases one connection and writes the parsed stats through one batch writer.
+      * The sync manifest entry of every file is committed together with its stats.
+      * If the writer fails, the worker keeps draining its queue, so the other stages are not blocked.
+      */
+    private void writeWorker() throws InterruptedException {
+        ParsedStats item = null;
+        try (Connection workerConnection = getDatabaseConnection();
+             StatBatchWriter writer = new StatBatchWriter(workerConnection, DatabaseUtils.DB_TYPE, ConfigUtils.config.getInt("sync-batch-size"), changes)) {
+
+            while ((item = parsedStats.take()) != END_OF_STATS) {
+                long start = System.nanoTime();
+                try {
+                    if (item.statsFound()) {
+                        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("/Syncing player stats for UUID: {} (executor: {})", item.playerUUID(), Thread.currentThread().threadId()); }
+                        syncPlayerStats(writer, identities.getId(item.playerUUID()), item.stats());
+                        if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("\\Player stats synced for UUID: {} (executor: {})", item.playerUUID(), Thread.currentThread().threadId()); }
+                    }
+                    writer.addManifest(item.playerUUID(), new SyncManifest.Entry(item.stats().getContentLength(), fileStates.get(item.playerUUID()).lastModified(), item.stats().getContentHash()));
+                    writeStage.busyNanos.add(System.nanoTime() - start);
+                    writeStage.items.increment();
+                } catch (Exception e) {
+                    if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+                    PlayerStatistics.LOGGER.error("Error while syncing player stats: {}", e.getMessage());
+                } finally {
+                    statsPool.add(item.stats());
+                }
+            }
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+            PlayerStatistics.LOGGER.error("Error while writing player stats: {}", e.getMessage());
+
+            // Keep consuming, so the parse stage does not block on a full queue
+            while (item != END_OF_STATS) {
+                item = parsedStats.take();
+                if (item != END_OF_STATS) {
+                    statsPool.add(item.stats());
+                }
+            }
+        }
+    }
+
+    /**
+      * Get the throughput of all stages of the last run.
+      *
+      * @return The stage throughput as a human-readable string.
+      */
+    public String summary() {
+        return readStage.summary(wallNanos) + ", " + parseStage.summary(wallNanos) + ", " + writeStage.summary(wallNanos) +
+                " in " + TimeUnit.NANOSECONDS.toMillis(wallNanos) + " ms";
+    }
+}
@@ -0,0 +1,709 @@
+package github.fnewell.playerstatistics.webserver;
+
+import github.fnewell.playerstatistics.utils.DatabaseUtils;
+import github.fnewell.playerstatistics.utils.RankIndex;
+import github.fnewell.playerstatistics.utils.StatHistory;
+import github.fnewell.playerstatistics.utils.StatSyncTask;
+import github.fnewell.playerstatistics.utils.StatValueCache;
+import io.javalin.http.Context;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static github.fnewell.playerstatistics.utils.DatabaseUtils.TABLE_NAMES;
+
+
+/**
+  * JSON query API of the webpage ('/api/...'), so pages do not have to download and query the whole database.
+  * Every endpoint reads through the read-only connection pool with prepared statements,
+  * lists are paginated ('page' from 1, 'size' up to {@link #MAX_PAGE_SIZE}) and sortable ('sort', 'order' = asc / desc).
+  * Sort columns are mapped from a fixed list, so no request value is ever put into the SQL.
+  */
+public class ApiHandlers {
+
+    private static final int DEFAULT_PAGE_SIZE = 25;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    // Sortable columns of the lists (request value -> column)
+    private static final Map<String, String> PLAYER_SORTS = Map.of(
+            "name", "u.player_nick",
+            "last_online", "u.player_last_online",
+            "score", "h.score"         // Players without a Hall of Fame row have no score (sorted as lowest)
+    );
+    private static final Map<String, String> HALL_OF_FAME_SORTS = Map.of(
+            "score", "h.score",
+            "first_place", "h.first_place",
+            "second_place", "h.second_place",
+            "third_place", "h.third_place",
+            "fourth_place", "h.fourth_place",
+            "fifth_place", "h.fifth_place"
+    );
+    private static final Map<String, String> STAT_SORTS = Map.of(
+            "name", "stat_name",
+            "players", "player_count",
+            "total", "total_amount",
+            "max", "max_amount"
+    );
+
+    /**
+      * Invalid request parameter (answered with '400 Bad Request').
+      */
+    private static class BadRequestException extends Exception {
+        private BadRequestException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+      * Data which is not available yet (answered with '503 Service Unavailable').
+      */
+    private static class UnavailableException extends Exception {
+        private UnavailableException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+      * Pagination and sorting of a list request.
+      */
+    private record Page(int page, int size, String sortColumn, boolean descending) {
+        private int offset() {
+            return (page - 1) * size;
+        }
+
+        private String orderBy(String tieBreaker) {
+            // PostgreSQL sorts NULL as the highest value, the other databases as the lowest
+            String nulls = "POSTGRESQL".equals(DatabaseUtils.DB_TYPE) ? (descending ? " NULLS LAST" : " NULLS FIRST") : "";
+            return " ORDER BY " + sortColumn + (descending ? " DESC" : " ASC") + nulls + ", " + tieBreaker;
+        }
+    }
+
+    /**
+      * Endpoint body which reads through a read-only connection.
+      */
+    @FunctionalInterface
+    private interface Query {
+        Object run(Context ctx, Connection connection) throws Exception;
+    }
+
+    /**
+      * List the players (sort: name, last_online, score; search: nickname prefix).
+      * '/api/players'
+      *
+      * @param ctx The request context.
+      * @throws Exception If the response can not be sent.
+      */
+    public static void players(Context ctx) throws Exception {
+        respond(ctx, ApiHandlers::readPlayers);
+    }
+
+    /**
+      * Send the profile of a player (by UUID or nickname).
+      * '/api/players/{player}'
+      *
+      * @param ctx The request context.
+      * @throws Exception If the response can not be sent.
+      */
+    public static void player(Context ctx) throws Exception {
+        respond(ctx, ApiHandlers::readPlayer);
+    }
+
+    /**
+      * List the stats of a table with their server-wide aggregates (sort: name, players, total, max).
+      * '/api/stats/{table}'
+      *
+      * @param ctx The request context.
+      * @throws Exception If the response can not be sent.
+      */
+    public static void stats(Context ctx) throws Exception {
+        respond(ctx, ApiHandlers::readStats);
+    }
+
+    /**
+      * Send one page of the leaderboard of a stat (sort: amount).
+      * '/api/leaderboard/{table}/{stat}'
+      *
+      * @param ctx The request context.
+      * @throws Exception If the response can not be sent.
+      */
+    public static void leaderboard(Context ctx) throws Exception {
+        respond(ctx, ApiHandlers::readLeaderboard);
+    }
+
+    /**
+      * Send one page of the Hall of Fame (sort: score, first_place - fifth_place).
+      * '/api/hall-of-fame'
+      *
+      * @param ctx The request context.
+      * @throws Exception If the response can not be sent.
+      */
+    public static void hallOfFame(Context ctx) throws Exception {
+        respond(ctx, ApiHandlers::readHallOfFame);
+    }
+
+    /**
+      * Send the gains of one stat of a player over time, for progress charts ('from' and 'to' in epoch seconds).
+      * '/api/history/{player}/{table}/{stat}'
+      *
+      * @param ctx The request context.
+      * @throws Exception If the response can not be sent.
+      */
+    public static void history(Context ctx) throws Exception {
+        respond(ctx, ApiHandlers::readHistory);
+    }
+
+    /**
+      * Send the ranks of a player in all stats, or in one stat with 'table' and 'stat' (players with the same amount share the rank).
+      * '/api/rank/{player}'
+      *
+      * @param ctx The request context.
+      * @throws Exception If the response can not be sent.
+      */
+    public static void rank(Context ctx) throws Exception {
+        respond(ctx, ApiHandlers::readRank);
+    }
+
+    /**
+      * Send the sync metadata.
+      * '/api/metadata'
+      *
+      * @param ctx The request context.
+      * @throws Exception If the response can not be sent.
+      */
+    public static void metadata(Context ctx) throws Exception {
+        respond(ctx, ApiHandlers::readMetadata);
+    }
+
+    /**
+      * Run a query on a read-only connection and send its result as JSON.
+      */
+    private static void respond(Context ctx, Query query) throws Exception {
+        Object result;
+        try (Connection connection = DatabaseUtils.getReadConnection()) {
+            result = query.run(ctx, connection);
+        } catch (BadRequestException e) {
+            ctx.status(400).result(e.getMessage());
+            return;
+        } catch (UnavailableException e) {
+            ctx.status(503).result(e.getMessage());
+            return;
+        }
+        if (result == null) {
+            ctx.status(404).result("Not found");
+            return;
+        }
+        ctx.header("Cache-Control", "no-cache");
+        ctx.contentType("application/json");
+        ctx.result(StatSyncTask.MAPPER.writeValueAsBytes(result));
+    }
+
+    /**
+      * Read one page of the players (the search is a case-insensitive nickname prefix, LIKE wildcards are escaped).
+      */
+    private static Object readPlayers(Context ctx, Connection connection) throws Exception {
+        Page page = page(ctx, PLAYER_SORTS, "name", false);
+        String search = ctx.queryParam("search");
+        String where = "";
+        List<String> pattern = List.of();
+        if (search != null && !search.isBlank()) {
+            where = " WHERE " + DatabaseUtils.nickPrefixSQL("u.player_nick");
+            pattern = DatabaseUtils.nickPrefixPattern(search.trim());
+        }
+
+        long total;
+        try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM uuid_map u" + where)) {
+            for (int i = 0; i < pattern.size(); i++) {
+                statement.setString(i + 1, pattern.get(i));
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                total = rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+
+        String sql = "SELECT u.player_uuid, u.player_nick, u.player_last_online, COALESCE(h.score, 0) AS score " +
+                "FROM uuid_map u LEFT JOIN hall_of_fame h ON h.player_id = u.id" + where +
+                page.orderBy("u.id") + " LIMIT ? OFFSET ?";
+        List<Map<String, Object>> items = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int index = 1;
+            for (String value : pattern) {
+                statement.setString(index++, value);
+            }
+            statement.setInt(index++, page.size());
+            statement.setInt(index, page.offset());
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, Object> item = new LinkedHashMap<>();
+                    item.put("uuid", rs.getString("player_uuid"));
+                    item.put("nick", rs.getString("player_nick"));
+                    item.put("last_online", lastOnline(rs));
+                    item.put("score", rs.getInt("score"));
+                    items.add(item);
+                }
+            }
+        }
+        return list(page, total, items);
+    }
+
+    /**
+      * Get the profile of a player: identity, Hall of Fame row and all stats (amount and position) grouped by table.
+      */
+    private static Object readPlayer(Context ctx, Connection connection) throws Exception {
+        int playerId = DatabaseUtils.findPlayerId(connection, ctx.pathParam("player"));
+        if (playerId < 0) {
+            return null;
+        }
+
+        Map<String, Object> profile = new LinkedHashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT player_uuid, player_nick, player_last_online FROM uuid_map WHERE id = ?")) {
+            statement.setInt(1, playerId);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                profile.put("uuid", rs.getString("player_uuid"));
+                profile.put("nick", rs.getString("player_nick"));
+                profile.put("last_online", lastOnline(rs));
+            }
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement("SELECT first_place, second_place, third_place, fourth_place, fifth_place, score FROM hall_of_fame WHERE player_id = ?")) {
+            statement.setInt(1, playerId);
+            try (ResultSet rs = statement.executeQuery()) {
+                profile.put("hall_of_fame", rs.next() ? hallOfFameRow(rs) : null);
+            }
+        }
+
+        // Stats of every table (primary key lookups)
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (String tableName : TABLE_NAMES) {
+            Map<String, Object> tableStats = new TreeMap<>();
+            try (PreparedStatement statement = connection.prepareStatement("SELECT stat_name, amount, position FROM " + tableName + " WHERE player_id = ?")) {
+                statement.setInt(1, playerId);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        Map<String, Object> stat = new LinkedHashMap<>();
+                        stat.put("amount", rs.getInt("amount"));
+                        int position = rs.getInt("position");
+                        stat.put("position", rs.wasNull() ? null : position);
+                        tableStats.put(rs.getString("stat_name"), stat);
+                    }
+                }
+            }
+            stats.put(tableName, tableStats);
+        }
+        profile.put("stats", stats);
+        return profile;
+    }
+
+    /**
+      * Read one page of the stat rollups of a table.
+      */
+    private static Object readStats(Context ctx, Connection connection) throws Exception {
+        String tableName = table(ctx);
+        Page page = page(ctx, STAT_SORTS, "name", false);
+
+        long total;
+        try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM " + tableName + "_rollup");
+             ResultSet rs = statement.executeQuery()) {
+            total = rs.next() ? rs.getLong(1) : 0;
+        }
+
+        String sql = "SELECT stat_name, total_amount, player_count, max_amount, min_amount FROM " + tableName + "_rollup" +
+                page.orderBy("stat_name") + " LIMIT ? OFFSET ?";
+        List<Map<String, Object>> items = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, page.size());
+            statement.setInt(2, page.offset());
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, Object> item = new LinkedHashMap<>();
+                    item.put("stat", rs.getString("stat_name"));
+                    item.put("players", rs.getInt("player_count"));
+                    item.put("total", rs.getLong("total_amount"));
+                    item.put("max", rs.getInt("max_amount"));
+                    item.put("min", rs.getInt("min_amount"));
+                    items.add(item);
+                }
+            }
+        }
+        return list(page, total, items);
+    }
+
+    /**
+      * Get one page of the leaderboard of a stat (order: desc = highest first, asc = lowest first).
+      * The page is read from the (stat_name, amount) index, the total comes from the stat rollup.
+      */
+    private static Object readLeaderboard(Context ctx, Connection connection) throws Exception {
+        String tableName = table(ctx);
+        String statName = ctx.pathParam("stat");
+        Page page = page(ctx, Map.of("amount", "s.amount"), "amount", true);
+
+        long total;
+        try (PreparedStatement statement = connection.prepareStatement("SELECT player_count FROM " + tableName + "_rollup WHERE stat_name = ?")) {
+            statement.setString(1, statName);
+            try (ResultSet rs = statement.executeQuery()) {
+                total = rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+
+        String sql = "SELECT u.player_uuid, u.player_nick, s.amount, s.position FROM " + tableName + " s " +
+                "JOIN uuid_map u ON u.id = s.player_id WHERE s.stat_name = ?" +
+                page.orderBy("s.player_id") + " LIMIT ? OFFSET ?";
+        List<Map<String, Object>> items = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, statName);
+            statement.setInt(2, page.size());
+            statement.setInt(3, page.offset());
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, Object> item = new LinkedHashMap<>();
+                    item.put("rank", null);
+                    item.put("uuid", rs.getString("player_uuid"));
+                    item.put("nick", rs.getString("player_nick"));
+                    item.put("amount", rs.getInt("amount"));
+                    int position = rs.getInt("position");
+                    item.put("position", rs.wasNull() ? null : position);
+                    items.add(item);
+                }
+            }
+        }
+        rankLeaderboardPage(connection, tableName, statName, page, items);
+        return list(page, total, items);
+    }
+
+    /**
+      * Set the ranks of one leaderboard page with the tie rule of {@link RankIndex}:
+      * the rank is 1 + the number of players with a higher amount, so players with the same amount share the rank.
+      * Only the tie group cut by the page boundary needs the database (one indexed count), the rest follows from the page.
+      */
+    private static void rankLeaderboardPage(Connection connection, String tableName, String statName, Page page, List<Map<String, Object>> items) throws SQLException {
+        if (items.isEmpty()) {
+            return;
+        }
+
+        if (page.descending()) {
+            // A row which starts its tie group has every earlier row above it
+            int firstAmount = (int) items.get(0).get("amount");
+            long rank = page.offset() == 0 ? 1 : countAmounts(connection, tableName, statName, firstAmount)[0] + 1;
+            for (int i = 0; i < items.size(); i++) {
+                int amount = (int) items.get(i).get("amount");
+                if (i > 0 && amount != (int) items.get(i - 1).get("amount")) {
+                    rank = page.offset() + i + 1;
+                }
+                items.get(i).put("rank", rank);
+            }
+            return;
+        }
+
+        // Ascending: walk back from the last row, every higher tie group is completely above the lower ones
+        int groupAmount = (int) items.get(items.size() - 1).get("amount");
+        long[] counts = countAmounts(connection, tableName, statName, groupAmount);
+        long above = counts[0];
+        long groupSize = counts[1];
+        boolean counted = true;     // The group of the last row can continue on the next page, so it is counted in the database
+        for (int i = items.size() - 1; i >= 0; i--) {
+            int amount = (int) items.get(i).get("amount");
+            if (amount != groupAmount) {
+                above += groupSize;
+                groupAmount = amount;
+                groupSize = 0;
+                counted = false;
+            }
+            if (!counted) {
+                groupSize++;
+            }
+            items.get(i).put("rank", above + 1);
+        }
+    }
+
+    /**
+      * Count the players of a stat with a higher and with the same amount (one range of the (stat_name, amount) index).
+      *
+      * @return The number of players above the amount and the number of players with the amount.
+      */
+    private static long[] countAmounts(Connection connection, String tableName, String statName, int amount) throws SQLException {
+        String sql = "SELECT SUM(CASE WHEN amount > ? THEN 1 ELSE 0 END), SUM(CASE WHEN amount = ? THEN 1 ELSE 0 END) FROM " + tableName +
+                " WHERE stat_name = ? AND amount >= ?";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, amount);
+            statement.setInt(2, amount);
+            statement.setString(3, statName);
+            statement.setInt(4, amount);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? new long[] {rs.getLong(1), rs.getLong(2)} : new long[] {0, 0};
+            }
+        }
+    }
+
+    /**
+      * Read the history buckets of one stat of a player (default range: the last 30 days).
+      * Buckets of different resolutions do not overlap, so the total gain of the range is the sum of all buckets.
+      */
+    private static Object readHistory(Context ctx, Connection connection) throws Exception {
+        String tableName = table(ctx);
+        String statName = ctx.pathParam("stat");
+        long to = longParam(ctx, "to", TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+        long from = longParam(ctx, "from", to - TimeUnit.DAYS.toSeconds(30));
+        if (from >= to) {
+            throw new BadRequestException("Invalid range (from < to)");
+        }
+        if (!StatHistory.isEnabled()) {
+            return null;
+        }
+
+        int playerId = DatabaseUtils.findPlayerId(connection, ctx.pathParam("player"));
+        if (playerId < 0) {
+            return null;
+        }
+
+        long total = 0;
+        List<Map<String, Object>> buckets = new ArrayList<>();
+        for (StatHistory.Bucket bucket : StatHistory.query(connection, playerId, TABLE_NAMES.indexOf(tableName), statName, from, to)) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("start", bucket.bucketStart());
+            item.put("resolution", switch (bucket.resolution()) {
+                case StatHistory.HOURLY -> "hourly";
+                case StatHistory.DAILY -> "daily";
+                default -> "weekly";
+            });
+            item.put("amount", bucket.amountDelta());
+            buckets.add(item);
+            total += bucket.amountDelta();
+        }
+
+        Map<String, Object> history = new LinkedHashMap<>();
+        history.put("table", tableName);
+        history.put("stat", statName);
+        history.put("from", from);
+        history.put("to", to);
+        history.put("total", total);
+        history.put("buckets", buckets);
+        return history;
+    }
+
+    /**
+      * Read one page of the Hall of Fame.
+      */
+    private static Object readHallOfFame(Context ctx, Connection connection) throws Exception {
+        Page page = page(ctx, HALL_OF_FAME_SORTS, "score", true);
+
+        long total;
+        try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM hall_of_fame");
+             ResultSet rs = statement.executeQuery()) {
+            total = rs.next() ? rs.getLong(1) : 0;
+        }
+
+        String sql = "SELECT u.player_uuid, u.player_nick, h.first_place, h.second_place, h.third_place, h.fourth_place, h.fifth_place, h.score " +
+                "FROM hall_of_fame h JOIN uuid_map u ON u.id = h.player_id" +
+                page.orderBy("h.player_id") + " LIMIT ? OFFSET ?";
+        List<Map<String, Object>> items = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, page.size());
+            statement.setInt(2, page.offset());
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, Object> item = new LinkedHashMap<>();
+                    item.put("uuid", rs.getString("player_uuid"));
+                    item.put("nick", rs.getString("player_nick"));
+                    item.putAll(hallOfFameRow(rs));
+                    items.add(item);
+                }
+            }
+        }
+        return list(page, total, items);
+    }
+
+    /**
+      * Get the ranks of a player from the rank index (all stats, or one stat with 'table' and 'stat').
+      */
+    private static Object readRank(Context ctx, Connection connection) throws Exception {
+        if (!RankIndex.isSeeded()) {
+            throw new UnavailableException("Ranks are not available yet");
+        }
+        String table = ctx.queryParam("table");
+        String stat = ctx.queryParam("stat");
+        int tableIndex = -1;
+        if (table != null || stat != null) {
+            tableIndex = TABLE_NAMES.indexOf(table);
+            if (tableIndex < 0 || stat == null || stat.isEmpty()) {
+                throw new BadRequestException("Unknown table or missing stat");
+            }
+        }
+
+        int playerId = DatabaseUtils.findPlayerId(connection, ctx.pathParam("player"));
+        if (playerId < 0) {
+            return null;
+        }
+
+        List<RankIndex.Rank> ranks;
+        if (tableIndex >= 0) {
+            RankIndex.Rank rank = RankIndex.rank(tableIndex, stat, StatValueCache.get(connection, playerId).get(tableIndex, stat));
+            ranks = rank == null ? List.of() : List.of(rank);
+        } else {
+            ranks = RankIndex.ranks(connection, playerId);
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (RankIndex.Rank rank : ranks) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("table", TABLE_NAMES.get(rank.tableIndex()));
+            entry.put("stat", rank.statName());
+            entry.put("amount", rank.amount());
+            entry.put("rank", rank.rank());
+            entry.put("players", rank.players());
+            entry.put("top_percent", rank.topPercent());
+            entry.put("percentile", rank.percentile());
+            result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+      * Get the sync metadata (the server icon is served by '/api/metadata/icon').
+      */
+    private static Object readMetadata(Context ctx, Connection connection) throws Exception {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        Timestamp lastUpdate = DatabaseUtils.getLastSyncTime(connection);
+        metadata.put("last_update", lastUpdate == null ? null : lastUpdate.getTime());
+        try (PreparedStatement statement = connection.prepareStatement("SELECT server_name, server_desc, server_url, server_icon IS NOT NULL AS has_icon FROM sync_metadata");
+             ResultSet rs = statement.executeQuery()) {
+            if (rs.next()) {
+                metadata.put("server_name", rs.getString("server_name"));
+                metadata.put("server_desc", rs.getString("server_desc"));
+                metadata.put("server_url", rs.getString("server_url"));
+                metadata.put("icon_url", rs.getBoolean("has_icon") ? "/api/metadata/icon" : null);
+            }
+        }
+        metadata.put("generation", DatabaseUtils.getSyncGeneration(connection));
+        return metadata;
+    }
+
+    /**
+      * Send the server icon (PNG).
+      * '/api/metadata/icon'
+      *
+      * @param ctx The request context.
+      * @throws Exception If the icon can not be sent.
+      */
+    public static void icon(Context ctx) throws Exception {
+        byte[] icon = null;
+        try (Connection connection = DatabaseUtils.getReadConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT server_icon FROM sync_metadata");
+             ResultSet rs = statement.executeQuery()) {
+            if (rs.next()) {
+                icon = rs.getBytes("server_icon");
+            }
+        }
+        if (icon == null) {
+            ctx.status(404).result("Not found");
+            return;
+        }
+        ctx.header("Cache-Control", "no-cache");
+        ctx.contentType("image/png");
+        ctx.result(icon);
+    }
+
+    /**
+      * Parse the pagination and sorting parameters of a list request.
+      */
+    private static Page page(Context ctx, Map<String, String> sorts, String defaultSort, boolean defaultDescending) throws BadRequestException {
+        int page = intParam(ctx, "page", 1);
+        int size = intParam(ctx, "size", DEFAULT_PAGE_SIZE);
+        if (page < 1 || size < 1 || size > MAX_PAGE_SIZE) {
+            throw new BadRequestException("Invalid page or size (size: 1 - " + MAX_PAGE_SIZE + ")");
+        }
+
+        String sort = ctx.queryParam("sort");
+        String sortColumn = sorts.get(sort == null ? defaultSort : sort);
+        if (sortColumn == null) {
+            throw new BadRequestException("Invalid sort (" + String.join(", ", new TreeMap<>(sorts).keySet()) + ")");
+        }
+
+        String order = ctx.queryParam("order");
+        boolean descending = defaultDescending;
+        if (order != null) {
+            if (!order.equals("asc") && !order.equals("desc")) {
+                throw new BadRequestException("Invalid order (asc, desc)");
+            }
+            descending = order.equals("desc");
+        }
+        return new Page(page, size, sortColumn, descending);
+    }
+
+    private static int intParam(Context ctx, String name, int defaultValue) throws BadRequestException {
+        String value = ctx.queryParam(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid " + name);
+        }
+    }
+
+    private static long longParam(Context ctx, String name, long defaultValue) throws BadRequestException {
+        String value = ctx.queryParam(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid " + name);
+        }
+    }
+
+    /**
+      * Get the stat table of a request (only known table names are accepted).
+      */
+    private static String table(Context ctx) throws BadRequestException {
+        String tableName = ctx.pathParam("table");
+        if (!TABLE_NAMES.contains(tableName)) {
+            throw new BadRequestException("Invalid table (" + String.join(", ", TABLE_NAMES) + ")");
+        }
+        return tableName;
+    }
+
+    private static Map<String, Object> list(Page page, long total, List<Map<String, Object>> items) {
+        Map<String, Object> list = new LinkedHashMap<>();
+        list.put("page", page.page());
+        list.put("size", page.size());
+        list.put("total", total);
+        list.put("items", items);
+        return list;
+    }
+
+    private static Map<String, Object> hallOfFameRow(ResultSet rs) throws SQLException {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("first_place", rs.getInt("first_place"));
+        row.put("second_place", rs.getInt("second_place"));
+        row.put("third_place", rs.getInt("third_place"));
+        row.put("fourth_place", rs.getInt("fourth_place"));
+        row.put("fifth_place", rs.getInt("fifth_place"));
+        row.put("score", rs.getInt("score"));
+        return row;
+    }
+
+    /**
+      * Read the last online time of a player in epoch milliseconds (stored as a number in SQLite and as a timestamp elsewhere).
+      */
+    private static Long lastOnline(ResultSet rs) throws SQLException {
+        if ("SQLITE".equals(DatabaseUtils.DB_TYPE)) {
+            long lastOnline = rs.getLong("player_last_online");
+            return rs.wasNull() ? null : lastOnline;
+        }
+        Timestamp timestamp = rs.getTimestamp("player_last_online");
+        return timestamp == null ? null : timestamp.getTime();
+    }
+}
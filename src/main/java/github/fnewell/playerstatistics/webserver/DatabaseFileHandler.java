@@ -0,0 +1,318 @@
+package github.fnewell.playerstatistics.webserver;
+
+import github.fnewell.playerstatistics.PlayerStatistics;
+import github.fnewell.playerstatistics.utils.DatabaseUtils;
+import github.fnewell.playerstatistics.utils.SnapshotManager;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import org.eclipse.jetty.server.HttpOutput;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+
+/**
+  * Serves the SQLite database file to the webpage (the newest snapshot, see {@link SnapshotManager}).
+  * Responses carry a strong ETag (the snapshot version, or sync generation + file size + modification time
+  * for the live database), Last-Modified and Content-Length,
+  * conditional requests are answered with '304 Not Modified' and single byte ranges with '206 Partial Content'.
+  * Snapshots are sent precompressed (zstd, gzip or deflate) if the client accepts it, with their own ETag per encoding.
+  * The file is sent without copying it through the heap: the requested region is memory-mapped and handed to Jetty
+  * (or transferred from the file channel if the response is not a Jetty output).
+  */
+public class DatabaseFileHandler implements Handler {
+
+    private final Supplier<Path> fileSupplier;
+
+    // Validator of the last seen file version (the sync generation is only queried when the file changes)
+    private long cachedSize = -1;
+    private long cachedModified = -1;
+    private String cachedETag = null;
+
+    public DatabaseFileHandler(Supplier<Path> fileSupplier) {
+        this.fileSupplier = fileSupplier;
+    }
+
+    @Override
+    public void handle(Context ctx) throws Exception {
+        Path file = fileSupplier.get();
+        String version = SnapshotManager.versionOf(file);
+
+        // Precompressed variant of the snapshot accepted by the client (if compressed already)
+        // A variant deleted with its snapshot in the meantime falls back to the uncompressed snapshot
+        Map.Entry<SnapshotManager.Encoding, Path> variant = version != null ? negotiate(ctx.header("Accept-Encoding"), SnapshotManager.ENCODINGS, encoding -> SnapshotManager.variant(file, encoding)) : null;
+        FileChannel variantChannel = variant != null ? open(variant.getValue()) : null;
+        SnapshotManager.Encoding encoding = variantChannel != null ? variant.getKey() : null;
+
+        FileChannel channel = variantChannel != null ? variantChannel : open(file);
+        if (channel == null) {
+            ctx.status(404).result("File not found");
+            return;
+        }
+
+        try (channel) {
+            long size = channel.size();
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            String eTag;
+            if (version == null) {
+                eTag = eTag(size, modified);
+            } else if (encoding == null) {
+                eTag = "\"" + version + "\"";
+            } else {
+                eTag = "\"" + version + "-" + encoding.encoding() + "\"";
+            }
+            String lastModified = DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(modified).atOffset(ZoneOffset.UTC));
+
+            ctx.header("ETag", eTag);
+            ctx.header("Last-Modified", lastModified);
+            ctx.header("Cache-Control", "no-cache");     // Cache, but revalidate on every use (answered with 304)
+            ctx.header("Accept-Ranges", "bytes");
+            if (version != null) {
+                ctx.header("Vary", "Accept-Encoding");
+            }
+            if (encoding != null) {
+                ctx.header("Content-Encoding", encoding.encoding());
+            }
+
+            sendRegion(ctx, channel, 0, size, eTag, lastModified, modified);
+        }
+    }
+
+    /**
+      * Open a file for reading.
+      *
+      * @return The open file, or null if it does not exist.
+      */
+    private static FileChannel open(Path file) throws IOException {
+        try {
+            return FileChannel.open(file, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+      * Send a region of a file: answers conditional requests with '304' and a single byte range (within the region) with '206'.
+      * The validators and cache headers have to be set by the caller.
+      *
+      * @param ctx The request context.
+      * @param channel The open file.
+      * @param offset The offset of the region in the file.
+      * @param size The size of the region.
+      * @param eTag The ETag of the region.
+      * @param lastModified The Last-Modified header value of the region.
+      * @param modified The modification time of the region (epoch milliseconds).
+      * @throws IOException If the file can not be sent.
+      */
+    static void sendRegion(Context ctx, FileChannel channel, long offset, long size, String eTag, String lastModified, long modified) throws IOException {
+        if (notModified(ctx.header("If-None-Match"), ctx.header("If-Modified-Since"), eTag, modified)) {
+            ctx.status(304);
+            return;
+        }
+
+        // Byte range (only a single range is supported, anything else gets the whole region)
+        long start = 0;
+        long end = size - 1;
+        String range = ctx.header("Range");
+        String ifRange = ctx.header("If-Range");
+        if (range != null && (ifRange == null || ifRange.equals(eTag) || ifRange.equals(lastModified))) {
+            long[] bounds = parseRange(range, size);
+            if (bounds == null) {
+                ctx.header("Content-Range", "bytes */" + size);
+                ctx.status(416);
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                ctx.status(206);
+                ctx.header("Content-Range", "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+
+        long length = end - start + 1;
+        ctx.contentType("application/octet-stream");
+        ctx.res().setContentLengthLong(length);
+        if ("HEAD".equals(ctx.req().getMethod()) || length <= 0) {
+            return;
+        }
+        send(channel, offset + start, length, ctx.res().getOutputStream());
+    }
+
+    /**
+      * Get the ETag of the live database, the sync generation is read from the database when the file changed.
+      */
+    private synchronized String eTag(long size, long modified) {
+        if (size != cachedSize || modified != cachedModified || cachedETag == null) {
+            long generation = 0;
+            try (Connection connection = DatabaseUtils.getDatabaseConnection()) {
+                generation = DatabaseUtils.getSyncGeneration(connection);
+            } catch (Exception e) {
+                if (PlayerStatistics.DEBUG) { PlayerStatistics.LOGGER.info("Trace: ", e); }
+                PlayerStatistics.LOGGER.error("Error reading sync generation: {}", e.getMessage());
+            }
+            cachedSize = size;
+            cachedModified = modified;
+            cachedETag = "\"" + generation + "-" + Long.toHexString(size) + "-" + Long.toHexString(modified) + "\"";
+        }
+        return cachedETag;
+    }
+
+    /**
+      * Choose the most preferred encoding accepted by the client whose variant of the snapshot exists.
+      *
+      * @param acceptEncoding The Accept-Encoding header (or null).
+      * @param encodings The supported encodings, in order of preference.
+      * @param variants The path to the variant of the snapshot in an encoding (or null if it does not exist).
+      * @return The encoding and the path to its variant, or null if the snapshot is sent uncompressed.
+      */
+    static Map.Entry<SnapshotManager.Encoding, Path> negotiate(String acceptEncoding, List<SnapshotManager.Encoding> encodings, Function<SnapshotManager.Encoding, Path> variants) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return null;
+        }
+
+        // Parse the content codings and their quality values ("gzip, deflate;q=0.5, *;q=0")
+        Map<String, Double> accepted = new HashMap<>();
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            double quality = 1;
+            for (int i = 1; i < tokens.length; i++) {
+                String parameter = tokens[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            accepted.put(tokens[0].trim().toLowerCase(Locale.ROOT), quality);
+        }
+
+        Map.Entry<SnapshotManager.Encoding, Path> best = null;
+        double bestQuality = 0;
+        for (SnapshotManager.Encoding encoding : encodings) {
+            double quality = accepted.getOrDefault(encoding.encoding(), accepted.getOrDefault("*", 0.0));
+            if (quality > bestQuality) {
+                Path variant = variants.apply(encoding);
+                if (variant != null) {
+                    best = Map.entry(encoding, variant);
+                    bestQuality = quality;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+      * Check the conditional headers (If-None-Match takes precedence over If-Modified-Since).
+      */
+    static boolean notModified(String ifNoneMatch, String ifModifiedSince, String eTag, long modified) {
+        if (ifNoneMatch != null) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                candidate = candidate.trim();
+                if (candidate.startsWith("W/")) {
+                    candidate = candidate.substring(2);
+                }
+                if (candidate.equals("*") || candidate.equals(eTag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if (ifModifiedSince != null) {
+            try {
+                Instant since = DateTimeFormatter.RFC_1123_DATE_TIME.parse(ifModifiedSince, Instant::from);
+                return !Instant.ofEpochMilli(modified).truncatedTo(ChronoUnit.SECONDS).isAfter(since);
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+      * Parse a 'Range' header.
+      *
+      * @return The first and last byte of the range, an empty array if the header is ignored (whole file),
+      *         or null if the range can not be satisfied.
+      */
+    static long[] parseRange(String range, long size) {
+        if (!range.startsWith("bytes=") || range.contains(",")) {
+            return new long[0];
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+
+        try {
+            String from = spec.substring(0, dash).trim();
+            String to = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (from.isEmpty()) {
+                // Suffix range: the last N bytes
+                long suffix = Long.parseLong(to);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(from);
+                end = to.isEmpty() ? size - 1 : Math.min(Long.parseLong(to), size - 1);
+            }
+            if (start >= size || start > end) {
+                return null;
+            }
+            return new long[]{ start, end };
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    /**
+      * Send a region of the file without copying it through the heap.
+      */
+    private static void send(FileChannel channel, long start, long length, OutputStream out) throws IOException {
+        if (out instanceof HttpOutput httpOutput && length <= Integer.MAX_VALUE) {
+            httpOutput.sendContent(channel.map(FileChannel.MapMode.READ_ONLY, start, length));
+            return;
+        }
+
+        WritableByteChannel target = Channels.newChannel(out);
+        long position = start;
+        long remaining = length;
+        while (remaining > 0) {
+            long transferred = channel.transferTo(position, remaining, target);
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+        out.flush();
+    }
+}
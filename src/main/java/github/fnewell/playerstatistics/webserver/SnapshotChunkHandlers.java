@@ -0,0 +1,187 @@
+package github.fnewell.playerstatistics.webserver;
+
+import github.fnewell.playerstatistics.utils.ConfigUtils;
+import github.fnewell.playerstatistics.utils.SnapshotManager;
+import github.fnewell.playerstatistics.utils.StatSyncTask;
+import io.javalin.http.Context;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+  * Endpoints of the lazy loading mode ("SQLite over HTTP"), enabled with 'web-server.lazy-loading.enabled'.
+  * The manifest ('/player-statistics.db.json') describes the newest snapshot: version, size, page size and chunk layout.
+  * The snapshot is then read by version, as page-aligned byte ranges ('/db/<version>') or as fixed chunks
+  * ('/db/<version>/<chunk>'). Both are immutable, so they are cached by the browser without revalidation.
+  * Kept snapshots stay readable, so a page that loaded an older manifest keeps working until the snapshot is deleted.
+  */
+public class SnapshotChunkHandlers {
+
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+    /**
+      * Check if the lazy loading mode is enabled.
+      *
+      * @return True if lazy loading is enabled.
+      */
+    public static boolean isEnabled() {
+        return ConfigUtils.config.getBoolean("web-server.lazy-loading.enabled");
+    }
+
+    /**
+      * Send the manifest of the newest snapshot.
+      * The 'httpvfs' object can be passed to a chunked lazy HTTP VFS (sql.js-httpvfs) as it is.
+      *
+      * @param ctx The request context.
+      * @throws Exception If the manifest can not be sent.
+      */
+    public static void manifest(Context ctx) throws Exception {
+        Path snapshot = SnapshotManager.servedFile();
+        String version = SnapshotManager.versionOf(snapshot);
+        if (version == null) {
+            ctx.status(404).result("No snapshot available yet");
+            return;
+        }
+
+        long size;
+        int pageSize;
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            size = channel.size();
+            pageSize = readPageSize(channel);
+        } catch (NoSuchFileException e) {
+            ctx.status(404).result("No snapshot available yet");
+            return;
+        }
+        int chunkSize = ConfigUtils.config.getInt("web-server.lazy-loading.chunk-size");
+        long chunkCount = (size + chunkSize - 1) / chunkSize;
+
+        String eTag = "\"" + version + "-manifest\"";
+        ctx.header("ETag", eTag);
+        ctx.header("Cache-Control", "no-cache");
+        if (eTag.equals(ctx.header("If-None-Match"))) {
+            ctx.status(304);
+            return;
+        }
+
+        Map<String, Object> httpVfs = new LinkedHashMap<>();
+        httpVfs.put("serverMode", "chunked");
+        httpVfs.put("requestChunkSize", pageSize);
+        httpVfs.put("databaseLengthBytes", size);
+        httpVfs.put("serverChunkSize", chunkSize);
+        httpVfs.put("urlPrefix", "/db/" + version + "/");
+        httpVfs.put("suffixLength", String.valueOf(Math.max(1, chunkCount - 1)).length());
+
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("version", version);
+        manifest.put("size", size);
+        manifest.put("page_size", pageSize);
+        manifest.put("chunk_size", chunkSize);
+        manifest.put("chunk_count", chunkCount);
+        manifest.put("url", "/db/" + version);
+        manifest.put("chunk_url", "/db/" + version + "/{chunk}");
+        manifest.put("httpvfs", httpVfs);
+
+        ctx.contentType("application/json");
+        ctx.result(StatSyncTask.MAPPER.writeValueAsString(manifest));
+    }
+
+    /**
+      * Send a whole snapshot by version (supports page-aligned byte ranges).
+      *
+      * @param ctx The request context.
+      * @throws Exception If the snapshot can not be sent.
+      */
+    public static void snapshot(Context ctx) throws Exception {
+        sendChunk(ctx, ctx.pathParam("version"), -1);
+    }
+
+    /**
+      * Send one fixed chunk of a snapshot (the chunk number may be zero-padded).
+      *
+      * @param ctx The request context.
+      * @throws Exception If the chunk can not be sent.
+      */
+    public static void chunk(Context ctx) throws Exception {
+        long chunk;
+        try {
+            chunk = Long.parseLong(ctx.pathParam("chunk"));
+        } catch (NumberFormatException e) {
+            ctx.status(400).result("Invalid chunk");
+            return;
+        }
+        if (chunk < 0) {
+            ctx.status(400).result("Invalid chunk");
+            return;
+        }
+        sendChunk(ctx, ctx.pathParam("version"), chunk);
+    }
+
+    /**
+      * Send a chunk of a snapshot, or the whole snapshot if the chunk is negative.
+      */
+    private static void sendChunk(Context ctx, String version, long chunk) throws IOException {
+        Path snapshot = SnapshotManager.snapshot(version);
+        if (snapshot == null) {
+            ctx.status(404).result("Snapshot not found");
+            return;
+        }
+
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(snapshot, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            ctx.status(404).result("Snapshot not found");
+            return;
+        }
+
+        try (channel) {
+            long fileSize = channel.size();
+            long offset = 0;
+            long size = fileSize;
+            if (chunk >= 0) {
+                int chunkSize = ConfigUtils.config.getInt("web-server.lazy-loading.chunk-size");
+                offset = chunk * chunkSize;
+                if (offset >= fileSize) {
+                    ctx.status(404).result("Chunk not found");
+                    return;
+                }
+                size = Math.min(chunkSize, fileSize - offset);
+            }
+
+            long modified = Files.getLastModifiedTime(snapshot).toMillis();
+            String eTag = "\"" + version + (chunk >= 0 ? "-" + chunk : "") + "\"";
+            String lastModified = DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(modified).atOffset(ZoneOffset.UTC));
+
+            ctx.header("ETag", eTag);
+            ctx.header("Last-Modified", lastModified);
+            ctx.header("Cache-Control", IMMUTABLE);
+            ctx.header("Accept-Ranges", "bytes");
+            DatabaseFileHandler.sendRegion(ctx, channel, offset, size, eTag, lastModified, modified);
+        }
+    }
+
+    /**
+      * Read the page size from the SQLite header (2 bytes at offset 16, big-endian, 1 means 65536).
+      */
+    private static int readPageSize(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(2);
+        while (header.hasRemaining()) {
+            if (channel.read(header, 16 + header.position()) < 0) {
+                return 0;
+            }
+        }
+        int pageSize = Short.toUnsignedInt(header.getShort(0));
+        return pageSize == 1 ? 65536 : pageSize;
+    }
+}
@@ -2,12 +2,9 @@ package github.fnewell.playerstatistics.webserver;
 
 import github.fnewell.playerstatistics.PlayerStatistics;
 import github.fnewell.playerstatistics.utils.ConfigUtils;
+import github.fnewell.playerstatistics.utils.SnapshotManager;
 import io.javalin.Javalin;
 import io.javalin.http.staticfiles.Location;
-import net.fabricmc.loader.api.FabricLoader;
-
-import java.nio.file.Files;
-import java.nio.file.Path;
 
 public class WebServer {
 
@@ -27,17 +24,30 @@ public class WebServer {
 
         PlayerStatistics.LOGGER.info("Web server running on port {}", port);
 
-        // Endpoint to get the player-statistics.db file
-        app.get("/player-statistics.db", ctx -> {
-            Path dbPath = FabricLoader.getInstance().getGameDir().resolve("mods/player-statistics/player-statistics.db");
-
-            if (Files.exists(dbPath)) {
-                ctx.contentType("application/octet-stream");
-                ctx.result(Files.newInputStream(dbPath));
-            } else {
-                ctx.status(404).result("File not found");
-            }
-        });
+        // Endpoint to get the player-statistics.db file (newest snapshot, cache-validated, supports byte ranges)
+        DatabaseFileHandler databaseFileHandler = new DatabaseFileHandler(SnapshotManager::servedFile);
+        app.get("/player-statistics.db", databaseFileHandler);
+        app.head("/player-statistics.db", databaseFileHandler);
+
+        // Endpoints of the lazy loading mode (manifest, snapshot by version as byte ranges or fixed chunks)
+        if (SnapshotChunkHandlers.isEnabled()) {
+            app.get("/player-statistics.db.json", SnapshotChunkHandlers::manifest);
+            app.get("/db/{version}", SnapshotChunkHandlers::snapshot);
+            app.head("/db/{version}", SnapshotChunkHandlers::snapshot);
+            app.get("/db/{version}/{chunk}", SnapshotChunkHandlers::chunk);
+            app.head("/db/{version}/{chunk}", SnapshotChunkHandlers::chunk);
+        }
+
+        // JSON query API (paginated and sortable, read through the read-only connection pool)
+        app.get("/api/players", ApiHandlers::players);
+        app.get("/api/players/{player}", ApiHandlers::player);
+        app.get("/api/stats/{table}", ApiHandlers::stats);
+        app.get("/api/leaderboard/{table}/{stat}", ApiHandlers::leaderboard);
+        app.get("/api/hall-of-fame", ApiHandlers::hallOfFame);
+        app.get("/api/history/{player}/{table}/{stat}", ApiHandlers::history);
+        app.get("/api/rank/{player}", ApiHandlers::rank);
+        app.get("/api/metadata", ApiHandlers::metadata);
+        app.get("/api/metadata/icon", ApiHandlers::icon);
     }
 
     /**
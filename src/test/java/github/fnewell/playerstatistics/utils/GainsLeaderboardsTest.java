@@ -0,0 +1,89 @@
+package github.fnewell.playerstatistics.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GainsLeaderboardsTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toSeconds(1);
+    private static final long NOW = 1000 * HOUR + 120;
+    private static final SyncChanges.Partition JUMP = new SyncChanges.Partition(2, "minecraft:jump");
+
+    private static SyncChanges.PlayerStat jump(int playerId) {
+        return new SyncChanges.PlayerStat(playerId, JUMP.tableIndex(), JUMP.statName());
+    }
+
+    private static GainsLeaderboards.Window day() {
+        return new GainsLeaderboards.Window("24h", HOUR, 24);
+    }
+
+    @Test
+    void gainsInsideTheWindowAreSummed() {
+        GainsLeaderboards.Window window = day();
+        window.add(jump(1), 10, NOW - 23 * HOUR, NOW);
+        window.add(jump(1), 5, NOW - HOUR, NOW);
+        window.add(jump(1), 2, NOW, NOW);
+
+        assertEquals(List.of(new GainsLeaderboards.Entry(1, 17)), window.rank(JUMP));
+    }
+
+    @Test
+    void gainsOutsideTheWindowAreIgnored() {
+        GainsLeaderboards.Window window = day();
+        window.add(jump(1), 10, NOW - 24 * HOUR, NOW);
+        window.add(jump(1), 10, NOW + HOUR, NOW);
+
+        assertTrue(window.rank(JUMP).isEmpty());
+    }
+
+    @Test
+    void advanceExpiresBucketsLeavingTheWindow() {
+        GainsLeaderboards.Window window = day();
+        window.add(jump(1), 10, NOW - 23 * HOUR, NOW);
+        window.add(jump(2), 4, NOW - 12 * HOUR, NOW);
+        window.add(jump(1), 5, NOW, NOW);
+
+        window.advance(NOW);
+        assertEquals(List.of(new GainsLeaderboards.Entry(1, 15), new GainsLeaderboards.Entry(2, 4)), window.rank(JUMP));
+
+        window.advance(NOW + HOUR);
+        assertEquals(List.of(new GainsLeaderboards.Entry(1, 5), new GainsLeaderboards.Entry(2, 4)), window.rank(JUMP));
+
+        window.advance(NOW + 12 * HOUR);
+        assertEquals(List.of(new GainsLeaderboards.Entry(1, 5)), window.rank(JUMP));
+
+        window.advance(NOW + 24 * HOUR);
+        assertTrue(window.rank(JUMP).isEmpty());
+    }
+
+    @Test
+    void reusedSlotDropsTheExpiredBucket() {
+        GainsLeaderboards.Window window = day();
+        window.add(jump(1), 10, NOW, NOW);
+
+        // Same slot one day later, without advancing the window first
+        window.add(jump(1), 3, NOW + 24 * HOUR, NOW + 24 * HOUR);
+        assertEquals(List.of(new GainsLeaderboards.Entry(1, 3)), window.rank(JUMP));
+    }
+
+    @Test
+    void rankKeepsTopPlayersByGainThenPlayerId() {
+        GainsLeaderboards.Window window = day();
+        int[] gains = { 3, 9, 9, 1, 7, 5, 2 };
+        for (int i = 0; i < gains.length; i++) {
+            window.add(jump(i + 1), gains[i], NOW, NOW);
+        }
+        window.add(jump(8), -4, NOW, NOW);
+
+        assertEquals(List.of(
+                new GainsLeaderboards.Entry(2, 9),
+                new GainsLeaderboards.Entry(3, 9),
+                new GainsLeaderboards.Entry(5, 7),
+                new GainsLeaderboards.Entry(6, 5),
+                new GainsLeaderboards.Entry(1, 3)), window.rank(JUMP));
+    }
+}
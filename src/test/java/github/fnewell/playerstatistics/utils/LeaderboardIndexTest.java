@@ -0,0 +1,98 @@
+package github.fnewell.playerstatistics.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static github.fnewell.playerstatistics.utils.DatabaseUtils.LEADERBOARD_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeaderboardIndexTest {
+
+    private static int[] ranked(LeaderboardIndex.Board board) {
+        return Arrays.copyOf(board.playerIds, board.size);
+    }
+
+    /**
+      * Board holding more players than it keeps (player i has the amount 1000 - i).
+      */
+    private static LeaderboardIndex.Board overflowingBoard() {
+        LeaderboardIndex.Board board = new LeaderboardIndex.Board();
+        for (int playerId = 1; playerId <= LeaderboardIndex.DEPTH + 1; playerId++) {
+            board.insert(playerId, 1000 - playerId);
+        }
+        return board;
+    }
+
+    @Test
+    void insertOrdersByAmountThenPlayerId() {
+        LeaderboardIndex.Board board = new LeaderboardIndex.Board();
+        board.insert(3, 10);
+        board.insert(1, 20);
+        board.insert(4, 5);
+        board.insert(2, 10);
+
+        assertArrayEquals(new int[]{ 1, 2, 3, 4 }, ranked(board));
+        assertArrayEquals(new int[]{ 20, 10, 10, 5 }, Arrays.copyOf(board.amounts, board.size));
+        assertTrue(board.complete);
+    }
+
+    @Test
+    void insertDropsLowestBeyondDepth() {
+        LeaderboardIndex.Board board = overflowingBoard();
+
+        assertEquals(LeaderboardIndex.DEPTH, board.size);
+        assertFalse(board.complete);
+        assertEquals(1, board.playerIds[0]);
+        assertEquals(LeaderboardIndex.DEPTH, board.playerIds[board.size - 1]);
+    }
+
+    @Test
+    void applyMovesAndRemovesPlayers() {
+        LeaderboardIndex.Board board = new LeaderboardIndex.Board();
+        board.apply(1, 5);
+        board.apply(2, 7);
+        board.apply(3, 6);
+        assertArrayEquals(new int[]{ 2, 3, 1 }, ranked(board));
+
+        board.apply(1, 9);
+        assertArrayEquals(new int[]{ 1, 2, 3 }, ranked(board));
+
+        board.apply(2, 0);
+        board.apply(3, StatSnapshot.MISSING);
+        assertArrayEquals(new int[]{ 1 }, ranked(board));
+        assertFalse(board.dirty);
+    }
+
+    @Test
+    void applyOnIncompleteBoardOnlyPlacesKnownPositions() {
+        LeaderboardIndex.Board board = overflowingBoard();
+        int last = board.playerIds[board.size - 1];
+
+        // Behind the last known player: unknown players could be ahead of it
+        board.apply(100, 1);
+        assertEquals(LeaderboardIndex.DEPTH, board.size);
+        assertEquals(last, board.playerIds[board.size - 1]);
+
+        // Ahead of the last known player: placed, the last player is dropped
+        board.apply(101, 2000);
+        assertEquals(101, board.playerIds[0]);
+        assertEquals(LeaderboardIndex.DEPTH, board.size);
+        assertNotEquals(last, board.playerIds[board.size - 1]);
+        assertFalse(board.dirty);
+    }
+
+    @Test
+    void applyMarksIncompleteBoardDirtyWhenTooFewPlayersAreKnown() {
+        LeaderboardIndex.Board board = overflowingBoard();
+        int removed = 0;
+        while (board.size >= LEADERBOARD_SIZE) {
+            assertFalse(board.dirty);
+            board.apply(board.playerIds[0], 0);
+            removed++;
+        }
+
+        assertEquals(LeaderboardIndex.DEPTH - LEADERBOARD_SIZE + 1, removed);
+        assertTrue(board.dirty);
+    }
+}
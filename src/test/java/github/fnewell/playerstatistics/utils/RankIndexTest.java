@@ -0,0 +1,88 @@
+package github.fnewell.playerstatistics.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RankIndexTest {
+
+    private static RankIndex.Ranking ranking(int... amounts) {
+        RankIndex.Ranking ranking = new RankIndex.Ranking();
+        for (int amount : amounts) {
+            ranking.add(amount);
+        }
+        ranking.merge();
+        return ranking;
+    }
+
+    @Test
+    void rankCountsHigherAmounts() {
+        RankIndex.Ranking ranking = ranking(5, 3, 8, 3);
+
+        assertArrayEquals(new int[]{ 1, 4 }, ranking.rank(8));
+        assertArrayEquals(new int[]{ 2, 4 }, ranking.rank(5));
+        assertArrayEquals(new int[]{ 3, 4 }, ranking.rank(3));
+        assertArrayEquals(new int[]{ 1, 4 }, ranking.rank(10));
+        assertArrayEquals(new int[]{ 5, 4 }, ranking.rank(1));
+    }
+
+    @Test
+    void rankOfEmptyRanking() {
+        assertArrayEquals(new int[]{ 1, 0 }, new RankIndex.Ranking().rank(42));
+    }
+
+    @Test
+    void mergeRemovesOneOccurrencePerRemovedAmount() {
+        RankIndex.Ranking ranking = ranking(5, 3, 8, 3);
+        ranking.remove(3);
+
+        assertArrayEquals(new int[]{ 3, 3 }, ranking.rank(3));
+        assertArrayEquals(new int[]{ 1, 3 }, ranking.rank(8));
+    }
+
+    @Test
+    void mergeAppliesPendingDeltasTogether() {
+        RankIndex.Ranking ranking = ranking(3, 5, 8);
+
+        // A player moving from 5 to 6
+        ranking.add(6);
+        ranking.remove(5);
+        assertArrayEquals(new int[]{ 2, 3 }, ranking.rank(6));
+        assertArrayEquals(new int[]{ 3, 3 }, ranking.rank(5));
+
+        // A player keeping its amount (removed and added in the same batch)
+        ranking.add(6);
+        ranking.remove(6);
+        assertArrayEquals(new int[]{ 2, 3 }, ranking.rank(6));
+    }
+
+    @Test
+    void mergeMatchesFullCountAfterRandomDeltas() {
+        Random random = new Random(20240501L);
+        RankIndex.Ranking ranking = new RankIndex.Ranking();
+        List<Integer> amounts = new ArrayList<>();
+
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 40; i++) {
+                if (!amounts.isEmpty() && random.nextInt(3) == 0) {
+                    int removed = amounts.remove(random.nextInt(amounts.size()));
+                    ranking.remove(removed);
+                } else {
+                    int added = 1 + random.nextInt(200);
+                    amounts.add(added);
+                    ranking.add(added);
+                }
+            }
+
+            for (int amount = 0; amount <= 201; amount += 7) {
+                int threshold = amount;
+                int higher = (int) amounts.stream().filter(value -> value > threshold).count();
+                assertArrayEquals(new int[]{ higher + 1, amounts.size() }, ranking.rank(amount));
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package github.fnewell.playerstatistics.utils;
+
+import com.typesafe.config.ConfigFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScoringEngineTest {
+
+    // The config has to be set before the table names are loaded
+    static {
+        ConfigUtils.config = ConfigFactory.parseString("""
+            database { location = LOCAL, type = SQLITE }
+            hall-of-fame {
+              points = [10, 5, 3, 2, 1]
+              normalized = false
+              table-weights { mined = 2.0, used = 0 }
+              stat-weights { mined { "minecraft:stone" = 0.5 } }
+            }
+        """);
+    }
+
+    private static final int CUSTOM = DatabaseUtils.TABLE_NAMES.indexOf("custom");
+    private static final int MINED = DatabaseUtils.TABLE_NAMES.indexOf("mined");
+    private static final int USED = DatabaseUtils.TABLE_NAMES.indexOf("used");
+
+    private static Map<Integer, int[]> score(Object... partitions) {
+        Map<SyncChanges.Partition, int[]> rankings = new HashMap<>();
+        for (int i = 0; i < partitions.length; i += 3) {
+            rankings.put(new SyncChanges.Partition((int) partitions[i], (String) partitions[i + 1]), (int[]) partitions[i + 2]);
+        }
+        return ScoringEngine.score(rankings, Map.of());
+    }
+
+    @Test
+    void positionsGiveConfiguredPoints() {
+        Map<Integer, int[]> rows = score(CUSTOM, "minecraft:jump", new int[]{ 1, 2, 3, 0, 0 });
+
+        assertEquals(3, rows.size());
+        assertArrayEquals(new int[]{ 10, 0, 0, 0, 0, 10 }, rows.get(1));
+        assertArrayEquals(new int[]{ 0, 5, 0, 0, 0, 5 }, rows.get(2));
+        assertArrayEquals(new int[]{ 0, 0, 3, 0, 0, 3 }, rows.get(3));
+    }
+
+    @Test
+    void pointsOfAllStatsAreSummed() {
+        Map<Integer, int[]> rows = score(
+                CUSTOM, "minecraft:jump", new int[]{ 1, 2, 0, 0, 0 },
+                CUSTOM, "minecraft:play_time", new int[]{ 1, 3, 4, 5, 2 });
+
+        assertArrayEquals(new int[]{ 20, 0, 0, 0, 0, 20 }, rows.get(1));
+        assertArrayEquals(new int[]{ 0, 5, 0, 0, 1, 6 }, rows.get(2));
+        assertArrayEquals(new int[]{ 0, 0, 0, 2, 0, 2 }, rows.get(5));
+    }
+
+    @Test
+    void statWeightReplacesTableWeight() {
+        Map<Integer, int[]> rows = score(
+                MINED, "minecraft:diamond_ore", new int[]{ 1, 0, 0, 0, 0 },
+                MINED, "minecraft:stone", new int[]{ 2, 0, 0, 0, 0 });
+
+        assertArrayEquals(new int[]{ 20, 0, 0, 0, 0, 20 }, rows.get(1));
+        assertArrayEquals(new int[]{ 5, 0, 0, 0, 0, 5 }, rows.get(2));
+    }
+
+    @Test
+    void zeroWeightStatsAreNotScored() {
+        Map<Integer, int[]> rows = score(USED, "minecraft:torch", new int[]{ 7, 8, 0, 0, 0 });
+
+        assertTrue(rows.isEmpty());
+    }
+}
@@ -0,0 +1,77 @@
+package github.fnewell.playerstatistics.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyncManifestTest {
+
+    private static final byte[] STATS = "{\"stats\":{\"minecraft:custom\":{\"minecraft:jump\":12}}}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CHANGED = "{\"stats\":{\"minecraft:custom\":{\"minecraft:jump\":13}}}".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    private Path write(byte[] content) throws IOException {
+        return Files.write(directory.resolve("069a79f4-44e9-4726-a5be-fca90e38aaf5.json"), content);
+    }
+
+    @Test
+    void newFileHasToBeSynchronized() throws IOException {
+        Path file = write(STATS);
+        assertNull(SyncManifest.checkUnchanged(file, SyncManifest.entry(file), null));
+    }
+
+    @Test
+    void differentSizeHasToBeSynchronized() throws IOException {
+        Path file = write(STATS);
+        SyncManifest.Entry synced = SyncManifest.entry(file);
+        SyncManifest.Entry current = new SyncManifest.Entry(synced.size() + 1, synced.lastModified(), 0);
+
+        assertNull(SyncManifest.checkUnchanged(file, current, synced));
+    }
+
+    @Test
+    void sameSizeAndModifiedTimeIsSkippedWithoutReading() {
+        // The file does not exist, so it can not have been read
+        Path file = directory.resolve("missing.json");
+        SyncManifest.Entry synced = new SyncManifest.Entry(STATS.length, 1_700_000_000_000L, 1234);
+
+        assertSame(synced, SyncManifest.checkUnchanged(file, new SyncManifest.Entry(STATS.length, 1_700_000_000_000L, 0), synced));
+    }
+
+    @Test
+    void touchedFileWithSameContentIsSkipped() throws IOException {
+        Path file = write(STATS);
+        SyncManifest.Entry synced = SyncManifest.entry(file);
+        SyncManifest.Entry current = new SyncManifest.Entry(synced.size(), synced.lastModified() + 5000, 0);
+
+        SyncManifest.Entry unchanged = SyncManifest.checkUnchanged(file, current, synced);
+        assertEquals(new SyncManifest.Entry(synced.size(), synced.lastModified() + 5000, SyncManifest.hash(STATS, STATS.length)), unchanged);
+    }
+
+    @Test
+    void changedContentWithSameSizeHasToBeSynchronized() throws IOException {
+        Path file = write(STATS);
+        SyncManifest.Entry synced = SyncManifest.entry(file);
+        write(CHANGED);
+        SyncManifest.Entry current = new SyncManifest.Entry(CHANGED.length, synced.lastModified() + 5000, 0);
+
+        assertEquals(synced.size(), current.size());
+        assertNull(SyncManifest.checkUnchanged(file, current, synced));
+    }
+
+    @Test
+    void unreadableFileHasToBeSynchronized() {
+        Path file = directory.resolve("missing.json");
+        SyncManifest.Entry synced = new SyncManifest.Entry(STATS.length, 1_700_000_000_000L, SyncManifest.hash(STATS, STATS.length));
+
+        assertNull(SyncManifest.checkUnchanged(file, new SyncManifest.Entry(STATS.length, 1_700_000_005_000L, 0), synced));
+    }
+}
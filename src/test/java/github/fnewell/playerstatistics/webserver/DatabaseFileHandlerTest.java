@@ -0,0 +1,124 @@
+package github.fnewell.playerstatistics.webserver;
+
+import github.fnewell.playerstatistics.utils.SnapshotManager;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseFileHandlerTest {
+
+    private static final SnapshotManager.Encoding ZSTD = new SnapshotManager.Encoding("zstd", ".zst");
+    private static final SnapshotManager.Encoding GZIP = new SnapshotManager.Encoding("gzip", ".gz");
+    private static final SnapshotManager.Encoding DEFLATE = new SnapshotManager.Encoding("deflate", ".deflate");
+    private static final List<SnapshotManager.Encoding> ENCODINGS = List.of(ZSTD, GZIP, DEFLATE);
+
+    private static final String ETAG = "\"7-400-18b\"";
+    private static final long MODIFIED = 1_700_000_000_500L;
+
+    // Only the gzip and deflate variants of the snapshot exist
+    private static final Function<SnapshotManager.Encoding, Path> VARIANTS = encoding ->
+            Set.of(GZIP, DEFLATE).contains(encoding) ? Path.of("snapshot-7.db" + encoding.extension()) : null;
+
+    private static SnapshotManager.Encoding negotiate(String acceptEncoding) {
+        Map.Entry<SnapshotManager.Encoding, Path> variant = DatabaseFileHandler.negotiate(acceptEncoding, ENCODINGS, VARIANTS);
+        return variant == null ? null : variant.getKey();
+    }
+
+    private static String httpDate(long epochSecond) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochSecond(epochSecond).atZone(ZoneOffset.UTC));
+    }
+
+    @Test
+    void parseRangeReturnsBoundsOfSingleRange() {
+        assertArrayEquals(new long[]{ 0, 99 }, DatabaseFileHandler.parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[]{ 900, 999 }, DatabaseFileHandler.parseRange("bytes=900-", 1000));
+        assertArrayEquals(new long[]{ 500, 999 }, DatabaseFileHandler.parseRange("bytes=500-5000", 1000));
+        assertArrayEquals(new long[]{ 999, 999 }, DatabaseFileHandler.parseRange("bytes=999-999", 1000));
+    }
+
+    @Test
+    void parseRangeReturnsSuffixRange() {
+        assertArrayEquals(new long[]{ 900, 999 }, DatabaseFileHandler.parseRange("bytes=-100", 1000));
+        assertArrayEquals(new long[]{ 0, 999 }, DatabaseFileHandler.parseRange("bytes=-5000", 1000));
+    }
+
+    @Test
+    void parseRangeRejectsUnsatisfiableRange() {
+        assertNull(DatabaseFileHandler.parseRange("bytes=1000-", 1000));
+        assertNull(DatabaseFileHandler.parseRange("bytes=2000-3000", 1000));
+        assertNull(DatabaseFileHandler.parseRange("bytes=-0", 1000));
+        assertNull(DatabaseFileHandler.parseRange("bytes=0-", 0));
+    }
+
+    @Test
+    void parseRangeIgnoresUnsupportedHeader() {
+        assertEquals(0, DatabaseFileHandler.parseRange("bytes=0-1,5-6", 1000).length);
+        assertEquals(0, DatabaseFileHandler.parseRange("items=0-99", 1000).length);
+        assertEquals(0, DatabaseFileHandler.parseRange("bytes=100", 1000).length);
+        assertEquals(0, DatabaseFileHandler.parseRange("bytes=a-b", 1000).length);
+    }
+
+    @Test
+    void negotiateWithoutAcceptEncodingSendsUncompressed() {
+        assertNull(negotiate(null));
+        assertNull(negotiate(" "));
+        assertNull(negotiate("identity"));
+    }
+
+    @Test
+    void negotiatePrefersServerOrderOnEqualQuality() {
+        assertEquals(GZIP, negotiate("deflate, gzip"));
+        assertEquals(GZIP, negotiate("*"));
+        assertEquals(Path.of("snapshot-7.db.gz"), DatabaseFileHandler.negotiate("GZip", ENCODINGS, VARIANTS).getValue());
+    }
+
+    @Test
+    void negotiateHonorsQualityValues() {
+        assertEquals(DEFLATE, negotiate("gzip;q=0.5, deflate"));
+        assertEquals(DEFLATE, negotiate("*;q=0.5, gzip;q=0"));
+        assertNull(negotiate("gzip;q=0, deflate;q=0"));
+        assertNull(negotiate("gzip;q=invalid"));
+    }
+
+    @Test
+    void negotiateSkipsMissingVariants() {
+        assertNull(negotiate("zstd"));
+        assertEquals(DEFLATE, negotiate("zstd, deflate;q=0.1"));
+    }
+
+    @Test
+    void notModifiedMatchesEntityTag() {
+        assertTrue(DatabaseFileHandler.notModified(ETAG, null, ETAG, MODIFIED));
+        assertTrue(DatabaseFileHandler.notModified("W/" + ETAG, null, ETAG, MODIFIED));
+        assertTrue(DatabaseFileHandler.notModified("\"1-2-3\", " + ETAG, null, ETAG, MODIFIED));
+        assertTrue(DatabaseFileHandler.notModified("*", null, ETAG, MODIFIED));
+        assertFalse(DatabaseFileHandler.notModified("\"1-2-3\"", null, ETAG, MODIFIED));
+    }
+
+    @Test
+    void notModifiedPrefersEntityTagOverDate() {
+        assertFalse(DatabaseFileHandler.notModified("\"1-2-3\"", httpDate(MODIFIED / 1000 + 60), ETAG, MODIFIED));
+    }
+
+    @Test
+    void notModifiedComparesDateInSeconds() {
+        assertTrue(DatabaseFileHandler.notModified(null, httpDate(MODIFIED / 1000), ETAG, MODIFIED));
+        assertTrue(DatabaseFileHandler.notModified(null, httpDate(MODIFIED / 1000 + 60), ETAG, MODIFIED));
+        assertFalse(DatabaseFileHandler.notModified(null, httpDate(MODIFIED / 1000 - 1), ETAG, MODIFIED));
+    }
+
+    @Test
+    void notModifiedWithoutValidHeaders() {
+        assertFalse(DatabaseFileHandler.notModified(null, null, ETAG, MODIFIED));
+        assertFalse(DatabaseFileHandler.notModified(null, "yesterday", ETAG, MODIFIED));
+    }
+}